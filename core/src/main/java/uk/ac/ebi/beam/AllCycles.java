@@ -64,7 +64,7 @@ final class AllCycles {
             }
         };
 
-        BitSet cyclic = new BiconnectedComponents(g).cyclic();
+        BitSet cyclic = g.cyclic();
 
         for (int u = 0; u < g.order(); u++)
             ps[u] = model.contribution(u, g, cycle, cyclic);
@@ -121,12 +121,12 @@ final class AllCycles {
             int hCount = org.implHCount(i);
             if (hCount != cpy.implHCount(i)) {
                 cpy.setAtom(i,
-                            new AtomImpl.BracketAtom(-1,
-                                                     cpy.atom(i).element(),
-                                                     hCount,
-                                                     0,
-                                                     0,
-                                                     true));
+                            AtomImpl.BracketAtom.of(-1,
+                                                    cpy.atom(i).element(),
+                                                    hCount,
+                                                    0,
+                                                    0,
+                                                    true));
             }
         }
         return cpy.sort(new Graph.CanOrderFirst());
@@ -132,12 +132,4 @@ public interface Atom {
      * @see Graph#implHCount(int)
      */
     int hydrogens(Graph g, int u);
-
-    /**
-     * (internal) The token to write for the atom when generating a SMILES
-     * string.
-     *
-     * @return the atom token
-     */
-    Generator.AtomToken token();
 }
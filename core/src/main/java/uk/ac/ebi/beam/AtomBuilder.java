@@ -294,12 +294,12 @@ public final class AtomBuilder {
      * @return an atom
      */
     public Atom build() {
-        return new AtomImpl.BracketAtom(isotope,
-                                        element,
-                                        hCount,
-                                        charge,
-                                        atomClass,
-                                        aromatic);
+        return AtomImpl.BracketAtom.of(isotope,
+                                       element,
+                                       hCount,
+                                       charge,
+                                       atomClass,
+                                       aromatic);
     }
 
     /**
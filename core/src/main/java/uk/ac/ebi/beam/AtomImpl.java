@@ -30,7 +30,6 @@
 package uk.ac.ebi.beam;
 
 import java.util.HashMap;
-import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -53,8 +52,7 @@ final class AtomImpl {
         Bromine(Element.Bromine),
         Iodine(Element.Iodine);
 
-        private Element             element;
-        private Generator.AtomToken token;
+        private Element element;
 
         private static final Map<Element, Atom> atoms = new HashMap<Element, Atom>();
 
@@ -65,7 +63,6 @@ final class AtomImpl {
 
         private AliphaticSubset(Element element) {
             this.element = element;
-            this.token = new Generator.SubsetToken(element.symbol());
         }
 
         @Override public int isotope() {
@@ -112,10 +109,6 @@ final class AtomImpl {
             return Element.implicitHydrogenCount(element, g.bondedValence(u));
         }
 
-        @Override public Generator.AtomToken token() {
-            return token;
-        }
-
         static Atom ofElement(Element e) {
             Atom a = atoms.get(e);
             if (a == null)
@@ -133,8 +126,7 @@ final class AtomImpl {
         Sulfur(Element.Sulfur),
         Phosphorus(Element.Phosphorus);
 
-        private       Element             element;
-        private final Generator.AtomToken token;
+        private Element element;
 
         private static final Map<Element, Atom> atoms = new HashMap<Element, Atom>();
 
@@ -145,8 +137,6 @@ final class AtomImpl {
 
         private AromaticSubset(Element element) {
             this.element = element;
-            this.token = new Generator.SubsetToken(element.symbol()
-                                                          .toLowerCase(Locale.ENGLISH));
         }
 
         @Override public String label() {
@@ -177,10 +167,6 @@ final class AtomImpl {
             return 0;
         }
 
-        @Override public Generator.AtomToken token() {
-            return token;
-        }
-
         @Override public boolean subset() {
             return true;
         }
@@ -242,6 +228,62 @@ final class AtomImpl {
             this(-1, Element.Unknown, label, 0, 0, 0, false);
         }
 
+        /** Number of slots in the shared atom cache, a power of 2. */
+        private static final int CACHE_SIZE = 512;
+
+        /**
+         * Shared instances of recently used bracket atoms. The cache is
+         * direct-mapped (one slot per hash) and so has a fixed size, a rare
+         * atom replaces the atom in its slot rather than growing the cache.
+         * Atoms are immutable so unsynchronised access is safe, at worst an
+         * equal atom is created twice.
+         */
+        private static final BracketAtom[] cache = new BracketAtom[CACHE_SIZE];
+
+        /**
+         * Access a (possibly shared) bracket atom labelled with the element
+         * symbol.
+         *
+         * @param isotope   isotope mass number, -1 if unspecified
+         * @param element   the element
+         * @param hCount    number of hydrogens
+         * @param charge    formal charge
+         * @param atomClass atom class
+         * @param aromatic  whether the atom is aromatic
+         * @return the bracket atom
+         */
+        static BracketAtom of(int isotope, Element element, int hCount, int charge, int atomClass, boolean aromatic) {
+            int h = element.ordinal();
+            h = 31 * h + hCount;
+            h = 31 * h + charge;
+            h = 31 * h + atomClass;
+            h = 31 * h + isotope;
+            h = 2 * h + (aromatic ? 1 : 0);
+            final int i = (h ^ (h >>> 9)) & (CACHE_SIZE - 1);
+            BracketAtom atom = cache[i];
+            if (atom != null
+                    && atom.element == element
+                    && atom.hCount == hCount
+                    && atom.charge == charge
+                    && atom.atomClass == atomClass
+                    && atom.isotope == isotope
+                    && atom.aromatic == aromatic)
+                return atom;
+            atom = new BracketAtom(isotope, element, hCount, charge, atomClass, aromatic);
+            cache[i] = atom;
+            return atom;
+        }
+
+        /**
+         * Access a bracket atom with the same attributes as this one but
+         * different aromaticity.
+         */
+        private BracketAtom withAromatic(boolean aromatic) {
+            if (label == element.symbol())
+                return of(isotope, element, hCount, charge, atomClass, aromatic);
+            return new BracketAtom(isotope, element, label, hCount, charge, atomClass, aromatic);
+        }
+
         @Override public int isotope() {
             return isotope;
         }
@@ -270,10 +312,6 @@ final class AtomImpl {
             return atomClass;
         }
 
-        @Override public Generator.AtomToken token() {
-            return new Generator.BracketToken(this);
-        }
-
         @Override public boolean subset() {
             return false;
         }
@@ -283,25 +321,11 @@ final class AtomImpl {
         }
 
         @Override public Atom toAromatic() {
-            return aromatic || !element.aromatic() ? this
-                                                   : new BracketAtom(isotope,
-                                                                     element,
-                                                                     label,
-                                                                     hCount,
-                                                                     charge,
-                                                                     atomClass,
-                                                                     true);
+            return aromatic || !element.aromatic() ? this : withAromatic(true);
         }
 
         @Override public Atom toAliphatic() {
-            return !aromatic ? this 
-                             : new BracketAtom(isotope,
-                                               element,
-                                               label,
-                                               hCount,
-                                               charge,
-                                               atomClass,
-                                               false);
+            return !aromatic ? this : withAromatic(false);
         }
 
         @Override
@@ -29,28 +29,89 @@
 
 package uk.ac.ebi.beam;
 
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * A character buffer with utilities for sequential processing of characters.
+ * The buffer is backed by a slice of a {@code char[]}, bytes ({@code byte[]}
+ * or {@link ByteBuffer}) are decoded once when the buffer is created (ASCII
+ * directly, UTF-8 otherwise) so the characters read and the strings taken
+ * from the buffer always agree.
  *
  * @author John May
  */
 final class CharBuffer {
 
-    /** Characters stored in a fixed size array. */
-    public char[] cs;
+    /** Characters of the buffer, starting at {@link #off}. */
+    private final char[] cs;
+
+    /** Offset of the first character in the array. */
+    private final int off;
 
     /** Current position. */
     public int position;
 
+    /** Number of characters in the buffer. */
+    private final int length;
+
+    /**
+     * The buffer was decoded from UTF-8 bytes, character indices are then
+     * not the same as byte indices.
+     */
+    final boolean utf8;
+
+    /**
+     * Whether errors encountered while reading this buffer should record a
+     * stack trace, not needed when we are only validating the input.
+     */
+    boolean trace = true;
+
     /**
      * Internal constructor
      *
-     * @param cs array of characters
+     * @param cs     the characters
+     * @param off    offset of the first character
+     * @param length number of characters
      */
-    private CharBuffer(char[] cs) {
+    private CharBuffer(char[] cs, int off, int length) {
+        this(cs, off, length, false);
+    }
+
+    /**
+     * Internal constructor
+     *
+     * @param cs     the characters
+     * @param off    offset of the first character
+     * @param length number of characters
+     * @param utf8   the characters were decoded from UTF-8
+     */
+    private CharBuffer(char[] cs, int off, int length, boolean utf8) {
         this.cs = cs;
+        this.off = off;
+        this.length = length;
+        this.utf8 = utf8;
+    }
+
+    /**
+     * Access the character at the specified index.
+     *
+     * @param i index, 0 &le; i &lt; {@link #length()}
+     * @return the character
+     */
+    char charAt(int i) {
+        return cs[off + i];
+    }
+
+    /**
+     * Obtain the string of characters 'from' - 'to' the specified indices.
+     *
+     * @param from start index
+     * @param to   end index
+     * @return the string between the indices
+     */
+    String substr(int from, int to) {
+        return new String(cs, off + from, to - from);
     }
 
     /**
@@ -61,7 +122,7 @@ final class CharBuffer {
      * @return the position has reached the end of the array
      */
     boolean hasRemaining() {
-        return position < cs.length;
+        return position < length;
     }
 
     /**
@@ -80,7 +141,7 @@ final class CharBuffer {
      * @see #next()
      */
     char get() {
-        return cs[position++];
+        return charAt(position++);
     }
 
     /**
@@ -91,7 +152,7 @@ final class CharBuffer {
      * @see #get()
      */
     char next() {
-        return cs[position];
+        return charAt(position);
     }
 
     /**
@@ -135,7 +196,7 @@ final class CharBuffer {
      * @return whether there are characters remaining and the
      */
     boolean nextIs(char c) {
-        return hasRemaining() && cs[position] == c;
+        return hasRemaining() && charAt(position) == c;
     }
 
     /**
@@ -189,24 +250,13 @@ final class CharBuffer {
         return num;
     }
 
-    /**
-     * Obtain the string of characters 'from' - 'to' the specified indices.
-     *
-     * @param from start index
-     * @param to   end index
-     * @return the string between the indices
-     */
-    String substr(int from, int to) {
-        return new String(Arrays.copyOfRange(cs, from, to));
-    }
-
     /**
      * The number of characters in the buffer.
      *
      * @return length of the buffer
      */
     int length() {
-        return cs.length;
+        return length;
     }
 
     /**
@@ -240,11 +290,78 @@ final class CharBuffer {
      * @return new char buffer
      */
     static CharBuffer fromString(String str) {
-        return new CharBuffer(str.toCharArray());
+        char[] cs = str.toCharArray();
+        return new CharBuffer(cs, 0, cs.length);
+    }
+
+    /**
+     * Create a buffer over a slice of characters. The characters are not
+     * copied and should not be modified while the buffer is in use.
+     *
+     * @param cs  the characters
+     * @param off offset of the first character
+     * @param len number of characters
+     * @return new char buffer
+     */
+    static CharBuffer fromChars(char[] cs, int off, int len) {
+        if (off < 0 || len < 0 || off + len > cs.length)
+            throw new IndexOutOfBoundsException("off=" + off + ", len=" + len + ", cs.length=" + cs.length);
+        return new CharBuffer(cs, off, len);
+    }
+
+    /**
+     * Create a buffer from a slice of bytes. ASCII bytes are copied directly
+     * to the characters of the buffer, if there are any other bytes the
+     * slice is decoded as UTF-8.
+     *
+     * @param bs  the bytes
+     * @param off offset of the first byte
+     * @param len number of bytes
+     * @return new char buffer
+     */
+    static CharBuffer fromBytes(byte[] bs, int off, int len) {
+        if (off < 0 || len < 0 || off + len > bs.length)
+            throw new IndexOutOfBoundsException("off=" + off + ", len=" + len + ", bs.length=" + bs.length);
+        final char[] cs = new char[len];
+        for (int i = 0; i < len; i++) {
+            final byte b = bs[off + i];
+            if (b < 0) {
+                final char[] decoded = new String(bs, off, len, StandardCharsets.UTF_8).toCharArray();
+                return new CharBuffer(decoded, 0, decoded.length, true);
+            }
+            cs[i] = (char) b;
+        }
+        return new CharBuffer(cs, 0, len);
+    }
+
+    /**
+     * Create a buffer from the remaining bytes (position - limit) of a byte
+     * buffer, decoded as with {@link #fromBytes(byte[], int, int)}. The
+     * position of the provided buffer is not modified. Both heap and direct
+     * (e.g. memory mapped) buffers are supported.
+     *
+     * @param bb the byte buffer
+     * @return new char buffer
+     */
+    static CharBuffer fromBytes(ByteBuffer bb) {
+        if (bb.hasArray())
+            return fromBytes(bb.array(), bb.arrayOffset() + bb.position(), bb.remaining());
+        final int    pos = bb.position();
+        final char[] cs  = new char[bb.remaining()];
+        for (int i = 0; i < cs.length; i++) {
+            final byte b = bb.get(pos + i);
+            if (b < 0) {
+                final byte[] bs = new byte[cs.length];
+                bb.duplicate().get(bs);
+                return fromBytes(bs, 0, bs.length);
+            }
+            cs[i] = (char) b;
+        }
+        return new CharBuffer(cs, 0, cs.length);
     }
 
     /** @inheritDoc */
     @Override public String toString() {
-        return new String(cs);
+        return substr(0, length);
     }
 }
@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2013, European Bioinformatics Institute (EMBL-EBI)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+
+package uk.ac.ebi.beam;
+
+import java.io.IOException;
+
+/**
+ * An immutable chemical graph stored in compressed sparse row (CSR) form.
+ * Where a {@link Graph} has an {@link Edge} object for every bond and an
+ * {@link Atom} reference for every atom, the compact graph stores the
+ * adjacency as primitive arrays (offsets, neighbours and bond labels) and
+ * packs each atom into a single {@code long}. This greatly reduces the
+ * memory needed to hold large libraries of molecules.
+ *
+ * <blockquote><pre>
+ * CompactGraph cg = CompactGraph.of(Graph.fromSmiles("CCO"));
+ * for (int u = 0; u &lt; cg.order(); u++) {
+ *     for (int j = 0; j &lt; cg.degree(u); j++) {
+ *         int  v    = cg.neighbor(u, j);
+ *         Bond bond = cg.bond(u, j);
+ *     }
+ * }
+ * Graph g = cg.toGraph();
+ * </pre></blockquote>
+ *
+ * The order of the edges around each atom is the same as the graph the
+ * compact graph was created from.
+ *
+ * @author John May
+ * @see Graph
+ */
+public final class CompactGraph {
+
+    private static final Element[] ELEMENTS = Element.values();
+    private static final Bond[]    BONDS    = Bond.values();
+
+    /* packed atom layout */
+    private static final int  AROMATIC_BIT  = 8;
+    private static final int  SUBSET_BIT    = 9;
+    private static final int  HCOUNT_SHIFT  = 10;
+    private static final int  CHARGE_SHIFT  = 18;
+    private static final int  ISOTOPE_SHIFT = 26;
+    private static final int  CLASS_SHIFT   = 42;
+    private static final long BYTE_MASK     = 0xff;
+    private static final long SHORT_MASK    = 0xffff;
+    private static final int  MAX_CLASS     = (1 << 21) - 1;
+
+    /** Number of atoms and bonds. */
+    private final int order, size;
+
+    /**
+     * The offsets (first order + 1 values) and neighbours: the neighbours of
+     * atom 'u' are stored from {@code adj[u]} to {@code adj[u+1]}.
+     */
+    private final int[] adj;
+
+    /** Bond label ordinals relative to the atom, aligned with neighbours. */
+    private final byte[] bonds;
+
+    /** Packed atoms, null if an atom could not be packed. */
+    private final long[] packed;
+
+    /** Atoms which could not be packed (e.g. arbitrary labels), otherwise null. */
+    private final Atom[] atoms;
+
+    /** Topologies indexed by atom, null if there are none. */
+    private final Topology[] topologies;
+
+    private final int    flags;
+    private final String title;
+
+    private CompactGraph(int order, int size, int[] adj, byte[] bonds,
+                         long[] packed, Atom[] atoms, Topology[] topologies,
+                         int flags, String title) {
+        this.order = order;
+        this.size = size;
+        this.adj = adj;
+        this.bonds = bonds;
+        this.packed = packed;
+        this.atoms = atoms;
+        this.topologies = topologies;
+        this.flags = flags;
+        this.title = title;
+    }
+
+    /**
+     * Create a compact graph with the same atoms, bonds (and their order
+     * around each atom), topologies, flags and title as the provided graph.
+     *
+     * @param g a chemical graph
+     * @return the compact graph
+     */
+    public static CompactGraph of(Graph g) {
+        final int order = g.order();
+
+        int[] adj = new int[order + 1 + 2 * g.size()];
+        byte[] bonds = new byte[2 * g.size()];
+        int k = order + 1;
+        for (int u = 0; u < order; u++) {
+            adj[u] = k;
+            final int d = g.degree(u);
+            for (int j = 0; j < d; ++j) {
+                final Edge e = g.edgeAt(u, j);
+                bonds[k - order - 1] = (byte) e.bond(u).ordinal();
+                adj[k++] = e.other(u);
+            }
+        }
+        adj[order] = k;
+
+        long[] packed = new long[order];
+        Atom[] atoms = null;
+        for (int u = 0; u < order; u++) {
+            Atom a = g.atom(u);
+            if ((packed[u] = pack(a)) < 0) {
+                atoms = new Atom[order];
+                for (int v = 0; v < order; v++)
+                    atoms[v] = g.atom(v);
+                packed = null;
+                break;
+            }
+        }
+
+        Topology[] topologies = null;
+        for (int u = 0; u < order; u++) {
+            Topology t = g.topologyOf(u);
+            if (t != Topology.unknown()) {
+                if (topologies == null)
+                    topologies = new Topology[order];
+                topologies[u] = t;
+            }
+        }
+
+        return new CompactGraph(order, g.size(), adj, bonds, packed, atoms,
+                                topologies, g.getFlags(), g.getTitle());
+    }
+
+    /**
+     * Pack an atom into a long.
+     *
+     * @param a an atom
+     * @return the packed atom, -1 if the atom could not be packed
+     */
+    static long pack(Atom a) {
+        final Element e = a.element();
+        if (a instanceof AtomImpl.AliphaticSubset || a instanceof AtomImpl.AromaticSubset) {
+            return e.ordinal()
+                    | (a.aromatic() ? 1L : 0L) << AROMATIC_BIT
+                    | 1L << SUBSET_BIT;
+        }
+        if (!(a instanceof AtomImpl.BracketAtom)
+                || !a.label().equals(e.symbol())
+                || a.hydrogens() < 0 || a.hydrogens() > 255
+                || a.charge() < -128 || a.charge() > 127
+                || a.isotope() < -1 || a.isotope() >= SHORT_MASK
+                || a.atomClass() < 0 || a.atomClass() > MAX_CLASS)
+            return -1;
+        return e.ordinal()
+                | (a.aromatic() ? 1L : 0L) << AROMATIC_BIT
+                | (long) a.hydrogens() << HCOUNT_SHIFT
+                | (a.charge() & BYTE_MASK) << CHARGE_SHIFT
+                | (long) (a.isotope() + 1) << ISOTOPE_SHIFT
+                | (long) a.atomClass() << CLASS_SHIFT;
+    }
+
+    /**
+     * Unpack an atom, shared atom instances are returned.
+     *
+     * @param x packed atom
+     * @return the atom
+     */
+    static Atom unpack(long x) {
+        final Element e = ELEMENTS[(int) (x & BYTE_MASK)];
+        final boolean aromatic = (x & 1L << AROMATIC_BIT) != 0;
+        if ((x & 1L << SUBSET_BIT) != 0)
+            return aromatic ? AtomImpl.AromaticSubset.ofElement(e)
+                            : AtomImpl.AliphaticSubset.ofElement(e);
+        return AtomImpl.BracketAtom.of((int) (x >>> ISOTOPE_SHIFT & SHORT_MASK) - 1,
+                                       e,
+                                       (int) (x >>> HCOUNT_SHIFT & BYTE_MASK),
+                                       (byte) (x >>> CHARGE_SHIFT),
+                                       (int) (x >>> CLASS_SHIFT),
+                                       aromatic);
+    }
+
+    /**
+     * Create a mutable chemical graph with the same atoms, bonds (and their
+     * order around each atom), topologies, flags and title.
+     *
+     * @return a new graph
+     */
+    public Graph toGraph() {
+        Graph g = new Graph(Math.max(1, order));
+        for (int u = 0; u < order; u++)
+            g.addAtom(atom(u));
+
+        // each edge is created when first seen (from the lower atom) and
+        // then found again in the neighbours of the higher atom
+        final Edge[] es = new Edge[adj.length - order - 1];
+        for (int u = 0; u < order; u++) {
+            for (int k = adj[u]; k < adj[u + 1]; k++) {
+                final int i = k - order - 1;
+                final int v = adj[k];
+                if (es[i] == null) {
+                    Edge e = new Edge(u, v, BONDS[bonds[i]]);
+                    es[i] = e;
+                    for (int l = adj[v]; l < adj[v + 1]; l++) {
+                        if (adj[l] == u && es[l - order - 1] == null) {
+                            es[l - order - 1] = e;
+                            break;
+                        }
+                    }
+                }
+                g.addEdge(u, es[i]);
+            }
+        }
+
+        if (topologies != null) {
+            for (Topology t : topologies)
+                g.addTopology(t);
+        }
+        g.setFlags(flags);
+        g.setTitle(title);
+        return g;
+    }
+
+    /**
+     * Number of atoms (vertices) in the graph.
+     *
+     * @return number of atoms
+     */
+    public int order() {
+        return order;
+    }
+
+    /**
+     * Number of bonds (edges) in the graph.
+     *
+     * @return number of bonds
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The number of bonds incident to atom 'u'.
+     *
+     * @param u an atom
+     * @return the degree
+     */
+    public int degree(int u) {
+        return adj[u + 1] - adj[u];
+    }
+
+    /**
+     * The j<sup>th</sup> neighbour of atom 'u'.
+     *
+     * @param u an atom
+     * @param j index, 0 &le; j &lt; degree(u)
+     * @return the neighbour
+     */
+    public int neighbor(int u, int j) {
+        return adj[adj[u] + j];
+    }
+
+    /**
+     * The label of the bond from atom 'u' to its j<sup>th</sup> neighbour.
+     * Directional labels are relative to 'u'.
+     *
+     * @param u an atom
+     * @param j index, 0 &le; j &lt; degree(u)
+     * @return the bond label
+     */
+    public Bond bond(int u, int j) {
+        return BONDS[bonds[adj[u] + j - order - 1]];
+    }
+
+    /**
+     * The j<sup>th</sup> edge of atom 'u'. The edge is created on each
+     * invocation, {@link #neighbor(int, int)} and {@link #bond(int, int)}
+     * avoid the allocation.
+     *
+     * @param u an atom
+     * @param j index, 0 &le; j &lt; degree(u)
+     * @return the edge
+     */
+    public Edge edgeAt(int u, int j) {
+        return new Edge(u, neighbor(u, j), bond(u, j));
+    }
+
+    /**
+     * Access the atom at the specified index.
+     *
+     * @param u index of the atom
+     * @return the atom
+     */
+    public Atom atom(int u) {
+        return packed != null ? unpack(packed[u]) : atoms[u];
+    }
+
+    /**
+     * Access the topology of the atom 'u'. If no topology is defined then
+     * {@link Topology#unknown()} is returned.
+     *
+     * @param u an atom
+     * @return the topology of atom 'u'
+     */
+    public Topology topologyOf(int u) {
+        if (topologies == null || topologies[u] == null)
+            return Topology.unknown();
+        return topologies[u];
+    }
+
+    public int getFlags(final int mask) {
+        return this.flags & mask;
+    }
+
+    public int getFlags() {
+        return this.flags;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Generate a SMILES for the graph.
+     *
+     * @return the SMILES string
+     * @throws IOException the graph could not be written as SMILES
+     */
+    public String toSmiles() throws IOException {
+        return toGraph().toSmiles();
+    }
+
+    /**
+     * An estimate of the memory (in bytes) used by this graph assuming
+     * compressed references, 12 byte object headers and 8 byte alignment.
+     * Topologies and the title are not included.
+     *
+     * @return estimated number of bytes
+     */
+    public long bytes() {
+        long bytes = align(12 + 4 + 4 + 4 * 6);
+        bytes += align(16 + 4L * adj.length);
+        bytes += align(16 + bonds.length);
+        if (packed != null)
+            bytes += align(16 + 8L * packed.length);
+        if (atoms != null)
+            bytes += align(16 + 4L * atoms.length);
+        if (topologies != null)
+            bytes += align(16 + 4L * topologies.length);
+        return bytes;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
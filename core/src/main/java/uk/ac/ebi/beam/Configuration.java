@@ -227,6 +227,25 @@ public enum Configuration {
      */
     static Configuration read(final CharBuffer buffer) throws
                                                        InvalidSmilesException {
+        final int beg = buffer.position;
+        final Configuration c = readOrNull(buffer);
+        if (c == null)
+            throw new InvalidSmilesException(invalidMessage(buffer, beg),
+                                             SmilesParser.ErrorCode.InvalidStereo,
+                                             buffer);
+        return c;
+    }
+
+    /**
+     * Read a chiral configuration from a character buffer and progress the
+     * buffer, an invalid permutation designator or incomplete class is
+     * indicated by a null return, the buffer is then left at the error.
+     *
+     * @param buffer a character buffer
+     * @return the configuration, null if invalid
+     * @see #read(CharBuffer)
+     */
+    static Configuration readOrNull(final CharBuffer buffer) {
         if (buffer.getIf('@')) {
             if (buffer.getIf('@')) {
                 return Configuration.CLOCKWISE;
@@ -242,16 +261,14 @@ public enum Configuration {
                     else if (buffer.getIf('2'))
                         return Configuration.TH2;
                     else
-                        throw new InvalidSmilesException("invalid permutation designator for @TH, valid values are @TH1 or @TH2:",
-                                                         buffer);
+                        return null;
                 } else if (buffer.getIf('B')) {
                     int num = buffer.getNumber();
                     if (num < 1 || num > 20)
-                        throw new InvalidSmilesException("invalid permutation designator for @TB, valid values are '@TB1, @TB2, ... @TB20:'",
-                                                         buffer);
+                        return null;
                     return tbs[num];
                 }
-                throw new InvalidSmilesException("'@T' is not a valid chiral specification:", buffer);
+                return null;
             } else if (buffer.getIf('D')) {
                 // DB (double bond)
                 if (buffer.getIf('B')) {
@@ -260,10 +277,9 @@ public enum Configuration {
                     else if (buffer.getIf('2'))
                         return Configuration.DB2;
                     else
-                        throw new InvalidSmilesException("invalid permutation designator for @DB, valid values are @DB1 or @DB2:",
-                                                         buffer);
+                        return null;
                 }
-                throw new InvalidSmilesException("'@D' is not a valid chiral specification:", buffer);
+                return null;
             } else if (buffer.getIf('A')) {
                 // allene (extended tetrahedral)
                 if (buffer.getIf('L')) {
@@ -272,9 +288,9 @@ public enum Configuration {
                     else if (buffer.getIf('2'))
                         return Configuration.AL2;
                     else
-                        throw new InvalidSmilesException("invalid permutation designator for @AL, valid values are '@AL1 or @AL2':", buffer);
+                        return null;
                 } else {
-                    throw new InvalidSmilesException("'@A' is not a valid chiral specification:", buffer);
+                    return null;
                 }
             } else if (buffer.getIf('S')) {
                 // square planar
@@ -286,20 +302,19 @@ public enum Configuration {
                     else if (buffer.getIf('3'))
                         return Configuration.SP3;
                     else
-                        throw new InvalidSmilesException("invalid permutation designator for @SP, valid values are '@SP1, @SP2 or @SP3':",
-                                                         buffer);
+                        return null;
                 } else {
-                    throw new InvalidSmilesException("'@S' is not a valid chiral specification:", buffer);
+                    return null;
                 }
             } else if (buffer.getIf('O')) {
                 if (buffer.getIf('H')) {
                     // octahedral
                     int num = buffer.getNumber();
                     if (num < 1 || num > 30)
-                        throw new InvalidSmilesException("invalid permutation designator for @OH, valud values are '@OH1, @OH2, ... @OH30':", buffer);
+                        return null;
                     return ohs[num];
                 } else {
-                    throw new InvalidSmilesException("'@O' is not a valid chiral specification:", buffer);
+                    return null;
                 }
             } else {
                 return Configuration.ANTI_CLOCKWISE;
@@ -308,6 +323,40 @@ public enum Configuration {
         return UNKNOWN;
     }
 
+    /**
+     * The message for an invalid configuration which started at 'beg', the
+     * buffer is at the position the error was found.
+     *
+     * @param buffer a character buffer
+     * @param beg    position of the '@'
+     * @return the message
+     * @see #readOrNull(CharBuffer)
+     */
+    static String invalidMessage(final CharBuffer buffer, int beg) {
+        // the class was read in full if we are past the first two letters
+        final boolean full = buffer.position > beg + 2;
+        switch (buffer.charAt(beg + 1)) {
+            case 'T':
+                if (!full)
+                    return "'@T' is not a valid chiral specification:";
+                if (buffer.charAt(beg + 2) == 'H')
+                    return "invalid permutation designator for @TH, valid values are @TH1 or @TH2:";
+                return "invalid permutation designator for @TB, valid values are '@TB1, @TB2, ... @TB20:'";
+            case 'D':
+                return full ? "invalid permutation designator for @DB, valid values are @DB1 or @DB2:"
+                            : "'@D' is not a valid chiral specification:";
+            case 'A':
+                return full ? "invalid permutation designator for @AL, valid values are '@AL1 or @AL2':"
+                            : "'@A' is not a valid chiral specification:";
+            case 'S':
+                return full ? "invalid permutation designator for @SP, valid values are '@SP1, @SP2 or @SP3':"
+                            : "'@S' is not a valid chiral specification:";
+            default:
+                return full ? "invalid permutation designator for @OH, valud values are '@OH1, @OH2, ... @OH30':"
+                            : "'@O' is not a valid chiral specification:";
+        }
+    }
+
     /** Types of configuration. */
     public enum Type {
         None,
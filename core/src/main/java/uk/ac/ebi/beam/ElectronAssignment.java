@@ -86,7 +86,8 @@ final class ElectronAssignment {
      */
     private static int visit(Graph g, int v, int c, boolean[] visited) {
         visited[v] = true;
-        for (final Edge e : g.edges(v)) {
+        for (int j = 0; j < g.degree(v); j++) {
+            final Edge e = g.edgeAt(v, j);
             int w = e.other(v);
             if (!visited[w] && e.bond().order() == 1)
                 c = visit(g, w, c, visited);
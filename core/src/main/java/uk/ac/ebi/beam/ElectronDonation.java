@@ -108,7 +108,8 @@ abstract class ElectronDonation {
             int deg = g.degree(u) + g.implHCount(u);
             Edge acyclic = null;
             int sum = 0;
-            for (final Edge e : g.edges(u)) {
+            for (int j = 0; j < g.degree(u); j++) {
+                final Edge e = g.edgeAt(u, j);
                 sum += e.bond().order();
                 if (e.bond().order() == 2) {
                     if (!cyclic.get(e.other(u))) {
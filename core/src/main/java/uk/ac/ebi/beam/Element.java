@@ -244,6 +244,20 @@ public enum Element {
 
     private static final Element[] elements = new Element[119];
 
+    /**
+     * Look up of elements by one (ASCII) character symbol, includes the
+     * lower-case aromatic symbols.
+     */
+    private static final Element[] symbols1 = new Element[128];
+
+    /**
+     * Look up of elements by two character symbol, indexed by the first
+     * (ASCII) character and the second (lower-case) character
+     * ({@code c * 26 + (next - 'a')}), includes the lower-case aromatic
+     * symbols.
+     */
+    private static final Element[] symbols2 = new Element[128 * 26];
+
     /** Provide verification of valence/charge values. */
     private ElementCheck defaults = ElementCheck.NO_CHECK;
 
@@ -254,6 +268,14 @@ public enum Element {
             elements[element.atomicNumber] = element;
         }
 
+        for (Map.Entry<String, Element> e : elementMap.entrySet()) {
+            String symbol = e.getKey();
+            if (symbol.length() == 1)
+                symbols1[symbol.charAt(0)] = e.getValue();
+            else
+                symbols2[symbol.charAt(0) * 26 + (symbol.charAt(1) - 'a')] = e.getValue();
+        }
+
         // load normal ranges from 'element-defaults.txt' and set for the
         // elements
         for (Map.Entry<String, ElementCheck> e : loadDefaults().entrySet()) {
@@ -470,9 +492,10 @@ public enum Element {
         char c = buffer.get();
         if (buffer.hasRemaining() && buffer.next() >= 'a' && buffer
                 .next() <= 'z') {
-            return elementMap.get(new String(new char[]{c, buffer.get()}));
+            char next = buffer.get();
+            return c < 128 ? symbols2[c * 26 + (next - 'a')] : null;
         }
-        return elementMap.get(Character.toString(c));
+        return c < 128 ? symbols1[c] : null;
     }
 
     static Map<String, ElementCheck> loadDefaults() {
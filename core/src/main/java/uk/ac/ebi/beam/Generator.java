@@ -29,14 +29,8 @@
 
 package uk.ac.ebi.beam;
 
-import java.lang.reflect.Array;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 
 /**
  * Generate a SMILES line notation for a given chemical graph.
@@ -45,15 +39,70 @@ import java.util.Map;
  */
 final class Generator {
 
-    private final Graph         g;
-    private final StringBuilder sb;
+    private Graph         g;
+    private StringBuilder sb;
 
-    private final int[]                           visitedAt;
-    private final int[]                           tmp;
-    private       int                             nVisit;
-    private final AtomToken[]                     tokens;
-    private final Map<Integer, List<RingClosure>> rings;
-    private final RingNumbering                   rnums;
+    private       int[]                 visitedAt;
+    private final int[]                 tmp = new int[4];
+    private       int                   nVisit;
+    private       Configuration[]       configs = new Configuration[0];
+    private       RingNumbering         rnums;
+
+    /**
+     * Ring closures, the closures of each atom are a linked list (in the
+     * order they were found) through the 'next' index of the closure for
+     * that end.
+     */
+    private       int[]                 ringHead  = new int[0],
+                                        ringTail  = new int[0],
+                                        ringCount = new int[0];
+    private       int[]                 rcU       = new int[8],
+                                        rcV       = new int[8],
+                                        rcNextU   = new int[8],
+                                        rcNextV   = new int[8],
+                                        rcNum     = new int[8];
+    private       Bond[]                rcBond    = new Bond[8];
+    private       int                   nRings;
+
+    /**
+     * Traversal state, see {@link #write(int, Bond)}. The explicit stack, the
+     * atoms in output order, where the token of each atom ends (or will be
+     * placed) in the output and the positions of branches which were opened
+     * but turned out to be the last branch.
+     */
+    private       int[]                 stackU = new int[0],
+                                        stackP = new int[0],
+                                        stackJ = new int[0],
+                                        order  = new int[0],
+                                        endAt  = new int[0],
+                                        unopen = new int[16];
+    private       int                   nUnopen;
+    private       boolean               patch;
+    private       char[]                text   = new char[64];
+
+    /**
+     * Buffers reused by the convenience methods, one set per thread. Only the
+     * primitive arrays are kept, nothing which would keep the classes (and
+     * class loader) of this library reachable from a pooled thread. Larger
+     * graphs use new buffers so that those kept by a thread remain small.
+     */
+    private static final ThreadLocal<Object[]> LOCAL           = new ThreadLocal<Object[]>();
+    private static final int                   MAX_LOCAL_ORDER = 512;
+
+    /** Lower case symbols of aromatic atoms, indexed by element ordinal. */
+    private static final String[] AROMATIC_SYMBOLS = new String[Element.values().length];
+
+    static {
+        for (Element e : Element.values())
+            AROMATIC_SYMBOLS[e.ordinal()] = e.symbol().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Create a generator which can be reused for many graphs, see {@link
+     * #generate(Graph, int[], RingNumbering, StringBuilder)}.
+     */
+    Generator() {
+    }
 
     /**
      * Create a new generator the given chemical graph.
@@ -71,43 +120,358 @@ final class Generator {
      * @param visitedAt the index of the atom in the output         
      */
     Generator(Graph g, int[] visitedAt, RingNumbering rnums) throws InvalidSmilesException {
+        generate(g, visitedAt, rnums, new StringBuilder(g.order() * 2));
+    }
+
+    /**
+     * Append the SMILES of a chemical graph to a string builder. The buffers
+     * of the generator are kept and reused for the next graph.
+     *
+     * @param g         chemical graph
+     * @param visitedAt the index of the atom in the output
+     * @param rnums     ring numbering, reset before use
+     * @param sb        the SMILES is appended to this builder
+     * @throws InvalidSmilesException the SMILES could not be generated
+     */
+    void generate(Graph g, int[] visitedAt, RingNumbering rnums, StringBuilder sb) throws InvalidSmilesException {
+        final int n = g.order();
         this.g = g;
         this.rnums = rnums;
-        this.sb = new StringBuilder(g.order() * 2);
+        this.sb = sb;
         this.visitedAt = visitedAt;
-        this.tmp = new int[4];
-        this.tokens = new AtomToken[g.order()];
-        this.rings = new HashMap<Integer, List<RingClosure>>();
+        this.nVisit = 0;
+        if (configs.length < n)
+            configs = new Configuration[Math.max(n, 2 * configs.length)];
+        if (rcBond.length < rcU.length)
+            rcBond = new Bond[rcU.length];
+        if (stackU.length < n) {
+            final int cap = Math.max(n, 2 * stackU.length);
+            ringHead = new int[cap];
+            ringTail = new int[cap];
+            ringCount = new int[cap];
+            stackU = new int[cap];
+            stackP = new int[cap];
+            stackJ = new int[cap];
+            order = new int[cap];
+            endAt = new int[cap];
+        }
+        Arrays.fill(ringCount, 0, n, 0);
+        nRings = 0;
+        rnums.reset();
+
+        try {
+            generate();
+        } finally {
+            // do not keep the graph reachable once written
+            this.g = null;
+            this.visitedAt = null;
+        }
+    }
 
-        // prepare ring closures and topologies
+    /**
+     * Use the buffers kept by a thread, see {@link #LOCAL}.
+     *
+     * @param buffers the buffers from {@link #buffers(Object[])}
+     */
+    private void use(Object[] buffers) {
+        ringHead = (int[]) buffers[0];
+        ringTail = (int[]) buffers[1];
+        ringCount = (int[]) buffers[2];
+        stackU = (int[]) buffers[3];
+        stackP = (int[]) buffers[4];
+        stackJ = (int[]) buffers[5];
+        order = (int[]) buffers[6];
+        endAt = (int[]) buffers[7];
+        unopen = (int[]) buffers[8];
+        rcU = (int[]) buffers[9];
+        rcV = (int[]) buffers[10];
+        rcNextU = (int[]) buffers[11];
+        rcNextV = (int[]) buffers[12];
+        rcNum = (int[]) buffers[13];
+        text = (char[]) buffers[14];
+    }
+
+    /**
+     * Store the (primitive) buffers of this generator to be kept by a
+     * thread, see {@link #LOCAL}.
+     *
+     * @param buffers array to store the buffers in, null to create one
+     * @return the buffers
+     */
+    private Object[] buffers(Object[] buffers) {
+        if (buffers == null)
+            buffers = new Object[15];
+        buffers[0] = ringHead;
+        buffers[1] = ringTail;
+        buffers[2] = ringCount;
+        buffers[3] = stackU;
+        buffers[4] = stackP;
+        buffers[5] = stackJ;
+        buffers[6] = order;
+        buffers[7] = endAt;
+        buffers[8] = unopen;
+        buffers[9] = rcU;
+        buffers[10] = rcV;
+        buffers[11] = rcNextU;
+        buffers[12] = rcNextV;
+        buffers[13] = rcNum;
+        buffers[14] = text;
+        return buffers;
+    }
+
+    private void generate() throws InvalidSmilesException {
         Arrays.fill(visitedAt, -1);
         for (int u = 0; u < g.order() && nVisit < g.order(); u++) {
-            if (visitedAt[u] < 0)
-                prepare(u, u);
+            if (visitedAt[u] < 0) {
+                if (u > 0)
+                    rnums.reset();
+                write(u, u > 0 ? Bond.DOT : Bond.IMPLICIT);
+            }
         }
+    }
 
-        if (g.getFlags(Graph.HAS_EXT_STRO) != 0) {
-            for (int u = 0; u < g.order(); u++) {
-                if (g.topologyOf(u).configuration().type() == Configuration.Type.ExtendedTetrahedral) {
-                    setAllenalStereo(g, visitedAt, u);
+    /**
+     * Write a component of the molecule in a single depth first traversal.
+     * The traversal keeps an explicit stack (vertex, open branch, next edge)
+     * rather than recursing so very long chains can be written with the
+     * default thread stack size.
+     * <p/>
+     * Ring closures are only found once we reach the second atom and the
+     * configuration of a stereocentre depends on the order its neighbours
+     * (and ring closures) are visited. Ring bonds and numbers and tokens of
+     * atoms with a topology are therefore left out and inserted in the
+     * output once the component is complete, see {@link #patch(int, int)}.
+     * Likewise, we do not know if a neighbour will be a branch or a ring
+     * closure, a branch is opened when there are unvisited neighbours after
+     * it and is removed if they were all visited by the time we return.
+     *
+     * @param u root vertex
+     * @param b the bond before the root (dot or implicit)
+     */
+    private void write(int u, Bond b) throws InvalidSmilesException {
+        final int from  = sb.length();
+        final int first = nVisit;
+        nUnopen = 0;
+        patch   = false;
+
+        int top = 0;
+        open(u, b);
+        stackU[0] = u;
+        stackP[0] = -1;
+        stackJ[0] = 0;
+
+        while (top >= 0) {
+            u = stackU[top];
+            final int p = top > 0 ? stackU[top - 1] : u;
+
+            final int d = g.degree(u);
+            boolean descend = false;
+            while (stackJ[top] < d) {
+                final Edge e = g.edgeAt(u, stackJ[top]++);
+                int v = e.other(u);
+                if (visitedAt[v] < 0) {
+                    if (unvisited(u, stackJ[top])) {
+                        stackP[top] = sb.length();
+                        sb.append('(');
+                    } else {
+                        stackP[top] = -1;
+                    }
+                    open(v, e.bond(u));
+                    ++top;
+                    stackU[top] = v;
+                    stackP[top] = -1;
+                    stackJ[top] = 0;
+                    descend = true;
+                    break;
+                } else if (v != p && visitedAt[v] < visitedAt[u]) {
+                    cyclicEdge(v, u, e.bond(v));
+                    patch = true;
                 }
             }
-        }
 
-        // write notation
-        nVisit = 0;
-        Arrays.fill(visitedAt, -1);
-        for (int u = 0; u < g.order() && nVisit < g.order(); u++) {
-            if (visitedAt[u] < 0) {
-                if (u > 0) {
-                    rnums.reset();
-                    write(u, u, Bond.DOT);
+            // all neighbours done, all ring closures of 'u' are now known
+            if (!descend) {
+                if (g.topologyOf(u) != Topology.unknown())
+                    prepareStereochemistry(u, p);
+                // close the branch we were in (if any)
+                if (--top >= 0 && stackP[top] >= 0) {
+                    if (unvisited(stackU[top], stackJ[top])) {
+                        sb.append(')');
+                    } else {
+                        if (nUnopen == unopen.length)
+                            unopen = Arrays.copyOf(unopen, 2 * nUnopen);
+                        unopen[nUnopen++] = stackP[top];
+                        patch = true;
+                    }
                 }
-                else {
-                    write(u, u, Bond.IMPLICIT);
+            }
+        }
+
+        if (patch)
+            patch(from, first);
+    }
+
+    /**
+     * Visit the vertex 'u' and append the bond we came from and its atom,
+     * atoms with a topology are appended when patching.
+     *
+     * @param u a vertex
+     * @param b the bond from the previous vertex to this vertex
+     */
+    private void open(int u, Bond b) {
+        visitedAt[u] = nVisit;
+        order[nVisit++] = u;
+        configs[u] = Configuration.UNKNOWN;
+
+        sb.append(b.token());
+        if (g.topologyOf(u) == Topology.unknown())
+            appendAtom(u);
+        else
+            patch = true;
+        endAt[u] = sb.length();
+    }
+
+    /**
+     * Append the atom 'u' to the SMILES string.
+     *
+     * @param u a vertex
+     */
+    private void appendAtom(int u) {
+        final Atom    atom    = g.atom(u);
+        final Element element = atom.element();
+        final String  symbol  = atom.aromatic() ? AROMATIC_SYMBOLS[element.ordinal()]
+                                                : element.symbol();
+        if (atom.subset()) {
+            sb.append(symbol);
+            return;
+        }
+
+        final Configuration c = configs[u];
+        final boolean hExpand = element == Element.Hydrogen &&
+                                g.degree(u) == 0;
+        sb.append('[');
+        if (atom.isotope() >= 0)
+            sb.append(atom.isotope());
+        sb.append(symbol);
+        if (c != Configuration.UNKNOWN) {
+            switch (c.type()) {
+                case SquarePlanar:
+                    sb.append(g.degree(u) == 4 ? c.shorthand().symbol() : c.symbol());
+                    break;
+                case TrigonalBipyramidal:
+                    sb.append(g.degree(u) == 5 ? c.shorthand().symbol() : c.symbol());
+                    break;
+                case Octahedral:
+                    sb.append(g.degree(u) == 6 ? c.shorthand().symbol() : c.symbol());
+                    break;
+                default:
+                    sb.append(c.shorthand().symbol());
+                    break;
+            }
+        }
+        if (atom.hydrogens() > 0 && !hExpand)
+            sb.append('H');
+        if (atom.hydrogens() > 1 && !hExpand)
+            sb.append(atom.hydrogens());
+        if (atom.charge() != 0) {
+            sb.append(atom.charge() > 0 ? '+' : '-');
+            int absCharge = Math.abs(atom.charge());
+            if (absCharge > 1)
+                sb.append(absCharge);
+        }
+        if (atom.atomClass() != 0)
+            sb.append(':').append(atom.atomClass());
+        sb.append(']');
+        if (hExpand) {
+            int h = atom.hydrogens();
+            while (h > 1) {
+                sb.append("([H])");
+                h--;
+            }
+            if (h > 0)
+                sb.append("[H]");
+        }
+    }
+
+    /**
+     * Is there an unvisited neighbour of 'u' at or after the edge index 'j'.
+     *
+     * @param u a vertex
+     * @param j edge index
+     * @return an unvisited neighbour exists
+     */
+    private boolean unvisited(int u, int j) {
+        final int d = g.degree(u);
+        for (; j < d; j++) {
+            if (visitedAt[g.edgeAt(u, j).other(u)] < 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Rewrite the component starting at 'from' removing the branches that
+     * were not needed and inserting the tokens of atoms with a topology and
+     * the ring bonds and numbers after each atom. Ring numbers are assigned
+     * in output order.
+     *
+     * @param from  start of the component in the output
+     * @param first visit index of the first atom of the component
+     */
+    private void patch(int from, int first) throws InvalidSmilesException {
+        final int len = sb.length() - from;
+        if (text.length < len)
+            text = new char[Math.max(len, 2 * text.length)];
+        sb.getChars(from, from + len, text, 0);
+        sb.setLength(from);
+
+        // inner branches are resolved first
+        Arrays.sort(unopen, 0, nUnopen);
+
+        final boolean allenes = g.getFlags(Graph.HAS_EXT_STRO) != 0;
+
+        int pos = 0, r = 0;
+        for (int i = first; i < nVisit; i++) {
+            final int      u        = order[i];
+            final Topology topology = g.topologyOf(u);
+            if (topology == Topology.unknown() && ringCount[u] == 0)
+                continue;
+
+            final int end = endAt[u] - from;
+            for (; r < nUnopen && unopen[r] - from < end; r++) {
+                sb.append(text, pos, unopen[r] - from - pos);
+                pos = unopen[r] - from + 1;
+            }
+            sb.append(text, pos, end - pos);
+            pos = end;
+
+            if (topology != Topology.unknown()) {
+                if (allenes && topology.configuration().type() == Configuration.Type.ExtendedTetrahedral)
+                    setAllenalStereo(g, visitedAt, u);
+                appendAtom(u);
+            }
+
+            for (int rc = ringHead[u], k = ringCount[u]; k > 0; rc = nextRing(rc, u), k--) {
+                int rnum = rnums.next();
+                if (rcNum[rc] < 0) {
+                    // opening, the bond is written on this side
+                    rcNum[rc] = rnum;
+                    sb.append(rcU[rc] == u ? rcBond[rc] : rcBond[rc].inverse());
+                    rnums.use(rnum);
+                } else {
+                    rnum = rcNum[rc];
+                    rnums.free(rnum);
                 }
+                if (rnum > 9)
+                    sb.append('%');
+                sb.append(rnum);
             }
         }
+        for (; r < nUnopen; r++) {
+            sb.append(text, pos, unopen[r] - from - pos);
+            pos = unopen[r] - from + 1;
+        }
+        sb.append(text, pos, len - pos);
     }
 
     private void setAllenalStereo(Graph g, int[] visitedAt, int u)
@@ -121,10 +485,10 @@ final class Generator {
         int aAtom = a.other(u);
         int bAtom = b.other(u);
 
-        if (rings.get(aAtom) == null && rings.get(bAtom) == null) {
+        if (ringCount[aAtom] == 0 && ringCount[bAtom] == 0) {
             // no rings on either end, this is simply the order we visited the
             // atoms in
-            tokens[u].configure(g.topologyOf(u).configurationOf(visitedAt));
+            configs[u] = g.topologyOf(u).configurationOf(visitedAt);
         } else {
             // hokay this case is harder... this makes me wince but BEAM v2
             // has a much better way of handling this
@@ -140,65 +504,38 @@ final class Generator {
                 bAtom = swap;
             }
 
-            assert rings.get(aAtom) == null || rings.get(aAtom).size() == 1;
-            assert rings.get(bAtom) == null || rings.get(bAtom).size() == 1;
+            assert ringCount[aAtom] <= 1;
+            assert ringCount[bAtom] <= 1;
 
-            if (rings.get(aAtom) != null) {
-                tmp[rings.get(aAtom).get(0).other(aAtom)] = visitedAt[aAtom];
+            if (ringCount[aAtom] != 0) {
+                tmp[otherRing(ringHead[aAtom], aAtom)] = visitedAt[aAtom];
             }
-            if (rings.get(bAtom) != null) {
-                tmp[rings.get(bAtom).get(0).other(bAtom)] = visitedAt[bAtom];
+            if (ringCount[bAtom] != 0) {
+                tmp[otherRing(ringHead[bAtom], bAtom)] = visitedAt[bAtom];
             }
 
-            tokens[u].configure(g.topologyOf(u).configurationOf(tmp));
+            configs[u] = g.topologyOf(u).configurationOf(tmp);
         }
     }
 
-    /**
-     * First traversal of the molecule assigns ring bonds (numbered later) and
-     * configures topologies.
-     *
-     * @param u the vertex to visit
-     * @param p the atom we came from
-     */
-    void prepare(int u, int p) {
-        visitedAt[u] = nVisit++;
-        tokens[u] = g.atom(u).token();
-        tokens[u].setGraph(g);
-        tokens[u].setIdx(u);
-
-        final int d = g.degree(u);
-        for (int j=0; j<d; ++j) {
-            final Edge e = g.edgeAt(u,j);
-            int v = e.other(u);
-            if (visitedAt[v] < 0) {
-                prepare(v, u);
-            } else if (v != p && visitedAt[v] < visitedAt[u]) {
-                cyclicEdge(v, u, e.bond(v));
-            }
-        }
-
-        prepareStereochemistry(u, p);
-    }
-
     private void prepareStereochemistry(int u, int prev) {
         final Topology topology = g.topologyOf(u);
         if (topology != Topology.unknown()) {
-            List<RingClosure> closures = rings.get(u);
-            if (closures != null) {
+            final int nClosures = ringCount[u];
+            if (nClosures != 0) {
                 
                 // most of time we only have a single closure, we can
                 // handle this easily by moving the ranks of the prev
                 // and curr atom back and using the curr rank for the
                 // ring
-                if (closures.size() == 1) {
-                    int ring = closures.get(0).other(u);
+                if (nClosures == 1) {
+                    int ring = otherRing(ringHead[u], u);
                     int uAt = visitedAt[u]; 
                     int rAt = visitedAt[ring]; 
                     visitedAt[prev]--;
                     visitedAt[u]--;
                     visitedAt[ring] = uAt;
-                    tokens[u].configure(topology.configurationOf(visitedAt));
+                    configs[u] = topology.configurationOf(visitedAt);
                     // restore
                     visitedAt[prev]++;
                     visitedAt[u]++;
@@ -207,114 +544,93 @@ final class Generator {
                     // more complicated, we first move the other two atoms out
                     // the way then store and change the current ranks of the 
                     // ring atoms. We restore all visitedAt once we exit
-                    assert closures.size() <= 4; 
+                    assert nClosures <= 4; 
                     
                     visitedAt[prev] -= 4;
                     visitedAt[u] -= 4;
                     int rank = visitedAt[u]; 
-                    for (int i = 0; i < closures.size(); ++i) {
-                        final int v = closures.get(i).other(u);
+                    for (int i = 0, rc = ringHead[u]; i < nClosures; ++i, rc = nextRing(rc, u)) {
+                        final int v = otherRing(rc, u);
                         tmp[i] = visitedAt[v];
                         visitedAt[v] = ++rank;
                     }
                     
-                    tokens[u].configure(topology.configurationOf(visitedAt));
+                    configs[u] = topology.configurationOf(visitedAt);
                     // restore
-                    for (int i = 0; i < closures.size(); ++i)
-                        visitedAt[closures.get(i).other(u)] = tmp[i];
+                    for (int i = 0, rc = ringHead[u]; i < nClosures; ++i, rc = nextRing(rc, u))
+                        visitedAt[otherRing(rc, u)] = tmp[i];
                     visitedAt[prev] += 4;
                     visitedAt[u] += 4;
                 }
             }
             else {
-                tokens[u].configure(topology.configurationOf(visitedAt));
+                configs[u] = topology.configurationOf(visitedAt);
             }
         }
     }
 
     /**
-     * Second traversal writes the bonds and atoms to the SMILES string.
+     * Indicate that the edge connecting the vertices u and v forms a ring.
      *
      * @param u a vertex
-     * @param p previous vertex
-     * @param b the bond from the previous vertex to this vertex
+     * @param v a vertex connected to u
+     * @param b bond type connecting u to v
      */
-    void write(int u, int p, Bond b) throws InvalidSmilesException {
-        visitedAt[u] = nVisit++;
-
-        int remaining = g.degree(u);
-
-        if (u != p)
-            remaining--;
-
-        // assign ring numbers
-        final List<RingClosure> closures = rings.get(u);
-        if (closures != null) {
-            for (RingClosure rc : closures) {
-                // as we are composing tokens, make sure apply in reverse
-                int rnum = rnums.next();
-                if (rc.register(rnum)) {
-                    int v = rc.other(u);
-                    tokens[u] = new RingNumberToken(new RingBondToken(tokens[u],
-                                                                      rc.bond(u)),
-                                                    rnum);
-                    rnums.use(rnum);
-                } else {
-                    tokens[u] = new RingNumberToken(tokens[u],
-                                                    rc.rnum);
-                    rnums.free(rc.rnum);
-                }
-                remaining--;
-            }
-        }
-
-        sb.append(b.token());
-        tokens[u].append(sb);
-
-        final int d = g.degree(u);
-        for (int j=0; j<d; ++j) {
-            final Edge e = g.edgeAt(u,j);
-            int v = e.other(u);
-            if (visitedAt[v] < 0) {
-                if (--remaining > 0) {
-                    sb.append('(');
-                    write(v, u, e.bond(u));
-                    sb.append(')');
-                } else {
-                    write(v, u, e.bond(u));
-                }
-            }
-        }
+    private void cyclicEdge(int u, int v, Bond b) {
+        if (nRings == rcU.length) {
+            final int cap = 2 * nRings;
+            rcU = Arrays.copyOf(rcU, cap);
+            rcV = Arrays.copyOf(rcV, cap);
+            rcNextU = Arrays.copyOf(rcNextU, cap);
+            rcNextV = Arrays.copyOf(rcNextV, cap);
+            rcNum = Arrays.copyOf(rcNum, cap);
+            rcBond = Arrays.copyOf(rcBond, cap);
+        }
+        final int rc = nRings++;
+        rcU[rc] = u;
+        rcV[rc] = v;
+        rcBond[rc] = b;
+        rcNum[rc] = -1;
+        addRing(u, rc);
+        addRing(v, rc);
     }
 
-   
+    /**
+     * Add a ring closure to the end of the closures of the vertex 'u'.
+     *
+     * @param u  a vertex
+     * @param rc ring closure
+     */
+    private void addRing(int u, int rc) {
+        if (ringCount[u]++ == 0)
+            ringHead[u] = rc;
+        else if (rcU[ringTail[u]] == u)
+            rcNextU[ringTail[u]] = rc;
+        else
+            rcNextV[ringTail[u]] = rc;
+        ringTail[u] = rc;
+    }
 
     /**
-     * Indicate that the edge connecting the vertices u and v forms a ring.
+     * The ring closure after 'rc' in the closures of the vertex 'u'.
      *
-     * @param u a vertex
-     * @param v a vertex connected to u
-     * @param b bond type connecting u to v
+     * @param rc ring closure
+     * @param u  an end of the closure
+     * @return the next ring closure (undefined for the last closure)
      */
-    private void cyclicEdge(int u, int v, Bond b) {
-        RingClosure r = new RingClosure(u, v, b);
-        addRing(r.u, r);
-        addRing(r.v, r);
+    private int nextRing(int rc, int u) {
+        return rcU[rc] == u ? rcNextU[rc] : rcNextV[rc];
     }
 
     /**
-     * Add a ring closure to the the vertex 'u'.
+     * The other end of the ring closure 'rc'.
      *
-     * @param u  a vertex
      * @param rc ring closure
+     * @param u  an end of the closure
+     * @return the other end
      */
-    private void addRing(int u, RingClosure rc) {
-        List<RingClosure> closures = rings.get(u);
-        if (closures == null) {
-            closures = new ArrayList<RingClosure>(2);
-            rings.put(u, closures);
-        }
-        closures.add(rc);
+    private int otherRing(int rc, int u) {
+        return rcU[rc] == u ? rcV[rc] : rcU[rc];
     }
 
     /**
@@ -334,7 +650,7 @@ final class Generator {
      * @return SMILES gor the provided chemical graph
      */
     static String generate(final Graph g) throws InvalidSmilesException {
-        return new Generator(g, new IterativeRingNumbering(1)).string();
+        return generate(g, new int[g.order()]);
     }
 
     /**
@@ -346,185 +662,24 @@ final class Generator {
      * @return SMILES gor the provided chemical graph
      */
     static String generate(final Graph g, int[] visitedAt) throws InvalidSmilesException {
-        return new Generator(g, visitedAt, new IterativeRingNumbering(1)).string();
-    }
-
-    static final class RingClosure {
-        final int u, v;
-        final Bond b;
-        int rnum = -1;
-
-        RingClosure(int u, int v, Bond b) {
-            this.u = u;
-            this.v = v;
-            this.b = b;
-        }
-
-        int other(int x) {
-            if (x == u) return v;
-            if (x == v) return u;
-            throw new IllegalArgumentException("non edge endpoint");
-        }
-
-        Bond bond(int x) {
-            if (x == u) return b;
-            else if (x == v) return b.inverse();
-            throw new IllegalArgumentException("invalid endpoint");
-        }
-
-        boolean register(int rnum) {
-            if (this.rnum < 0) {
-                this.rnum = rnum;
-                return true;
-            }
-            return false;
-        }
-    }
-
-    static abstract class AtomToken {
-
-        Graph g;
-        int idx;
-
-        void setGraph(Graph g) {
-            this.g = g;
-        }
-
-        void setIdx(int idx) {
-            this.idx = idx;
-        }
-
-        abstract void configure(Configuration c);
-
-        abstract void append(StringBuilder sb);
-    }
-
-    static final class SubsetToken extends AtomToken {
-        private final String str;
-
-        SubsetToken(String str) {
-            this.str = str;
-        }
-
-        @Override public void configure(Configuration c) {
-            // do nothing
-        }
-
-        @Override public void append(StringBuilder sb) {
-            sb.append(str);
-        }
-    }
-
-    static final class BracketToken extends AtomToken {
-
-        private Atom atom;
-        private Configuration c = Configuration.UNKNOWN;
-
-        BracketToken(Atom a) {
-            this.atom = a;
-        }
-
-        @Override public void configure(Configuration c) {
-            this.c = c;
-        }
-
-        @Override public void append(StringBuilder sb) {
-            boolean hExpand = atom.element() == Element.Hydrogen &&
-                              g.degree(idx) == 0;
-            sb.append('[');
-            if (atom.isotope() >= 0)
-                sb.append(atom.isotope());
-            sb.append(atom.aromatic() ? atom.element()
-                                            .symbol()
-                                            .toLowerCase(Locale.ENGLISH)
-                                      : atom.element()
-                                            .symbol());
-            if (c != Configuration.UNKNOWN) {
-                switch (c.type()) {
-                    case SquarePlanar:
-                        sb.append(g.degree(idx) == 4 ? c.shorthand().symbol() : c.symbol());
-                        break;
-                    case TrigonalBipyramidal:
-                        sb.append(g.degree(idx) == 5 ? c.shorthand().symbol() : c.symbol());
-                        break;
-                    case Octahedral:
-                        sb.append(g.degree(idx) == 6 ? c.shorthand().symbol() : c.symbol());
-                        break;
-                    default:
-                        sb.append(c.shorthand().symbol());
-                        break;
-                }
-            }
-            if (atom.hydrogens() > 0 && !hExpand)
-                sb.append(Element.Hydrogen.symbol());
-            if (atom.hydrogens() > 1 && !hExpand)
-                sb.append(atom.hydrogens());
-            if (atom.charge() != 0) {
-                sb.append(atom.charge() > 0 ? '+' : '-');
-                int absCharge = Math.abs(atom.charge());
-                if (absCharge > 1)
-                    sb.append(absCharge);
-            }
-            if (atom.atomClass() != 0)
-                sb.append(':').append(atom.atomClass());
-            sb.append(']');
-            if (hExpand) {
-                int h = atom.hydrogens();
-                while (h > 1) {
-                    sb.append("([H])");
-                    h--;
-                }
-                if (h > 0)
-                    sb.append("[H]");
-            }
-        }
-    }
-
-    static abstract class TokenAdapter extends AtomToken {
-
-        private AtomToken parent;
-
-        TokenAdapter(AtomToken parent) {
-            this.parent = parent;
-        }
-
-        @Override public final void configure(Configuration c) {
-            this.parent.configure(c);
-        }
-
-        @Override public void append(StringBuilder sb) {
-            parent.append(sb);
-        }
-    }
-
-    static final class RingNumberToken extends TokenAdapter {
-        int rnum;
-
-        RingNumberToken(AtomToken p, int rnum) {
-            super(p);
-            this.rnum = rnum;
-        }
-
-        @Override public void append(StringBuilder sb) {
-            super.append(sb);
-            if (rnum > 9)
-                sb.append('%');
-            sb.append(rnum);
-        }
-    }
-
-    static final class RingBondToken extends TokenAdapter {
-        Bond bond;
-
-        RingBondToken(AtomToken p, Bond bond) {
-            super(p);
-            this.bond = bond;
-        }
-
-        @Override public void append(StringBuilder sb) {
-            super.append(sb);
-            sb.append(bond);
+        if (g.order() > MAX_LOCAL_ORDER)
+            return new Generator(g, visitedAt, new IterativeRingNumbering(1)).string();
+        final StringBuilder sb = new StringBuilder(g.order() * 2);
+        // the buffers are taken from the thread while in use, generating
+        // can call back to user code (a lazy stereo warning listener) which
+        // may generate another SMILES and must not reuse these buffers
+        final Generator generator = new Generator();
+        final Object[]  buffers   = LOCAL.get();
+        if (buffers != null) {
+            LOCAL.set(null);
+            generator.use(buffers);
+        }
+        try {
+            generator.generate(g, visitedAt, new IterativeRingNumbering(1), sb);
+        } finally {
+            LOCAL.set(generator.buffers(buffers));
         }
+        return sb.toString();
     }
 
     /** Defines how ring numbering proceeds. */
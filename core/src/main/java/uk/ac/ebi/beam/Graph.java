@@ -30,8 +30,10 @@
 package uk.ac.ebi.beam;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -67,9 +69,21 @@ public final class Graph {
 
     private int[] valences;
 
+    /**
+     * Implicit hydrogen count of each atom, {@link #UNSET} if not yet
+     * computed. The count depends on the atom, its degree and bonded valence
+     * and so is reset when any of these change.
+     */
+    private int[] hydrogens;
+
+    private static final int UNSET = Integer.MIN_VALUE;
+
     /** Incidence list storage of edges with attached bond labels. * */
     private Edge[][] edges;
 
+    /** Shared incidence array for vertices with no edges. */
+    private static final Edge[] NO_EDGES = new Edge[0];
+
     /** Topologies indexed by the atom which they describe. */
     private Topology topologies[];
 
@@ -82,6 +96,34 @@ public final class Graph {
     /** Molecule title. */
     private String title;
 
+    /**
+     * Creates the topologies when they are first accessed (or the graph is
+     * modified), null if there are no deferred topologies.
+     */
+    private volatile Parser.TopologyBuilder deferred;
+
+    /**
+     * A frozen graph can not be modified, see {@link #freeze()}. Set last
+     * when freezing, a thread which reads it set also sees the frozen state.
+     */
+    private volatile boolean frozen;
+
+    /** Lazily computed properties of a frozen graph. */
+    private volatile RingInfo rings;
+
+    /**
+     * Lazily assigned edge ids, the first 'order + 1' values are offsets of
+     * each atom's ids which are aligned with its incidence array. Null if
+     * not computed or the edges have changed.
+     */
+    private volatile int[] edgeIds;
+
+    /**
+     * Incidence arrays shared with a frozen graph, see {@link #derive()}. A
+     * shared array is copied before it is modified, null if none are shared.
+     */
+    private BitSet sharedRows;
+
     /**
      * Create a new chemical graph with expected size.
      *
@@ -91,11 +133,12 @@ public final class Graph {
         this.order = 0;
         this.size = 0;
         this.edges = new Edge[expSize][];
-        for (int i = 0; i < expSize; i++)
-            edges[i] = new Edge[4];
+        Arrays.fill(edges, NO_EDGES);
         this.atoms = new Atom[expSize];
         this.degrees = new int[expSize];
         this.valences = new int[expSize];
+        this.hydrogens = new int[expSize];
+        Arrays.fill(hydrogens, UNSET);
         this.topologies = new Topology[expSize];
     }
 
@@ -105,18 +148,20 @@ public final class Graph {
      * @param org original graph
      */
     Graph(Graph org) {
+        org.resolveTopologies();
         this.order      = org.order;
         this.size       = org.size;
         this.flags      = org.flags;
         this.atoms      = Arrays.copyOf(org.atoms, order);
         this.valences   = Arrays.copyOf(org.valences, order);
+        this.hydrogens  = Arrays.copyOf(org.hydrogens, order);
         this.degrees    = new int[order];
         this.edges      = new Edge[order][];
         this.topologies = Arrays.copyOf(org.topologies, org.topologies.length);
         
         for (int u = 0; u < order; u++) {
             final int deg = org.degrees[u];
-            this.edges[u] = new Edge[deg];
+            this.edges[u] = deg == 0 ? NO_EDGES : new Edge[deg];
             for (int j = 0; j < deg; ++j) {
                 final Edge e = org.edges[u][j];
                 final int  v = e.other(u);
@@ -137,7 +182,10 @@ public final class Graph {
      * @param a atom
      */
     void setAtom(int i, Atom a) {
+        checkMutable();
+        resolveTopologies();
         atoms[i] = a;
+        hydrogens[i] = UNSET;
     }
 
     /** Resize the graph if we are at maximum capacity. */
@@ -145,11 +193,12 @@ public final class Graph {
         if (order >= atoms.length) {
             atoms      = Arrays.copyOf(atoms, order * 2);
             valences   = Arrays.copyOf(valences, order * 2);
+            hydrogens  = Arrays.copyOf(hydrogens, order * 2);
+            Arrays.fill(hydrogens, order, hydrogens.length, UNSET);
             degrees    = Arrays.copyOf(degrees, order * 2);
             edges      = Arrays.copyOf(edges, order * 2);
             topologies = Arrays.copyOf(topologies, order * 2);
-            for (int i = order; i < edges.length; i++)
-                edges[i] = new Edge[4];
+            Arrays.fill(edges, order, edges.length, NO_EDGES);
         }
     }
 
@@ -160,6 +209,7 @@ public final class Graph {
      * @return index of the atom in the graph (vertex)
      */
     int addAtom(Atom a) {
+        checkMutable();
         ensureCapacity();
         atoms[order++] = a;
         return order - 1;
@@ -181,7 +231,11 @@ public final class Graph {
      * @param e new edge
      */
     void addEdge(Edge e) {
+        checkMutable();
+        resolveTopologies();
         int u = e.either(), v = e.other(u);
+        ownRow(u);
+        ownRow(v);
         ensureEdgeCapacity(u);
         ensureEdgeCapacity(v);
         edges[u][degrees[u]++] = e;
@@ -189,12 +243,44 @@ public final class Graph {
         int ord = e.bond().order();
         valences[u] += ord;
         valences[v] += ord;
+        hydrogens[u] = hydrogens[v] = UNSET;
+        edgeIds = null;
         size++;
     }
     
+    /**
+     * (internal) - add an edge to the incidence list of only one endpoint,
+     * 'u'. This allows a graph to be rebuilt with the same order of edges
+     * around each atom, the edge must also be added to the other endpoint.
+     * The edge is counted once, when added to {@link Edge#either()}.
+     *
+     * @param u an endpoint of the edge
+     * @param e the edge
+     */
+    void addEdge(int u, Edge e) {
+        checkMutable();
+        resolveTopologies();
+        ownRow(u);
+        ensureEdgeCapacity(u);
+        edges[u][degrees[u]++] = e;
+        valences[u] += e.bond().order();
+        hydrogens[u] = UNSET;
+        edgeIds = null;
+        if (u == e.either())
+            size++;
+    }
+
+    /**
+     * Ensure there is space to add an edge to vertex 'i'. The incidence
+     * arrays are allocated on the first edge, most atoms have a degree of
+     * at most 4.
+     *
+     * @param i a vertex
+     */
     private void ensureEdgeCapacity(int i) {
-        if (degrees[i] == edges[i].length)
-            edges[i] = Arrays.copyOf(edges[i], degrees[i] + 2);
+        final int d = degrees[i];
+        if (d == edges[i].length)
+            edges[i] = d == 0 ? new Edge[4] : Arrays.copyOf(edges[i], d + 2);
     }
 
     /**
@@ -218,11 +304,17 @@ public final class Graph {
     }
 
     void updateBondedValence(int i, int x) {
+        checkMutable();
+        resolveTopologies();
         valences[i] += x;
+        hydrogens[i] = UNSET;
     }
 
     /**
-     * Access the edges of which vertex 'u' is an endpoint.
+     * Access the edges of which vertex 'u' is an endpoint. The edges are
+     * copied to a new list, {@link #degree(int)} and {@link #edgeAt(int,
+     * int)} (or {@link #neighborCursor(int)}) allow iteration without
+     * allocation.
      *
      * @param u a vertex
      * @return edges incident to 'u'
@@ -235,23 +327,85 @@ public final class Graph {
      * Access the vertices adjacent to 'u' in <b>sorted</b> order. This
      * convenience method is provided to assist in configuring atom-based stereo
      * using the {@link #configurationOf(int)} method. For general purpose
-     * access to the neighbors of a vertex the {@link #edges(int)} is
-     * preferred.
+     * access to the neighbors of a vertex the {@link #degree(int)} and {@link
+     * #edgeAt(int, int)}, {@link #neighborCursor(int)} or {@link
+     * #forEachNeighbor(int, IntBondConsumer)} are preferred, they do not
+     * allocate a new array.
      *
      * @param u a vertex
      * @return fixed-size array of vertices
      * @see #configurationOf(int)
      */
     public int[] neighbors(int u) {
-        List<Edge> es = edges(u);
-        int[] vs = new int[es.size()];
-        int deg = es.size();
-        for (int i = 0; i < deg; i++)
-            vs[i] = es.get(i).other(u);
-        Arrays.sort(vs);
+        int[] vs = new int[degrees[u]];
+        neighbors(u, vs);
         return vs;
     }
 
+    /**
+     * Fill the provided array with the vertices adjacent to 'u' in
+     * <b>sorted</b> order (as {@link #neighbors(int)}) without allocating a
+     * new array. The array must have capacity for {@link #degree(int)}
+     * vertices.
+     *
+     * @param u  a vertex
+     * @param vs array to fill with the adjacent vertices
+     * @return the number of adjacent vertices (degree)
+     * @throws ArrayIndexOutOfBoundsException the array was too small
+     */
+    public int neighbors(int u, int[] vs) {
+        final int d = degrees[u];
+        if (vs.length < d)
+            throw new ArrayIndexOutOfBoundsException("array too small, capacity needed: " + d);
+        for (int j = 0; j < d; ++j)
+            vs[j] = edges[u][j].other(u);
+        Arrays.sort(vs, 0, d);
+        return d;
+    }
+
+    /**
+     * Visit the vertices adjacent to 'u' in the order of the edges. The
+     * bond label is relative to 'u'.
+     *
+     * <blockquote><pre>
+     * g.forEachNeighbor(u, new Graph.IntBondConsumer() {
+     *     public void accept(int v, Bond bond) {
+     *         ...
+     *     }
+     * });
+     * </pre></blockquote>
+     *
+     * @param u        a vertex
+     * @param consumer called for each adjacent vertex
+     */
+    public void forEachNeighbor(int u, IntBondConsumer consumer) {
+        final int d = degrees[u];
+        final Edge[] es = edges[u];
+        for (int j = 0; j < d; ++j)
+            consumer.accept(es[j].other(u), es[j].bond(u));
+    }
+
+    /**
+     * Create a cursor over the vertices adjacent to 'u'. The cursor can be
+     * {@link NeighborCursor#reset(int) reset} and reused for other vertices.
+     *
+     * <blockquote><pre>
+     * Graph.NeighborCursor c = g.neighborCursor(0);
+     * for (int u = 0; u &lt; g.order(); u++) {
+     *     for (c.reset(u); c.next(); ) {
+     *         int  v    = c.neighbor();
+     *         Bond bond = c.bond();
+     *     }
+     * }
+     * </pre></blockquote>
+     *
+     * @param u a vertex
+     * @return cursor over the adjacent vertices
+     */
+    public NeighborCursor neighborCursor(int u) {
+        return new NeighborCursor(this).reset(u);
+    }
+
     /**
      * Determine if the vertices 'u' and 'v' are adjacent and there is an edge
      * which connects them.
@@ -275,11 +429,17 @@ public final class Graph {
      * the count does not include any bonded vertices which may also be
      * hydrogen.
      *
+     * The count is computed by {@link Atom#hydrogens(Graph, int)} and then
+     * cached until the atom, its degree or bonded valence change.
+     *
      * @param u the vertex to access the implicit h count for.
      * @return the number of implicit hydrogens
      */
     public int implHCount(int u) {
-        return atom(u).hydrogens(this, u);
+        int h = hydrogens[u];
+        if (h == UNSET)
+            hydrogens[u] = h = atoms[u].hydrogens(this, u);
+        return h;
     }
 
     /**
@@ -304,6 +464,93 @@ public final class Graph {
         return edges[u][j];
     }
 
+    /**
+     * The id of the j'th edge of vertex 'u'. Edges are numbered densely from
+     * 0 to {@link #size()} - 1 in the order they are listed by {@link
+     * #edges()}, both endpoints see the same id. The ids are stable until the
+     * edges of the graph are added or {@link #sort(EdgeComparator) sorted}
+     * and allow per edge data to be stored in an array or bit set.
+     *
+     * <blockquote><pre>
+     * Edge[] replacement = new Edge[g.size()];
+     * for (int u = 0; u &lt; g.order(); u++) {
+     *     for (int j = 0; j &lt; g.degree(u); j++) {
+     *         Edge e = replacement[g.edgeId(u, j)];
+     *         ...
+     *     }
+     * }
+     * </pre></blockquote>
+     *
+     * @param u a vertex
+     * @param j index of the edge in the edges of 'u'
+     * @return the edge id
+     */
+    public int edgeId(int u, int j) {
+        final int[] ids = edgeIds();
+        return ids[ids[u] + j];
+    }
+
+    /**
+     * The id of an edge of the graph, see {@link #edgeId(int, int)}.
+     *
+     * @param e an edge of this graph
+     * @return the edge id
+     * @throws IllegalArgumentException the edge is not in this graph
+     */
+    public int edgeId(Edge e) {
+        final int u = e.either();
+        for (int j = 0; j < degrees[u]; j++) {
+            if (edges[u][j] == e)
+                return edgeId(u, j);
+        }
+        throw new IllegalArgumentException("edge is not in the graph: " + e);
+    }
+
+    /**
+     * Access the edge ids, assigning them if needed. The computation is not
+     * synchronized, concurrent first access may assign the ids more than
+     * once but the result is the same.
+     *
+     * @return the edge ids
+     */
+    private int[] edgeIds() {
+        int[] ids = edgeIds;
+        if (ids == null)
+            edgeIds = ids = assignEdgeIds();
+        return ids;
+    }
+
+    private int[] assignEdgeIds() {
+        int n = order + 1;
+        for (int u = 0; u < order; u++)
+            n += degrees[u];
+        final int[] ids = new int[n];
+        int offset = order + 1;
+        for (int u = 0; u < order; u++) {
+            ids[u] = offset;
+            offset += degrees[u];
+        }
+        ids[order] = offset;
+
+        // an edge is numbered when seen from the higher vertex, the lower
+        // vertex has already been visited
+        int id = 0;
+        for (int u = 0; u < order; u++) {
+            for (int j = 0; j < degrees[u]; j++) {
+                final Edge e = edges[u][j];
+                final int v = e.other(u);
+                if (v < u) {
+                    ids[ids[u] + j] = id;
+                    int k = 0;
+                    while (edges[v][k] != e)
+                        k++;
+                    ids[ids[v] + k] = id++;
+                }
+            }
+        }
+        return ids;
+    }
+
     /**
      * Replace an edge in the graph.
      *
@@ -311,10 +558,15 @@ public final class Graph {
      * @param rep the replacement
      */
     void replace(Edge org, Edge rep) {
+        checkMutable();
+        resolveTopologies();
 
         int u = org.either();
         int v = org.other(u);
 
+        ownRow(u);
+        ownRow(v);
+
         for (int i = 0; i < degrees[u]; i++) {
             if (edges[u][i] == org) {
                 edges[u][i] = rep;
@@ -330,6 +582,7 @@ public final class Graph {
         int ord = rep.bond().order() - org.bond().order();
         valences[u] += ord;
         valences[v] += ord;
+        hydrogens[u] = hydrogens[v] = UNSET;
     }
 
     /**
@@ -340,14 +593,58 @@ public final class Graph {
      * @return whether the topology replaced an existing configuration
      */
     void addTopology(Topology t) {
+        checkMutable();
+        resolveTopologies();
+        storeTopology(t);
+    }
+
+    /**
+     * Store a topology without creating any deferred topologies, used by the
+     * {@link Parser.TopologyBuilder}.
+     *
+     * @param t topology
+     */
+    void storeTopology(Topology t) {
         if (t != null && t != Topology.unknown())
             topologies[t.atom()] = t;
     }
 
     void clearTopology(int v) {
+        checkMutable();
+        resolveTopologies();
         topologies[v] = null;
     }
 
+    /**
+     * Defer the creation of the topologies until they are first accessed.
+     *
+     * @param builder creates the topologies
+     */
+    void deferTopologies(Parser.TopologyBuilder builder) {
+        this.deferred = builder;
+    }
+
+    /**
+     * Create any deferred topologies, the topologies are created once even
+     * if the graph is accessed from multiple threads.
+     */
+    void resolveTopologies() {
+        if (deferred != null) {
+            synchronized (this) {
+                final Parser.TopologyBuilder builder = deferred;
+                if (builder != null) {
+                    try {
+                        builder.build();
+                    } catch (InvalidSmilesException e) {
+                        // not thrown, errors are reported as warnings
+                        throw new IllegalStateException(e);
+                    }
+                    deferred = null;
+                }
+            }
+        }
+    }
+
     /**
      * Access the topology of the vertex 'u'. If no topology is defined then
      * {@link Topology#unknown()} is returned.
@@ -356,6 +653,7 @@ public final class Graph {
      * @return the topology of vertex 'u'
      */
     public Topology topologyOf(int u) {
+        resolveTopologies();
         if (topologies[u] == null)
             return Topology.unknown();
         return topologies[u];
@@ -428,12 +726,66 @@ public final class Graph {
                                                InvalidSmilesException {
         if (smi == null)
             throw new NullPointerException("no SMILES provided");
-        Parser parser = new Parser(CharBuffer.fromString(smi), false);
-        for (String warn : parser.getWarnings()) {
-            for (String line : warn.split("\n"))
-              System.err.println("SMILES Warning: " + line);
-        }
-        return parser.molecule();
+        return fromSmiles(CharBuffer.fromString(smi));
+    }
+
+    /**
+     * Create a graph from a SMILES encoded as ASCII bytes. The bytes are read
+     * in place without first being decoded to a {@link String}, a title
+     * following the SMILES is decoded as UTF-8.
+     *
+     * @param bs  the bytes
+     * @param off offset of the SMILES in the bytes
+     * @param len number of bytes to read
+     * @return graph instance from the SMILES
+     * @throws InvalidSmilesException thrown if there was a syntax error while
+     *                                parsing the SMILES.
+     */
+    public static Graph fromSmiles(byte[] bs, int off, int len) throws
+                                                                InvalidSmilesException {
+        if (bs == null)
+            throw new NullPointerException("no SMILES provided");
+        return fromSmiles(CharBuffer.fromBytes(bs, off, len));
+    }
+
+    /**
+     * Create a graph from a SMILES encoded as ASCII bytes in the remaining
+     * (position - limit) region of a byte buffer. Direct and memory mapped
+     * buffers are read in place, the position of the buffer is not modified.
+     *
+     * @param bb the byte buffer
+     * @return graph instance from the SMILES
+     * @throws InvalidSmilesException thrown if there was a syntax error while
+     *                                parsing the SMILES.
+     */
+    public static Graph fromSmiles(ByteBuffer bb) throws InvalidSmilesException {
+        if (bb == null)
+            throw new NullPointerException("no SMILES provided");
+        return fromSmiles(CharBuffer.fromBytes(bb));
+    }
+
+    /**
+     * Create a graph from a SMILES string passing any warnings to the
+     * provided listener. Warnings can be ignored entirely with {@link
+     * ParseWarning#DISCARD}.
+     *
+     * @param smi      string containing SMILES line notation.
+     * @param listener receives warnings
+     * @return graph instance from the SMILES
+     * @throws InvalidSmilesException thrown if there was a syntax error while
+     *                                parsing the SMILES.
+     */
+    public static Graph fromSmiles(String smi, ParseWarning.Listener listener) throws
+                                                                              InvalidSmilesException {
+        if (smi == null)
+            throw new NullPointerException("no SMILES provided");
+        if (listener == null)
+            throw new NullPointerException("no warning listener provided");
+        return new Parser(false, listener).parse(CharBuffer.fromString(smi));
+    }
+
+    private static Graph fromSmiles(CharBuffer buffer) throws InvalidSmilesException {
+        return new Parser(false, ParseWarning.STDERR).parse(buffer);
     }
 
     public static Graph parse(String smi, boolean strict, Set<String> warnings) throws InvalidSmilesException {
@@ -492,15 +844,19 @@ public final class Graph {
      * Resonate bond assignments in conjugate rings such that two SMILES with
      * the same ordering have the same kekulé assignment.
      * 
-     * @return (self) - the graph is mutated
+     * @return (self) - the graph is mutated, unless the graph is frozen in
+     *         which case a new graph is returned
      */
     public Graph resonate() {
+        if (frozen)
+            return Localise.resonate(copyInOrder(), cyclic(), false);
         return Localise.resonate(this);
     }
 
     /**
      * Localise delocalized (aromatic) bonds in this molecule producing the
-     * Kekulé form. The original graph <b>is</b> modified.
+     * Kekulé form. The original graph <b>is</b> modified, unless it is frozen
+     * in which case a new graph is returned.
      *
      * <blockquote><pre>
      * Graph furan        = Graph.fromSmiles("o1cccc1").kekule();
@@ -525,6 +881,8 @@ public final class Graph {
      * @throws InvalidSmilesException molecule exploded on contact with reality
      */
     public Graph kekule() throws InvalidSmilesException {
+        if (frozen)
+            return Localise.localiseInPlace(copyInOrder());
         return Localise.localiseInPlace(this);
     }
 
@@ -570,9 +928,10 @@ public final class Graph {
             int d = degrees[u];
             // v is the image of u in the permutation
             final int v = p[u];
-            if (d > 4) cpy.edges[v] = new Edge[d];
+            if (d > 0) cpy.edges[v] = new Edge[d];
             cpy.atoms[v]    = atoms[u];
             cpy.valences[v] = valences[u];
+            cpy.hydrogens[v] = hydrogens[u];
             cpy.addTopology(topologyOf(u).transform(p));
             while (--d >= 0) {
                 final Edge e = edgeAt(u, d);
@@ -640,15 +999,287 @@ public final class Graph {
     }
 
     void clear() {
+        checkMutable();
+        deferred = null;
         Arrays.fill(topologies, Topology.unknown());
         for (int i = 0; i < order; i++) {
             atoms[i] = null;
             degrees[i] = 0;
+            valences[i] = 0;
+            hydrogens[i] = UNSET;
         }
+        edgeIds = null;
         order = 0;
         size = 0;
     }
 
+    /**
+     * Create a frozen (unmodifiable) copy of this graph. Derived properties
+     * of a frozen graph, such as the ring membership and implicit hydrogen
+     * counts, are computed once when first needed and then reused. A frozen
+     * graph can be shared between threads, as for any other object the graph
+     * should be published safely (e.g. through a final or volatile field, or
+     * a concurrent collection).
+     *
+     * <blockquote><pre>
+     * Graph g = Graph.fromSmiles("c1ccccc1CC1CC1").freeze();
+     * g.ringSize(0);      // 6
+     * g.ringSystemCount() // 2
+     * </pre></blockquote>
+     *
+     * Methods which would modify the graph throw an {@link
+     * IllegalStateException}, except {@link #kekule()} and {@link
+     * #resonate()} which return a new graph.
+     *
+     * @return a frozen graph, this graph if it is already frozen
+     */
+    public Graph freeze() {
+        if (frozen)
+            return this;
+        Graph cpy = copyInOrder();
+        cpy.frozen = true;
+        return cpy;
+    }
+
+    /**
+     * Copy the graph keeping the order of edges around each atom, the copy
+     * is not frozen. Unlike {@link #Graph(Graph)} the copy writes the same
+     * SMILES and is modified the same way as the original would be.
+     *
+     * @return a copy of the graph
+     */
+    private Graph copyInOrder() {
+        resolveTopologies();
+
+        // each edge is copied when first seen (from the lower atom) and then
+        // found in the copied edges of the lower atom when seen again
+        Graph cpy = new Graph(Math.max(1, order));
+        for (int u = 0; u < order; u++)
+            cpy.addAtom(atoms[u]);
+        for (int u = 0; u < order; u++) {
+            for (int j = 0; j < degrees[u]; j++) {
+                final Edge e = edges[u][j];
+                final int v = e.other(u);
+                if (v > u) {
+                    cpy.addEdge(u, new Edge(e));
+                } else {
+                    int k = 0;
+                    while (cpy.edges[v][k].other(v) != u)
+                        k++;
+                    cpy.addEdge(u, cpy.edges[v][k]);
+                }
+            }
+            cpy.storeTopology(topologies[u]);
+        }
+        System.arraycopy(valences, 0, cpy.valences, 0, order);
+        cpy.flags = flags;
+        cpy.title = title;
+        return cpy;
+    }
+
+    /**
+     * Whether the graph is frozen.
+     *
+     * @return the graph can not be modified
+     * @see #freeze()
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkMutable() {
+        if (frozen)
+            throw new IllegalStateException("graph is frozen");
+    }
+
+    /**
+     * (internal) - a copy of the graph for a function which changes only
+     * some of the atoms, topologies or edges. The edge objects are shared.
+     * If this graph is frozen its incidence arrays are also shared and the
+     * copy clones an array before modifying it (copy-on-write), otherwise
+     * the arrays are copied. This graph is never modified, it may be derived
+     * from concurrently. The flags and title are not copied.
+     *
+     * The edges of each atom are ordered as if they had been added to a new
+     * graph atom by atom, edges to lower numbered neighbors first. Only
+     * incidence arrays not already in this order are copied.
+     *
+     * @return a copy of the graph
+     */
+    Graph derive() {
+        resolveTopologies();
+        final Graph cpy = new Graph(0);
+        cpy.order      = order;
+        cpy.size       = size;
+        cpy.atoms      = atoms.clone();
+        cpy.degrees    = degrees.clone();
+        cpy.valences   = valences.clone();
+        cpy.hydrogens  = hydrogens.clone();
+        cpy.topologies = topologies.clone();
+        cpy.edges      = new Edge[edges.length][];
+        Arrays.fill(cpy.edges, NO_EDGES);
+
+        final BitSet rows = new BitSet();
+        for (int u = 0; u < order; u++) {
+            if (degrees[u] == 0)
+                continue;
+            if (!inAddedOrder(u)) {
+                cpy.edges[u] = inAddedOrder(edges[u], degrees[u], u);
+            } else if (frozen) {
+                // a frozen graph never modifies its incidence arrays
+                cpy.edges[u] = edges[u];
+                rows.set(u);
+            } else {
+                cpy.edges[u] = Arrays.copyOf(edges[u], degrees[u]);
+            }
+        }
+        if (!rows.isEmpty())
+            cpy.sharedRows = rows;
+        return cpy;
+    }
+
+    /**
+     * Whether the edges of 'u' are in the order a copy would add them, edges
+     * to lower numbered neighbors in ascending order then those to higher
+     * numbered neighbors.
+     */
+    private boolean inAddedOrder(int u) {
+        int last = -1;
+        boolean higher = false;
+        for (int j = 0; j < degrees[u]; j++) {
+            final int v = edges[u][j].other(u);
+            if (v > u) {
+                higher = true;
+            } else {
+                if (higher || v < last)
+                    return false;
+                last = v;
+            }
+        }
+        return true;
+    }
+
+    private static Edge[] inAddedOrder(Edge[] es, int deg, int u) {
+        final Edge[] row = new Edge[deg];
+        int n = 0;
+        for (int j = 0; j < deg; j++) {
+            final Edge e = es[j];
+            final int v = e.other(u);
+            if (v < u) {
+                int k = n++;
+                while (k > 0 && row[k - 1].other(u) > v) {
+                    row[k] = row[k - 1];
+                    k--;
+                }
+                row[k] = e;
+            }
+        }
+        for (int j = 0; j < deg; j++) {
+            if (es[j].other(u) > u)
+                row[n++] = es[j];
+        }
+        return row;
+    }
+
+    /**
+     * Copy the incidence array of 'u' if it is shared with another graph.
+     *
+     * @param u a vertex
+     */
+    private void ownRow(int u) {
+        if (sharedRows != null && sharedRows.get(u)) {
+            edges[u] = edges[u].clone();
+            sharedRows.clear(u);
+        }
+    }
+
+    /**
+     * The ring properties of the graph, computed once for a frozen graph.
+     * The computation is not synchronized, concurrent first access may
+     * compute the properties more than once but the result is the same.
+     *
+     * @return ring properties
+     */
+    RingInfo rings() {
+        if (!frozen)
+            return new RingInfo(this);
+        RingInfo info = rings;
+        if (info == null)
+            rings = info = new RingInfo(this);
+        return info;
+    }
+
+    /**
+     * The cyclic atoms of the graph, the set is shared for a frozen graph
+     * and must not be modified.
+     *
+     * @return cyclic atoms
+     */
+    BitSet cyclic() {
+        if (frozen)
+            return rings().cyclic();
+        return new BiconnectedComponents(this).cyclic();
+    }
+
+    /**
+     * Whether the atom 'u' belongs to a ring.
+     *
+     * @param u an atom
+     * @return the atom is in a ring
+     */
+    public boolean inRing(int u) {
+        return ringSize(u) > 0;
+    }
+
+    /**
+     * The size of the smallest ring containing atom 'u'. For repeated
+     * queries the graph should be {@link #freeze() frozen}.
+     *
+     * @param u an atom
+     * @return the smallest ring size, 0 if the atom is not in a ring
+     */
+    public int ringSize(int u) {
+        return rings().atomRingSize(u);
+    }
+
+    /**
+     * The size of the smallest ring containing the edge 'e'. For repeated
+     * queries the graph should be {@link #freeze() frozen}.
+     *
+     * @param e an edge of this graph
+     * @return the smallest ring size, 0 if the edge is not in a ring
+     * @throws IllegalArgumentException the edge is not in this graph
+     */
+    public int ringSize(Edge e) {
+        final int u = e.either();
+        for (int j = 0; j < degrees[u]; j++) {
+            if (edges[u][j] == e)
+                return rings().bondRingSize(u, j);
+        }
+        throw new IllegalArgumentException("edge is not in the graph: " + e);
+    }
+
+    /**
+     * The ring system of atom 'u', rings sharing at least one atom belong to
+     * the same system. Ring systems are numbered from 0 in the order of their
+     * lowest atom.
+     *
+     * @param u an atom
+     * @return the ring system, -1 if the atom is not in a ring
+     */
+    public int ringSystem(int u) {
+        return rings().ringSystem(u);
+    }
+
+    /**
+     * The number of ring systems in the graph.
+     *
+     * @return number of ring systems
+     */
+    public int ringSystemCount() {
+        return rings().ringSystemCount();
+    }
+
     public int getFlags(final int mask) {
         return this.flags & mask;
     }
@@ -658,14 +1289,17 @@ public final class Graph {
     }
 
     void addFlags(final int mask) {
+        checkMutable();
         this.flags = flags | mask;
     }
 
     void setFlags(final int flags) {
+        checkMutable();
         this.flags = flags;
     }
 
     public void setTitle(String title) {
+        checkMutable();
         this.title = title;
     }
     
@@ -681,7 +1315,18 @@ public final class Graph {
      * @return the graph
      */
     public Graph sort(EdgeComparator comparator) {
+        checkMutable();
+        resolveTopologies();
+        edgeIds = null;
         for (int u = 0; u < order; u++) {
+
+            // a shared incidence array is only copied if it is unsorted
+            if (sharedRows != null && sharedRows.get(u)) {
+                if (sorted(comparator, u))
+                    continue;
+                ownRow(u);
+            }
+
             final Edge[] es = edges[u];
 
             // insertion sort as most atoms have small degree <= 4
@@ -698,6 +1343,14 @@ public final class Graph {
         return this;
     }
 
+    private boolean sorted(EdgeComparator comparator, int u) {
+        for (int j = 1; j < degrees[u]; j++) {
+            if (comparator.less(this, u, edges[u][j], edges[u][j - 1]))
+                return false;
+        }
+        return true;
+    }
+
     /**
      * Defines a method for arranging the neighbors of an atom.
      */
@@ -715,6 +1368,89 @@ public final class Graph {
         boolean less(Graph g, int u, Edge e, Edge f);
     }
 
+    /**
+     * Receives the vertices adjacent to another vertex.
+     *
+     * @see #forEachNeighbor(int, IntBondConsumer)
+     */
+    public static interface IntBondConsumer {
+
+        /**
+         * Accept an adjacent vertex.
+         *
+         * @param v    the adjacent vertex
+         * @param bond the bond label (relative to the visited vertex)
+         */
+        void accept(int v, Bond bond);
+    }
+
+    /**
+     * A reusable cursor over the vertices adjacent to a vertex, in the order
+     * of the edges. The graph should not be modified while the cursor is in
+     * use.
+     *
+     * @see #neighborCursor(int)
+     */
+    public static final class NeighborCursor {
+
+        private final Graph g;
+        private int u, j, d;
+
+        private NeighborCursor(Graph g) {
+            this.g = g;
+        }
+
+        /**
+         * Move the cursor to (before) the first vertex adjacent to 'u'.
+         *
+         * @param u a vertex
+         * @return this cursor
+         */
+        public NeighborCursor reset(int u) {
+            this.u = u;
+            this.j = -1;
+            this.d = g.degrees[u];
+            return this;
+        }
+
+        /**
+         * Advance to the next adjacent vertex.
+         *
+         * @return whether there was another adjacent vertex
+         */
+        public boolean next() {
+            return ++j < d;
+        }
+
+        /**
+         * The current adjacent vertex.
+         *
+         * @return adjacent vertex
+         */
+        public int neighbor() {
+            return g.edges[u][j].other(u);
+        }
+
+        /**
+         * The label of the current edge relative to the vertex the cursor was
+         * reset to.
+         *
+         * @return bond label
+         */
+        public Bond bond() {
+            return g.edges[u][j].bond(u);
+        }
+
+        /**
+         * The current edge.
+         *
+         * @return the edge
+         */
+        public Edge edge() {
+            return g.edges[u][j];
+        }
+    }
+
     /**
      * Sort the neighbors of each atom such that hydrogens are visited first and
      * deuterium before tritium. 
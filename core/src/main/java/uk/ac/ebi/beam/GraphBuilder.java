@@ -78,10 +78,29 @@ public final class GraphBuilder {
         this.valence = new int[nAtoms];
     }
 
+    /**
+     * Internal constructor, wrap a graph which was built without the
+     * per-atom builder methods (the valence is not tracked).
+     *
+     * @param g the graph
+     */
+    private GraphBuilder(Graph g) {
+        this.g = g;
+    }
+
     public static GraphBuilder create(int n) {
         return new GraphBuilder(n);
     }
 
+    /**
+     * Start building a graph from primitive arrays, see {@link BulkBuilder}.
+     *
+     * @return a builder for the arrays
+     */
+    public static BulkBuilder bulk() {
+        return new BulkBuilder();
+    }
+
     /**
      * Add an aliphatic element with the specified number of carbons.
      *
@@ -263,7 +282,8 @@ public final class GraphBuilder {
 
     private Edge findDoubleBond(Graph g, int i) {
         Edge res = null;
-        for (Edge e : g.edges(i)) {
+        for (int j = 0; j < g.degree(i); j++) {
+            Edge e = g.edgeAt(i, j);
             if (e.bond() != Bond.DOUBLE)
                 continue;
             if (res != null)
@@ -275,7 +295,8 @@ public final class GraphBuilder {
 
     private Edge findBondToLabel(Graph g, int i) {
         Edge res = null;
-        for (Edge e : g.edges(i)) {
+        for (int j = 0; j < g.degree(i); j++) {
+            Edge e = g.edgeAt(i, j);
             if (e.bond().order() != 1)
                 continue;
             if (res == null)
@@ -427,14 +448,18 @@ public final class GraphBuilder {
             }
 
             // propagate bond directions to other adjacent bonds
-            for (Edge e : g.edges(u))
+            for (int j = 0; j < g.degree(u); j++) {
+                Edge e = g.edgeAt(u, j);
                 if (e.bond() != Bond.DOUBLE && !e.bond().directional()) {
                     e.bond(e.either() == u ? first.inverse() : first);
                 }
-            for (Edge e : g.edges(v))
+            }
+            for (int j = 0; j < g.degree(v); j++) {
+                Edge e = g.edgeAt(v, j);
                 if (e.bond() != Bond.DOUBLE && !e.bond().directional()) {
                     e.bond(e.either() == v ? second.inverse() : second);
                 }
+            }
         }
 
         // unspecified pibonds should "not" have a configuration, if they
@@ -445,21 +470,26 @@ public final class GraphBuilder {
             // no problem if one side isn't defined
             if (!hasDirectional(g, u) || !hasDirectional(g, v))
                 continue;
-            for (Edge e : g.edges(u))
+            for (int j = 0; j < g.degree(u); j++) {
+                Edge e = g.edgeAt(u, j);
                 if (isRedundantDirectionalEdge(g, e, unspecified))
                     e.bond(Bond.IMPLICIT);
+            }
             if (!hasDirectional(g, u))
                 continue;
-            for (Edge e : g.edges(v))
+            for (int j = 0; j < g.degree(v); j++) {
+                Edge e = g.edgeAt(v, j);
                 if (isRedundantDirectionalEdge(g, e, unspecified))
                     e.bond(Bond.IMPLICIT);
+            }
             // if (hasDirectional(g, v))
             // could generate warning!
         }
     }
 
     private boolean hasDirectional(Graph g, int v) {
-        for (Edge e : g.edges(v)) {
+        for (int j = 0; j < g.degree(v); j++) {
+            Edge e = g.edgeAt(v, j);
             if (e.bond().directional())
                 return true;
         }
@@ -472,13 +502,17 @@ public final class GraphBuilder {
         int u = edge.either();
         int v = edge.other(u);
         if (!unspecified.get(u)) {
-            for (Edge f : g.edges(u))
+            for (int j = 0; j < g.degree(u); j++) {
+                Edge f = g.edgeAt(u, j);
                 if (f.bond().directional() && edge != f)
                     return true;
+            }
         } else if (!unspecified.get(v)) {
-            for (Edge f : g.edges(v))
+            for (int j = 0; j < g.degree(v); j++) {
+                Edge f = g.edgeAt(v, j);
                 if (f.bond().directional() && edge != f)
                     return true;
+            }
         }
         return false;
     }
@@ -522,14 +556,16 @@ public final class GraphBuilder {
         // the edge is next to another double bond configuration, we
         // need to consider its assignment
         if (adjToDb.get(x) && g.degree(x) > 2) {
-            for (Edge f : g.edges(x)) {
+            for (int j = 0; j < g.degree(x); j++) {
+                Edge f = g.edgeAt(x, j);
                 if (f.other(x) != u && f.bond() != Bond.DOUBLE && f.bond().directional())
                     return f.bond(x);    
             }
         } 
         // consider other labels on this double-bond
         if (g.degree(u) > 2) {
-            for (Edge f : g.edges(u)) {
+            for (int j = 0; j < g.degree(u); j++) {
+                Edge f = g.edgeAt(u, j);
                 if (f.other(u) != x && f.bond() != Bond.DOUBLE && f.bond().directional())
                     return f.bond(u).inverse();
             }                                                     
@@ -539,7 +575,8 @@ public final class GraphBuilder {
 
     private boolean checkDirectionalAssignment(Bond b, int u, int v, BitSet adjToDb) {
         
-        for (Edge e : g.edges(u)) {
+        for (int j = 0; j < g.degree(u); j++) {
+            Edge e = g.edgeAt(u, j);
             int x = e.other(u);
             Bond existing = e.bond(u);
             if (existing.directional()) {
@@ -1022,4 +1059,261 @@ public final class GraphBuilder {
             return x + "/" + u + "=" + v + (c == TOGETHER ? "\\" : "/") + y;
         }
     }
+
+    /**
+     * Build a chemical graph from primitive arrays in one call, for example
+     * when converting the molecules of another toolkit. The arrays are read
+     * once when the graph is built, they may be longer than the number of
+     * atoms and bonds so that a builder and its arrays can be reused.
+     *
+     * <blockquote><pre>
+     * // ethanol
+     * Graph g = GraphBuilder.bulk()
+     *                       .atoms(3, new int[]{6, 6, 8}, new int[]{3, 2, 1})
+     *                       .bonds(2, new int[]{0, 1}, new int[]{1, 2}, new int[]{1, 1})
+     *                       .build();
+     * </pre></blockquote>
+     *
+     * As with {@link GraphBuilder#build()} atoms are converted to the organic
+     * subset when their hydrogen count is the default for their valence and
+     * they have no charge, isotope or configuration.
+     *
+     * @author John May
+     */
+    public static final class BulkBuilder {
+
+        /** Bond order value of an aromatic bond. */
+        public static final int AROMATIC = 5;
+
+        private int n, m;
+
+        private int[]     elements, hCounts, charges, isotopes, parities;
+        private boolean[] aromatic;
+        private int[]     from, to, orders, bondParities;
+
+        private BulkBuilder() {
+        }
+
+        /**
+         * Set the atoms, atom 'i' has the atomic number {@code elements[i]}
+         * and {@code hCounts[i]} implicit hydrogens.
+         *
+         * @param n        number of atoms
+         * @param elements atomic numbers
+         * @param hCounts  implicit hydrogen counts
+         * @return the builder
+         */
+        public BulkBuilder atoms(int n, int[] elements, int[] hCounts) {
+            this.n = n;
+            this.elements = elements;
+            this.hCounts = hCounts;
+            return this;
+        }
+
+        /**
+         * Set the formal charges of the atoms.
+         *
+         * @param charges the charges, null if all atoms are neutral
+         * @return the builder
+         */
+        public BulkBuilder charges(int[] charges) {
+            this.charges = charges;
+            return this;
+        }
+
+        /**
+         * Set the isotope mass numbers of the atoms.
+         *
+         * @param isotopes mass numbers (0 if unspecified), null if none are
+         *                 specified
+         * @return the builder
+         */
+        public BulkBuilder isotopes(int[] isotopes) {
+            this.isotopes = isotopes;
+            return this;
+        }
+
+        /**
+         * Mark the aromatic atoms.
+         *
+         * @param aromatic whether each atom is aromatic, null if none are
+         * @return the builder
+         */
+        public BulkBuilder aromatic(boolean[] aromatic) {
+            this.aromatic = aromatic;
+            return this;
+        }
+
+        /**
+         * Set the bonds, bond 'i' connects {@code from[i]} and {@code to[i]}.
+         * The order is 1, 2, 3, 4 or {@link #AROMATIC}. A single bond between
+         * two aromatic atoms is kept explicit ({@code c-c}).
+         *
+         * @param m      number of bonds
+         * @param from   an atom of each bond
+         * @param to     the other atom of each bond
+         * @param orders bond orders
+         * @return the builder
+         */
+        public BulkBuilder bonds(int m, int[] from, int[] to, int[] orders) {
+            this.m = m;
+            this.from = from;
+            this.to = to;
+            this.orders = orders;
+            return this;
+        }
+
+        /**
+         * Set the tetrahedral parities of the atoms. The neighbors of an atom
+         * are ordered as their bonds were given, an implicit hydrogen (or
+         * lone pair) of an atom with three neighbors is ordered last. Looking
+         * from the first neighbor, the others are anti-clockwise for a parity
+         * of -1 ({@code @}) and clockwise for +1 ({@code @@}).
+         *
+         * @param parities the parities, 0 if unspecified, null if none are
+         *                 specified
+         * @return the builder
+         */
+        public BulkBuilder parities(int[] parities) {
+            this.parities = parities;
+            return this;
+        }
+
+        /**
+         * Set the configuration of the double bonds. The reference atoms of
+         * a double bond are the first neighbors (in bond order) of either
+         * end, the parity is +1 if they are together (same side) and -1 if
+         * they are opposite.
+         *
+         * @param parities the double bond parities, 0 if unspecified, null
+         *                 if none are specified
+         * @return the builder
+         */
+        public BulkBuilder bondParities(int[] parities) {
+            this.bondParities = parities;
+            return this;
+        }
+
+        /**
+         * Build the chemical graph.
+         *
+         * @return chemical graph instance
+         * @throws IllegalArgumentException an atom, bond or configuration
+         *                                  was invalid
+         */
+        public Graph build() {
+
+            final Graph g = new Graph(Math.max(1, n));
+
+            // the edges are added first, the bonded valence is then known
+            // when each atom is added
+            for (int i = 0; i < m; i++) {
+                final int u = from[i], v = to[i];
+                if (u < 0 || u >= n || v < 0 || v >= n || u == v)
+                    throw new IllegalArgumentException("invalid bond " + u + ", " + v);
+                g.addEdge(new Edge(u, v, bond(orders[i], isAromatic(u) && isAromatic(v))));
+            }
+
+            for (int u = 0; u < n; u++) {
+                final Element e = Element.ofNumber(elements[u]);
+                if (e == null)
+                    throw new IllegalArgumentException("invalid atomic number " + elements[u]);
+                final boolean arom   = isAromatic(u);
+                final int     hCount = hCounts[u];
+                final int     charge = charges != null ? charges[u] : 0;
+                final int     mass   = isotopes != null && isotopes[u] > 0 ? isotopes[u] : -1;
+                final boolean stereo = parities != null && parities[u] != 0;
+                if (arom)
+                    g.addFlags(Graph.HAS_AROM);
+                if (!stereo && mass < 0 && charge == 0 && e.organic() && (!arom || e.aromatic())
+                        && hCount == impliedHCount(e, arom, g.bondedValence(u), g.degree(u)))
+                    g.addAtom(arom ? AtomImpl.AromaticSubset.ofElement(e)
+                                   : AtomImpl.AliphaticSubset.ofElement(e));
+                else
+                    g.addAtom(AtomImpl.BracketAtom.of(mass, e, hCount, charge, 0, arom));
+            }
+
+            if (parities == null && bondParities == null)
+                return g;
+
+            final GraphBuilder gb = new GraphBuilder(g);
+            if (parities != null) {
+                for (int u = 0; u < n; u++) {
+                    if (parities[u] != 0)
+                        gb.topology(u, tetrahedral(g, u, parities[u]));
+                }
+            }
+            if (bondParities != null) {
+                for (int i = 0; i < m; i++) {
+                    if (bondParities[i] == 0)
+                        continue;
+                    final int u = from[i], v = to[i];
+                    if (orders[i] != 2)
+                        throw new IllegalArgumentException("bond parity of non-double bond " + u + ", " + v);
+                    gb.geometric(u, v)
+                      .configure(reference(g, u, v),
+                                 reference(g, v, u),
+                                 bondParities[i] > 0 ? TOGETHER : OPPOSITE);
+                }
+                gb.assignDirectionalLabels();
+            }
+            return g;
+        }
+
+        private boolean isAromatic(int u) {
+            return aromatic != null && aromatic[u];
+        }
+
+        private static Bond bond(int order, boolean aromatic) {
+            switch (order) {
+                case 1:
+                    return aromatic ? Bond.SINGLE : Bond.IMPLICIT;
+                case 2:
+                    return Bond.DOUBLE;
+                case 3:
+                    return Bond.TRIPLE;
+                case 4:
+                    return Bond.QUADRUPLE;
+                case AROMATIC:
+                    return aromatic ? Bond.IMPLICIT : Bond.AROMATIC;
+                default:
+                    throw new IllegalArgumentException("invalid bond order " + order);
+            }
+        }
+
+        /**
+         * The hydrogen count the atom would be given if written without
+         * brackets, aromatic atoms follow {@link AtomImpl.AromaticSubset}
+         * where only an atom without multiple bonds contributes an extra
+         * bond.
+         */
+        private static int impliedHCount(Element e, boolean aromatic, int valence, int degree) {
+            if (!aromatic)
+                return e.implicitHydrogens(valence);
+            return e.aromaticImplicitHydrogens(valence == degree ? valence + 1 : valence);
+        }
+
+        private static Topology tetrahedral(Graph g, int u, int parity) {
+            final int d = g.degree(u);
+            if (d != 3 && d != 4)
+                throw new IllegalArgumentException("tetrahedral parity of atom " + u + " with " + d + " neighbors");
+            final int[] vs = new int[4];
+            for (int j = 0; j < d; j++)
+                vs[j] = g.edgeAt(u, j).other(u);
+            if (d == 3)
+                vs[3] = u;
+            return Topology.tetrahedral(u, vs, parity < 0 ? Configuration.TH1
+                                                          : Configuration.TH2);
+        }
+
+        /** The first neighbor of 'u' which is not 'v'. */
+        private static int reference(Graph g, int u, int v) {
+            for (int j = 0; j < g.degree(u); j++) {
+                final int w = g.edgeAt(u, j).other(u);
+                if (w != v)
+                    return w;
+            }
+            throw new IllegalArgumentException("no reference atom for double bond " + u + ", " + v);
+        }
+    }
 }
@@ -0,0 +1,489 @@
+/*
+ * Copyright (c) 2013, European Bioinformatics Institute (EMBL-EBI)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package uk.ac.ebi.beam;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A compact binary encoding of a {@link Graph}, allowing a graph to be
+ * reloaded without parsing its SMILES. The atoms, bonds (in the same order
+ * around each atom), topologies, flags and title are all stored and so a
+ * decoded graph generates exactly the same SMILES as the original.
+ *
+ * <blockquote><pre>
+ * byte[] bytes = GraphCodec.encode(Graph.fromSmiles("C/C=C/C"));
+ * Graph  g     = GraphCodec.decode(bytes);
+ * </pre></blockquote>
+ *
+ * Each record starts with the format version followed by the length of the
+ * record, integers are stored as variable length quantities. Records can be
+ * written one after another to a {@link DataOutput} or {@link ByteBuffer}
+ * and read back in sequence.
+ *
+ * @author John May
+ */
+public final class GraphCodec {
+
+    /** The current version of the encoding. */
+    public static final int VERSION = 1;
+
+    private static final Element[]       ELEMENTS       = Element.values();
+    private static final Bond[]          BONDS          = Bond.values();
+    private static final Configuration[] CONFIGURATIONS = Configuration.values();
+
+    private static final Atom[] ALIPHATIC_SUBSET = AtomImpl.AliphaticSubset.values();
+    private static final Atom[] AROMATIC_SUBSET  = AtomImpl.AromaticSubset.values();
+
+    /*
+     * atom tags, subset atoms are a single byte with the tag and their
+     * ordinal, for bracket atoms the low bit marks an aromatic atom
+     */
+    private static final int BRACKET     = 0;
+    private static final int LABELLED    = 2;
+    private static final int ALIPHATIC   = 0x40;
+    private static final int AROMATIC    = 0x80;
+    private static final int SUBSET_MASK = 0x3f;
+
+    /* set on the bond label if the edge is stored relative to the neighbour */
+    private static final int REVERSED = 0x80;
+
+    private GraphCodec() {
+    }
+
+    /**
+     * Encode a graph as a new byte array.
+     *
+     * @param g chemical graph
+     * @return the encoded graph
+     */
+    public static byte[] encode(Graph g) {
+        Encoder enc = new Encoder();
+        enc.write(g);
+        return Arrays.copyOf(enc.buf, enc.len);
+    }
+
+    /**
+     * Decode a graph encoded by {@link #encode(Graph)}.
+     *
+     * @param bytes the encoded graph
+     * @return the chemical graph
+     * @throws IOException the bytes were not a graph of a supported version
+     */
+    public static Graph decode(byte[] bytes) throws IOException {
+        return decode(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Decode a graph stored in a slice of a byte array.
+     *
+     * @param bytes the bytes
+     * @param off   offset of the record
+     * @param len   number of bytes available
+     * @return the chemical graph
+     * @throws IOException the bytes were not a graph of a supported version
+     */
+    public static Graph decode(byte[] bytes, int off, int len) throws IOException {
+        Decoder dec = new Decoder(bytes, off, off + len);
+        int end = dec.header();
+        if (end > off + len)
+            throw new IOException("truncated graph record");
+        return dec.read();
+    }
+
+    /**
+     * Write a graph to a data output.
+     *
+     * @param g   chemical graph
+     * @param out the output
+     * @throws IOException low-level IO error
+     */
+    public static void write(Graph g, DataOutput out) throws IOException {
+        Encoder enc = new Encoder();
+        enc.write(g);
+        out.write(enc.buf, 0, enc.len);
+    }
+
+    /**
+     * Read the next graph from a data input.
+     *
+     * @param in the input
+     * @return the chemical graph
+     * @throws IOException low-level IO error or the record was not a graph of
+     *                     a supported version
+     */
+    public static Graph read(DataInput in) throws IOException {
+        checkVersion(in.readUnsignedByte());
+        int len = 0, shift = 0, b;
+        do {
+            b = in.readUnsignedByte();
+            len |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        byte[] body = new byte[len];
+        in.readFully(body);
+        return new Decoder(body, 0, len).read();
+    }
+
+    /**
+     * Write a graph to a byte buffer at its current position, the position
+     * is advanced past the record.
+     *
+     * @param g  chemical graph
+     * @param bb the byte buffer
+     * @throws BufferOverflowException insufficient space remaining
+     */
+    public static void write(Graph g, ByteBuffer bb) {
+        Encoder enc = new Encoder();
+        enc.write(g);
+        bb.put(enc.buf, 0, enc.len);
+    }
+
+    /**
+     * Read the next graph from a byte buffer at its current position, the
+     * position is advanced past the record. Both heap and direct buffers are
+     * supported, the record is decoded directly from the backing array of a
+     * heap buffer.
+     *
+     * @param bb the byte buffer
+     * @return the chemical graph
+     * @throws IOException the record was not a graph of a supported version
+     */
+    public static Graph read(ByteBuffer bb) throws IOException {
+        final int pos = bb.position();
+        final Graph g;
+        if (bb.hasArray()) {
+            final int off = bb.arrayOffset();
+            Decoder dec = new Decoder(bb.array(), off + pos, off + bb.limit());
+            int end = dec.header();
+            if (end > off + bb.limit())
+                throw new IOException("truncated graph record");
+            g = dec.read();
+            // via Buffer, ByteBuffer.position(int) is not on a Java 8 JRE
+            ((Buffer) bb).position(end - off);
+        } else {
+            checkVersion(bb.get() & 0xff);
+            int len = 0, shift = 0, b;
+            do {
+                b = bb.get() & 0xff;
+                len |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            if (len > bb.remaining()) {
+                ((Buffer) bb).position(pos);
+                throw new IOException("truncated graph record");
+            }
+            byte[] body = new byte[len];
+            bb.get(body);
+            g = new Decoder(body, 0, len).read();
+        }
+        return g;
+    }
+
+    private static void checkVersion(int version) throws IOException {
+        if (version != VERSION)
+            throw new IOException("unsupported graph encoding version: " + version);
+    }
+
+    /** Encodes a graph into a growable byte array. */
+    private static final class Encoder {
+
+        private byte[] buf = new byte[128];
+        private int    len;
+
+        void write(Graph g) {
+            final int order = g.order();
+
+            // the body is written after space for the header, the header is
+            // then moved into place once the length is known
+            len = 6;
+            writeInt(order);
+            writeInt(g.getFlags());
+            writeString(g.getTitle());
+
+            for (int u = 0; u < order; u++)
+                writeAtom(g.atom(u));
+
+            // each edge is listed for both atoms so the order around each
+            // atom is kept, the label is written when first seen and the
+            // second time we write where the edge was in the other atom
+            for (int u = 0; u < order; u++) {
+                final int d = g.degree(u);
+                writeInt(d);
+                for (int j = 0; j < d; j++) {
+                    final Edge e = g.edgeAt(u, j);
+                    final int v = e.other(u);
+                    writeInt(v);
+                    if (v > u)
+                        writeByte(e.bond().ordinal() | (e.either() == u ? 0 : REVERSED));
+                    else
+                        writeInt(indexOf(g, v, e));
+                }
+            }
+
+            int[] vs = new int[6];
+            int nTopologies = 0;
+            for (int u = 0; u < order; u++) {
+                if (g.topologyOf(u) != Topology.unknown())
+                    nTopologies++;
+            }
+            writeInt(nTopologies);
+            for (int u = 0; u < order; u++) {
+                final Topology t = g.topologyOf(u);
+                if (t == Topology.unknown())
+                    continue;
+                final Configuration c = t.configuration();
+                final int n = Topology.carriers(c);
+                t.copy(vs);
+                writeInt(u);
+                writeInt(c.ordinal());
+                for (int i = 0; i < n; i++)
+                    writeInt(vs[i]);
+            }
+
+            // header: version and the length of the body
+            final int bodyLen = len - 6;
+            int hdrLen = 1 + sizeOf(bodyLen);
+            int beg = 6 - hdrLen;
+            int end = len;
+            len = beg;
+            writeByte(VERSION);
+            writeInt(bodyLen);
+            if (beg > 0) {
+                System.arraycopy(buf, beg, buf, 0, end - beg);
+                end -= beg;
+            }
+            len = end;
+        }
+
+        private static int indexOf(Graph g, int u, Edge e) {
+            int j = 0;
+            while (g.edgeAt(u, j) != e)
+                j++;
+            return j;
+        }
+
+        private void writeAtom(Atom a) {
+            if (a instanceof AtomImpl.AliphaticSubset) {
+                writeByte(ALIPHATIC | ((AtomImpl.AliphaticSubset) a).ordinal());
+                return;
+            }
+            if (a instanceof AtomImpl.AromaticSubset) {
+                writeByte(AROMATIC | ((AtomImpl.AromaticSubset) a).ordinal());
+                return;
+            }
+            final int aromatic = a.aromatic() ? 1 : 0;
+            final boolean labelled = !a.label().equals(a.element().symbol());
+            writeByte((labelled ? LABELLED : BRACKET) | aromatic);
+            writeByte(a.element().ordinal());
+            writeInt(a.isotope() + 1);
+            writeInt(zigzag(a.hydrogens()));
+            writeInt(zigzag(a.charge()));
+            writeInt(a.atomClass());
+            if (labelled)
+                writeString(a.label());
+        }
+
+        private void writeString(String str) {
+            if (str == null) {
+                writeInt(0);
+                return;
+            }
+            byte[] bs = str.getBytes(StandardCharsets.UTF_8);
+            writeInt(bs.length + 1);
+            ensure(bs.length);
+            System.arraycopy(bs, 0, buf, len, bs.length);
+            len += bs.length;
+        }
+
+        private void writeByte(int b) {
+            ensure(1);
+            buf[len++] = (byte) b;
+        }
+
+        /** Write an unsigned integer as a variable length quantity. */
+        private void writeInt(int x) {
+            ensure(5);
+            while ((x & ~0x7f) != 0) {
+                buf[len++] = (byte) ((x & 0x7f) | 0x80);
+                x >>>= 7;
+            }
+            buf[len++] = (byte) x;
+        }
+
+        private void ensure(int n) {
+            if (len + n > buf.length)
+                buf = Arrays.copyOf(buf, Math.max(2 * buf.length, len + n));
+        }
+
+        private static int sizeOf(int x) {
+            int n = 1;
+            while ((x & ~0x7f) != 0) {
+                x >>>= 7;
+                n++;
+            }
+            return n;
+        }
+
+        private static int zigzag(int x) {
+            return (x << 1) ^ (x >> 31);
+        }
+    }
+
+    /** Decodes a graph from a slice of a byte array. */
+    private static final class Decoder {
+
+        private final byte[] buf;
+        private final int    end;
+        private       int    pos;
+
+        private Decoder(byte[] buf, int pos, int end) {
+            this.buf = buf;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        /**
+         * Read the record header.
+         *
+         * @return the index after the end of the record
+         */
+        int header() throws IOException {
+            checkVersion(readByte());
+            final int bodyLen = readInt();
+            return pos + bodyLen;
+        }
+
+        Graph read() throws IOException {
+            try {
+                final int order = readInt();
+                final Graph g = new Graph(Math.max(1, order));
+                g.setFlags(readInt());
+                g.setTitle(readString());
+
+                for (int u = 0; u < order; u++)
+                    g.addAtom(readAtom());
+
+                for (int u = 0; u < order; u++) {
+                    final int d = readInt();
+                    for (int j = 0; j < d; j++) {
+                        final int v = readInt();
+                        if (v > u) {
+                            final int b = readByte();
+                            final Bond bond = BONDS[b & ~REVERSED];
+                            g.addEdge(u, (b & REVERSED) == 0 ? new Edge(u, v, bond)
+                                                             : new Edge(v, u, bond));
+                        } else {
+                            g.addEdge(u, g.edgeAt(v, readInt()));
+                        }
+                    }
+                }
+
+                int[] vs = new int[6];
+                final int nTopologies = readInt();
+                for (int i = 0; i < nTopologies; i++) {
+                    final int u = readInt();
+                    final Configuration c = CONFIGURATIONS[readInt()];
+                    final int n = Topology.carriers(c);
+                    for (int k = 0; k < n; k++)
+                        vs[k] = readInt();
+                    g.addTopology(Topology.create(u, Arrays.copyOf(vs, n), null, c));
+                }
+                return g;
+            } catch (ArrayIndexOutOfBoundsException e) {
+                throw new IOException("malformed graph record", e);
+            }
+        }
+
+        private Atom readAtom() throws IOException {
+            final int tag = readByte();
+            if ((tag & ALIPHATIC) != 0)
+                return ALIPHATIC_SUBSET[tag & SUBSET_MASK];
+            if ((tag & AROMATIC) != 0)
+                return AROMATIC_SUBSET[tag & SUBSET_MASK];
+            final boolean aromatic = (tag & 1) != 0;
+            final Element e = ELEMENTS[readByte()];
+            switch (tag & ~1) {
+                case BRACKET:
+                    return AtomImpl.BracketAtom.of(readInt() - 1,
+                                                   e,
+                                                   unzigzag(readInt()),
+                                                   unzigzag(readInt()),
+                                                   readInt(),
+                                                   aromatic);
+                case LABELLED:
+                    final int isotope = readInt() - 1;
+                    final int hCount = unzigzag(readInt());
+                    final int charge = unzigzag(readInt());
+                    final int atomClass = readInt();
+                    return new AtomImpl.BracketAtom(isotope, e, readString(), hCount, charge, atomClass, aromatic);
+                default:
+                    throw new IOException("malformed graph record, unknown atom tag " + tag);
+            }
+        }
+
+        private String readString() throws IOException {
+            final int n = readInt() - 1;
+            if (n < 0)
+                return null;
+            if (pos + n > end)
+                throw new IOException("truncated graph record");
+            String str = new String(buf, pos, n, StandardCharsets.UTF_8);
+            pos += n;
+            return str;
+        }
+
+        private int readByte() throws IOException {
+            if (pos == end)
+                throw new IOException("truncated graph record");
+            return buf[pos++] & 0xff;
+        }
+
+        private int readInt() throws IOException {
+            int x = 0, shift = 0, b;
+            do {
+                b = readByte();
+                x |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return x;
+        }
+
+        private static int unzigzag(int x) {
+            return (x >>> 1) ^ -(x & 1);
+        }
+    }
+}
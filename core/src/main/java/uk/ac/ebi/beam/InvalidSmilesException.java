@@ -32,27 +32,122 @@ package uk.ac.ebi.beam;
 import java.io.IOException;
 
 /**
- * An exception thrown when parsing malformed SMILES.
+ * An exception thrown when parsing malformed SMILES. The input is copied
+ * when the exception is created, the message displaying the location of the
+ * error in the input is only built when requested.
  *
  * @author John May
  */
 final class InvalidSmilesException extends IOException {
 
-    InvalidSmilesException(String message, CharBuffer buffer) {
-        this(message, buffer, 0);
+    /** What kind of error, null if not a parsing error. */
+    private final SmilesParser.ErrorCode code;
+
+    /** The input and the marked location(s), the input may be null. */
+    private final String  input;
+    private final int     mark1, mark2;
+    private final boolean pair;
+
+    /** The full message, built on demand. */
+    private String message;
+
+    InvalidSmilesException(String message, SmilesParser.ErrorCode code, CharBuffer buffer) {
+        this(message, code, buffer, 0);
     }
-    
-    InvalidSmilesException(String message, CharBuffer buffer, int offset) {
-        super(message + display(buffer, offset));
+
+    InvalidSmilesException(String message, SmilesParser.ErrorCode code, CharBuffer buffer, int offset) {
+        this(message, code, buffer, buffer.position() + offset, -1, false);
     }
 
     InvalidSmilesException(String message) {
+        this(message, (SmilesParser.ErrorCode) null);
+    }
+
+    InvalidSmilesException(String message, SmilesParser.ErrorCode code) {
+        this(message, code, null, -1, -1, false);
+    }
+
+    /**
+     * Internal constructor, a stack trace is only recorded if the buffer is
+     * not being validated.
+     *
+     * @param message the message (prefix)
+     * @param code    the error code
+     * @param buffer  the input
+     * @param mark1   first mark
+     * @param mark2   second mark
+     * @param pair    display two marks
+     */
+    private InvalidSmilesException(String message, SmilesParser.ErrorCode code, CharBuffer buffer, int mark1, int mark2, boolean pair) {
         super(message);
+        this.code = code;
+        this.input = buffer != null ? buffer.toString() : null;
+        this.mark1 = mark1;
+        this.mark2 = mark2;
+        this.pair = pair;
+        if (buffer == null || buffer.trace)
+            super.fillInStackTrace();
+    }
+
+    /**
+     * Create an exception which marks two locations in the input, see {@link
+     * #displayAt(String, int, int)}.
+     *
+     * @param message the message (prefix)
+     * @param code    the error code
+     * @param buffer  the input
+     * @param mark1   first mark
+     * @param mark2   second mark
+     * @return the exception
+     */
+    static InvalidSmilesException marked(String message, SmilesParser.ErrorCode code, CharBuffer buffer, int mark1, int mark2) {
+        return new InvalidSmilesException(message, code, buffer, mark1, mark2, true);
     }
 
     /**
-     * Displays the character buffer and marks on the next line the current
-     * position in the buffer.
+     * The stack trace is recorded in the constructor (if needed), see {@link
+     * CharBuffer#trace}.
+     *
+     * @return this exception
+     */
+    @Override public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+    /**
+     * The kind of parsing error.
+     *
+     * @return error code, null if not a parsing error
+     */
+    SmilesParser.ErrorCode code() {
+        return code;
+    }
+
+    /**
+     * The index of the character in the input at which the error occurred.
+     *
+     * @return character index, -1 if not known
+     */
+    int offset() {
+        return input != null && mark1 > 0 ? mark1 - 1 : -1;
+    }
+
+    /** @inheritDoc */
+    @Override public String getMessage() {
+        if (message == null) {
+            if (input == null)
+                message = super.getMessage();
+            else if (pair)
+                message = super.getMessage() + displayAt(input, mark1, mark2);
+            else
+                message = super.getMessage() + displayAt(input, mark1);
+        }
+        return message;
+    }
+
+    /**
+     * Displays the input and marks a position on the next line, the mark is
+     * one past the character to highlight.
      *
      * <blockquote><pre>
      * invalid bracket atom:
@@ -60,27 +155,37 @@ final class InvalidSmilesException extends IOException {
      *    ^
      * </pre></blockquote>
      *
-     * @param buffer a character buffer
-     * @return a 3 line string showing the buffer and it's current position
+     * @param input the input
+     * @param mark  the mark
+     * @return a 3 line string showing the input and the marked position
      */
-    static String display(final CharBuffer buffer, int offset) {
+    static String displayAt(final String input, int mark) {
         StringBuilder sb = new StringBuilder();
         sb.append('\n');
-        sb.append(buffer);
+        sb.append(input);
         sb.append('\n');
-        for (int i = 1; i < (buffer.position() + offset); i++)
+        for (int i = 1; i < mark; i++)
             sb.append(' ');
         sb.append('^');
         return sb.toString();
     }
 
-    static String display(final CharBuffer buffer, int offset, int offset2) {
+    /**
+     * Displays the input and marks on the next line two positions, the marks
+     * are one past the characters to highlight.
+     *
+     * @param input the input
+     * @param mark1 first mark
+     * @param mark2 second mark
+     * @return a 3 line string showing the input and the marked positions
+     */
+    static String displayAt(final String input, int mark1, int mark2) {
         StringBuilder sb = new StringBuilder();
         sb.append('\n');
-        sb.append(buffer);
+        sb.append(input);
         sb.append('\n');
-        for (int i = 1; i < buffer.length(); i++) {
-            if (i == buffer.position+offset || i == buffer.position+offset2)
+        for (int i = 1; i < input.length(); i++) {
+            if (i == mark1 || i == mark2)
                 sb.append('^');
             else
                 sb.append(' ');
@@ -88,6 +193,9 @@ final class InvalidSmilesException extends IOException {
         return sb.toString();
     }
 
+    /** Message for an invalid bracket atom. */
+    static final String INVALID_BRACKET_ATOM = "Invalid bracket atom, [ <isotope>? <symbol> <chiral>? <hcount>? <charge>? <class>? ], SMILES may be truncated:";
+
     /**
      * Utility for invalid bracket atom error.
      *
@@ -95,7 +203,8 @@ final class InvalidSmilesException extends IOException {
      * @return the invalid smiles exception with buffer information
      */
     static InvalidSmilesException invalidBracketAtom(CharBuffer buffer) {
-        return new InvalidSmilesException("Invalid bracket atom, [ <isotope>? <symbol> <chiral>? <hcount>? <charge>? <class>? ], SMILES may be truncated:",
+        return new InvalidSmilesException(INVALID_BRACKET_ATOM,
+                                          SmilesParser.ErrorCode.InvalidBracketAtom,
                                           buffer);
     }
 
@@ -221,29 +221,18 @@ final class Localise {
         return false;
     }
 
+    /**
+     * Whether the edge 'e' is in a ring of at most 7 atoms.
+     *
+     * @param g graph
+     * @param e an edge
+     * @return the edge is in a small ring
+     */
     static boolean inSmallRing(Graph g, Edge e) {
-        BitSet visit = new BitSet();
-        return inSmallRing(g, e.either(), e.other(e.either()), e.other(e.either()), 1, new BitSet());
-    }
-
-    static boolean inSmallRing(Graph g, int v, int prev, int t, int d, BitSet visit) {
-        if (d > 7)
-            return false;
-        if (v == t)
-            return true;
-        if (visit.get(v))
-            return false;
-        visit.set(v);
-        final int deg = g.degree(v);
-        for (int j = 0; j < deg; ++j) {
-            final Edge e = g.edgeAt(v, j);
-            int w = e.other(v);
-            if (w == prev) continue;
-            if (inSmallRing(g, w, v, t, d + 1, visit)) {
-                return true;
-            }
-        }
-        return false;
+        final int u = e.either();
+        final int size = g.isFrozen() ? g.ringSize(e)
+                                      : new RingInfo.ShortestCycle(g).size(u, e.other(u), 7);
+        return size > 0 && size <= 7;
     }
 
     static Graph resonate(Graph g, BitSet cyclic, boolean ordered) {
@@ -337,11 +326,12 @@ final class Localise {
      * @return the input graph (same reference)
      */
     static Graph resonate(Graph g) {
-        return resonate(g, new BiconnectedComponents(g).cyclic(), false);
+        return resonate(g, g.cyclic(), false);
     }
 
     private static boolean hasAdditionalCyclicDoubleBond(Graph g, BitSet cyclic, int u, int v) {
-        for (Edge f : g.edges(v)) {
+        for (int j = 0; j < g.degree(v); j++) {
+            Edge f = g.edgeAt(v, j);
             if (f.bond() == Bond.DOUBLE && f.other(v) != u && cyclic.get(u)) {
                 return true;
             }
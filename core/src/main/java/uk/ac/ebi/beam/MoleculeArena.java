@@ -0,0 +1,499 @@
+/*
+ * Copyright (c) 2013, European Bioinformatics Institute (EMBL-EBI)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package uk.ac.ebi.beam;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A store of many molecules packed into large off-heap (direct) byte buffer
+ * segments. Each molecule is addressed by a {@code long} handle and can be
+ * accessed through a read-only {@link View} which reads the atoms, bonds and
+ * adjacency directly from the segment. Only a handful of large objects are
+ * held on the heap regardless of the number of molecules stored.
+ *
+ * <blockquote><pre>
+ * MoleculeArena arena = new MoleculeArena();
+ * long handle = arena.add(Graph.fromSmiles("CCO ethanol"));
+ *
+ * MoleculeArena.View view = arena.view(handle);
+ * for (int u = 0; u &lt; view.order(); u++) {
+ *     for (int j = 0; j &lt; view.degree(u); j++) {
+ *         int  v    = view.neighbor(u, j);
+ *         Bond bond = view.bond(u, j);
+ *     }
+ * }
+ *
+ * // visit every molecule reusing the same view
+ * for (long h = arena.first(); h &gt;= 0; h = arena.next(h))
+ *     view.reset(h).toSmiles();
+ * </pre></blockquote>
+ *
+ * Molecules may be added by one thread at a time, once added a molecule can
+ * be viewed concurrently from multiple threads (each with its own view).
+ *
+ * @author John May
+ * @see CompactGraph
+ */
+public final class MoleculeArena {
+
+    /** Default size of each segment, 64 MiB. */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    private static final Bond[]          BONDS          = Bond.values();
+    private static final Configuration[] CONFIGURATIONS = Configuration.values();
+
+    /* record layout, header fields */
+    private static final int LENGTH   = 0;
+    private static final int ORDER    = 4;
+    private static final int SIZE     = 8;
+    private static final int FLAGS    = 12;
+    private static final int N_TOPOS  = 16;
+    private static final int TITLE    = 20;
+    private static final int HEADER   = 24;
+    private static final int TOPOLOGY = 32;
+
+    /* set on the bond label if the edge is stored relative to the neighbour */
+    private static final int REVERSED = 0x80;
+
+    private final int segmentSize;
+
+    private final List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+
+    /** Atoms which could not be packed (e.g. arbitrary labels). */
+    private final List<Atom> atoms = new ArrayList<Atom>();
+
+    private long count, bytes;
+
+    /** Create an arena with the default segment size. */
+    public MoleculeArena() {
+        this(DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Create an arena with the specified segment size, molecules larger than
+     * a segment are stored in their own segment.
+     *
+     * @param segmentSize bytes allocated for each segment
+     */
+    public MoleculeArena(int segmentSize) {
+        if (segmentSize < HEADER)
+            throw new IllegalArgumentException("segment size too small: " + segmentSize);
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Add a molecule to the arena. The atoms, bonds (and their order around
+     * each atom), topologies, flags and title are stored.
+     *
+     * @param g chemical graph
+     * @return handle of the stored molecule
+     */
+    public long add(Graph g) {
+
+        final int order = g.order();
+        final int size  = g.size();
+
+        int nTopologies = 0;
+        for (int u = 0; u < order; u++) {
+            if (g.topologyOf(u) != Topology.unknown())
+                nTopologies++;
+        }
+
+        final byte[] title = g.getTitle() != null ? g.getTitle().getBytes(StandardCharsets.UTF_8)
+                                                  : null;
+        final Layout layout = new Layout(order, size, title != null ? title.length : 0, nTopologies);
+
+        final ByteBuffer segment = segmentFor(layout.length);
+        final int off = segment.position();
+        final long handle = (long) (segments.size() - 1) << 32 | off;
+
+        segment.putInt(off + LENGTH, layout.length);
+        segment.putInt(off + ORDER, order);
+        segment.putInt(off + SIZE, size);
+        segment.putInt(off + FLAGS, g.getFlags());
+        segment.putInt(off + N_TOPOS, nTopologies);
+        segment.putInt(off + TITLE, title != null ? title.length : -1);
+        if (title != null) {
+            for (int i = 0; i < title.length; i++)
+                segment.put(off + HEADER + i, title[i]);
+        }
+
+        for (int u = 0; u < order; u++) {
+            final Atom a = g.atom(u);
+            long packed = CompactGraph.pack(a);
+            if (packed < 0) {
+                atoms.add(a);
+                packed = -atoms.size();
+            }
+            segment.putLong(off + layout.atoms + 8 * u, packed);
+        }
+
+        int k = 0;
+        for (int u = 0; u < order; u++) {
+            segment.putInt(off + layout.offsets + 4 * u, k);
+            final int d = g.degree(u);
+            for (int j = 0; j < d; ++j) {
+                final Edge e = g.edgeAt(u, j);
+                segment.putInt(off + layout.neighbors + 4 * k, e.other(u));
+                segment.put(off + layout.bonds + k,
+                            (byte) (e.bond(u).ordinal() | (e.either() == u ? 0 : REVERSED)));
+                k++;
+            }
+        }
+        segment.putInt(off + layout.offsets + 4 * order, k);
+
+        int[] vs = new int[6];
+        int pos = off + layout.topologies;
+        for (int u = 0; u < order; u++) {
+            final Topology t = g.topologyOf(u);
+            if (t == Topology.unknown())
+                continue;
+            t.copy(vs);
+            segment.putInt(pos, u);
+            segment.putInt(pos + 4, t.configuration().ordinal());
+            for (int i = 0; i < 6; i++)
+                segment.putInt(pos + 8 + 4 * i, vs[i]);
+            pos += TOPOLOGY;
+        }
+
+        // via Buffer, ByteBuffer.position(int) is not on a Java 8 JRE
+        ((Buffer) segment).position(off + layout.length);
+        count++;
+        bytes += layout.length;
+        return handle;
+    }
+
+    /**
+     * Access a segment with enough space to store a record of the specified
+     * length.
+     *
+     * @param length bytes required
+     * @return the segment
+     */
+    private ByteBuffer segmentFor(int length) {
+        if (!segments.isEmpty()) {
+            ByteBuffer last = segments.get(segments.size() - 1);
+            if (last.remaining() >= length)
+                return last;
+        }
+        ByteBuffer segment = ByteBuffer.allocateDirect(Math.max(segmentSize, length))
+                                       .order(ByteOrder.nativeOrder());
+        segments.add(segment);
+        return segment;
+    }
+
+    /**
+     * The handle of the first molecule in the arena.
+     *
+     * @return the handle, -1 if the arena is empty
+     */
+    public long first() {
+        return count == 0 ? -1 : 0;
+    }
+
+    /**
+     * The handle of the molecule added after the molecule with the provided
+     * handle.
+     *
+     * @param handle a molecule handle
+     * @return the next handle, -1 if there are no more molecules
+     */
+    public long next(long handle) {
+        int seg = (int) (handle >>> 32);
+        int off = (int) handle;
+        ByteBuffer segment = segments.get(seg);
+        off += segment.getInt(off + LENGTH);
+        if (off < segment.position())
+            return (long) seg << 32 | off;
+        return seg + 1 < segments.size() ? (long) (seg + 1) << 32 : -1;
+    }
+
+    /**
+     * Create a view of the molecule with the provided handle.
+     *
+     * @param handle a molecule handle
+     * @return a read-only view of the molecule
+     */
+    public View view(long handle) {
+        return new View(this).reset(handle);
+    }
+
+    /**
+     * Create a mutable graph of the molecule with the provided handle.
+     *
+     * @param handle a molecule handle
+     * @return a new graph
+     */
+    public Graph graph(long handle) {
+        return view(handle).toGraph();
+    }
+
+    /**
+     * Number of molecules stored in the arena.
+     *
+     * @return number of molecules
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Number of (off-heap) bytes used to store the molecules.
+     *
+     * @return bytes used
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    /** Offsets of each section of a record, relative to its start. */
+    private static final class Layout {
+
+        private final int atoms, offsets, neighbors, bonds, topologies, length;
+
+        private Layout(int order, int size, int titleLen, int nTopologies) {
+            atoms = align(HEADER + titleLen, 8);
+            offsets = atoms + 8 * order;
+            neighbors = offsets + 4 * (order + 1);
+            bonds = neighbors + 8 * size;
+            topologies = align(bonds + 2 * size, 4);
+            length = align(topologies + TOPOLOGY * nTopologies, 8);
+        }
+
+        private static int align(int x, int n) {
+            return (x + n - 1) & -n;
+        }
+    }
+
+    /**
+     * A read-only view of a molecule stored in the arena. The view reads
+     * directly from the arena and can be {@link #reset(long) reset} to view
+     * another molecule without allocating.
+     */
+    public static final class View {
+
+        private final MoleculeArena arena;
+
+        private ByteBuffer segment;
+        private int        off, order, size;
+        private int        atoms, offsets, neighbors, bonds, topologies;
+
+        private View(MoleculeArena arena) {
+            this.arena = arena;
+        }
+
+        /**
+         * Move the view to the molecule with the provided handle.
+         *
+         * @param handle a molecule handle
+         * @return this view
+         */
+        public View reset(long handle) {
+            segment = arena.segments.get((int) (handle >>> 32));
+            off = (int) handle;
+            order = segment.getInt(off + ORDER);
+            size = segment.getInt(off + SIZE);
+            // see Layout, the offsets are calculated here to avoid allocation
+            atoms = off + Layout.align(HEADER + Math.max(0, segment.getInt(off + TITLE)), 8);
+            offsets = atoms + 8 * order;
+            neighbors = offsets + 4 * (order + 1);
+            bonds = neighbors + 8 * size;
+            topologies = off + Layout.align(bonds - off + 2 * size, 4);
+            return this;
+        }
+
+        /**
+         * Number of atoms (vertices) in the molecule.
+         *
+         * @return number of atoms
+         */
+        public int order() {
+            return order;
+        }
+
+        /**
+         * Number of bonds (edges) in the molecule.
+         *
+         * @return number of bonds
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * The number of bonds incident to atom 'u'.
+         *
+         * @param u an atom
+         * @return the degree
+         */
+        public int degree(int u) {
+            return segment.getInt(offsets + 4 * u + 4) - segment.getInt(offsets + 4 * u);
+        }
+
+        /**
+         * The j<sup>th</sup> neighbour of atom 'u'.
+         *
+         * @param u an atom
+         * @param j index, 0 &le; j &lt; degree(u)
+         * @return the neighbour
+         */
+        public int neighbor(int u, int j) {
+            return segment.getInt(neighbors + 4 * (segment.getInt(offsets + 4 * u) + j));
+        }
+
+        /**
+         * The label of the bond from atom 'u' to its j<sup>th</sup>
+         * neighbour. Directional labels are relative to 'u'.
+         *
+         * @param u an atom
+         * @param j index, 0 &le; j &lt; degree(u)
+         * @return the bond label
+         */
+        public Bond bond(int u, int j) {
+            return BONDS[label(segment.getInt(offsets + 4 * u) + j) & ~REVERSED];
+        }
+
+        private int label(int k) {
+            return segment.get(bonds + k) & 0xff;
+        }
+
+        /**
+         * Access the atom at the specified index, shared atom instances are
+         * returned where possible.
+         *
+         * @param u index of the atom
+         * @return the atom
+         */
+        public Atom atom(int u) {
+            final long packed = segment.getLong(atoms + 8 * u);
+            return packed >= 0 ? CompactGraph.unpack(packed)
+                               : arena.atoms.get((int) -packed - 1);
+        }
+
+        /**
+         * Access the topology of the atom 'u'. If no topology is defined
+         * then {@link Topology#unknown()} is returned.
+         *
+         * @param u an atom
+         * @return the topology of atom 'u'
+         */
+        public Topology topologyOf(int u) {
+            final int n = segment.getInt(off + N_TOPOS);
+            for (int i = 0; i < n; i++) {
+                final int pos = topologies + TOPOLOGY * i;
+                if (segment.getInt(pos) == u)
+                    return topology(pos);
+            }
+            return Topology.unknown();
+        }
+
+        private Topology topology(int pos) {
+            final Configuration c = CONFIGURATIONS[segment.getInt(pos + 4)];
+            final int[] vs = new int[Topology.carriers(c)];
+            for (int i = 0; i < vs.length; i++)
+                vs[i] = segment.getInt(pos + 8 + 4 * i);
+            return Topology.create(segment.getInt(pos), vs, null, c);
+        }
+
+        public int getFlags(final int mask) {
+            return segment.getInt(off + FLAGS) & mask;
+        }
+
+        public int getFlags() {
+            return segment.getInt(off + FLAGS);
+        }
+
+        public String getTitle() {
+            final int len = segment.getInt(off + TITLE);
+            if (len < 0)
+                return null;
+            byte[] bs = new byte[len];
+            for (int i = 0; i < len; i++)
+                bs[i] = segment.get(off + HEADER + i);
+            return new String(bs, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Create a mutable graph with the same atoms, bonds (and their order
+         * around each atom), topologies, flags and title.
+         *
+         * @return a new graph
+         */
+        public Graph toGraph() {
+            final Graph g = new Graph(Math.max(1, order));
+            for (int u = 0; u < order; u++)
+                g.addAtom(atom(u));
+
+            // each edge is created when first seen (from the lower atom) and
+            // then found in the edges of the lower atom when seen again
+            for (int u = 0; u < order; u++) {
+                final int beg = segment.getInt(offsets + 4 * u);
+                final int end = segment.getInt(offsets + 4 * u + 4);
+                for (int k = beg; k < end; k++) {
+                    final int v = segment.getInt(neighbors + 4 * k);
+                    if (v > u) {
+                        final int  b    = label(k);
+                        final Bond bond = BONDS[b & ~REVERSED];
+                        g.addEdge(u, (b & REVERSED) == 0 ? new Edge(u, v, bond)
+                                                         : new Edge(v, u, bond.inverse()));
+                    } else {
+                        int j = 0;
+                        while (g.edgeAt(v, j).other(v) != u)
+                            j++;
+                        g.addEdge(u, g.edgeAt(v, j));
+                    }
+                }
+            }
+
+            final int n = segment.getInt(off + N_TOPOS);
+            for (int i = 0; i < n; i++)
+                g.addTopology(topology(topologies + TOPOLOGY * i));
+            g.setFlags(getFlags());
+            g.setTitle(getTitle());
+            return g;
+        }
+
+        /**
+         * Generate a SMILES for the molecule.
+         *
+         * @return the SMILES string
+         * @throws IOException the molecule could not be written as SMILES
+         */
+        public String toSmiles() throws IOException {
+            return toGraph().toSmiles();
+        }
+    }
+}
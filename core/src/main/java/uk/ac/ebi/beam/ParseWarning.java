@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2013, European Bioinformatics Institute (EMBL-EBI)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package uk.ac.ebi.beam;
+
+/**
+ * A warning about non-fatal problem encountered while parsing a SMILES
+ * string, typically some stereochemistry which was ignored. The warning
+ * records what kind of problem occurred and where in the input (the input is
+ * copied when the warning is created), the human readable {@link #message()}
+ * is only built when requested.
+ *
+ * <blockquote><pre>
+ * Graph g = Graph.fromSmiles("C/C=C(/F)/F", new ParseWarning.Listener() {
+ *     public void warn(ParseWarning warning) {
+ *         log.add(warning.kind());
+ *     }
+ * });
+ * </pre></blockquote>
+ *
+ * @author John May
+ * @see Graph#fromSmiles(String, Listener)
+ * @see SmilesParser
+ */
+public final class ParseWarning {
+
+    /** The kinds of problems which are reported as warnings. */
+    public enum Kind {
+        /** Conflicting directional (up/down) labels around a double bond. */
+        InvalidDoubleBondStereo,
+        /** Directional labels on a ring closure which should be flipped. */
+        InvalidRingClosureStereo,
+        /** Allene (extended tetrahedral) stereo without valid carriers. */
+        InvalidExtendedTetrahedral,
+        /** Square planar stereo without 4 explicit neighbours. */
+        InvalidSquarePlanar,
+        /** Trigonal bipyramidal stereo without 5 explicit neighbours. */
+        InvalidTrigonalBipyramidal,
+        /** Octahedral stereo without 6 explicit neighbours. */
+        InvalidOctahedral,
+        /**
+         * Invalid stereo found when topologies are created lazily, an
+         * exception would be thrown if they were created while parsing.
+         */
+        InvalidStereo
+    }
+
+    /**
+     * Receives warnings as they are encountered during parsing.
+     */
+    public interface Listener {
+
+        /**
+         * A warning was encountered.
+         *
+         * @param warning the warning
+         */
+        void warn(ParseWarning warning);
+    }
+
+    /**
+     * Ignore all warnings, the parser does not create the warning objects at
+     * all when this listener is used.
+     */
+    public static final Listener DISCARD = new Listener() {
+        @Override public void warn(ParseWarning warning) {
+            // ignored
+        }
+    };
+
+    /**
+     * Write warnings to standard error, each warning is written with a single
+     * call.
+     */
+    public static final Listener STDERR = new Listener() {
+        @Override public void warn(ParseWarning warning) {
+            StringBuilder sb = new StringBuilder();
+            for (String line : warning.message().split("\n"))
+                sb.append("SMILES Warning: ").append(line).append('\n');
+            System.err.print(sb);
+        }
+    };
+
+    private final Kind   kind;
+    private final String prefix;
+    private final String input;
+    private final int    mark1, mark2;
+
+    /**
+     * Internal constructor.
+     *
+     * @param kind   the kind of warning
+     * @param prefix the message prefix
+     * @param buffer the input (may be null)
+     * @param mark1  display marker (see {@link InvalidSmilesException#displayAt(String, int, int)})
+     * @param mark2  display marker (see {@link InvalidSmilesException#displayAt(String, int, int)})
+     */
+    ParseWarning(Kind kind, String prefix, CharBuffer buffer, int mark1, int mark2) {
+        this.kind = kind;
+        this.prefix = prefix;
+        this.input = buffer != null ? buffer.toString() : null;
+        this.mark1 = mark1;
+        this.mark2 = mark2;
+    }
+
+    /**
+     * The kind of problem.
+     *
+     * @return the kind
+     */
+    public Kind kind() {
+        return kind;
+    }
+
+    /**
+     * The index of the (first) character in the input the warning relates
+     * to.
+     *
+     * @return character index, -1 if not known
+     */
+    public int offset() {
+        return input != null && mark1 > 0 ? mark1 - 1 : -1;
+    }
+
+    /**
+     * The index of the second character in the input the warning relates to.
+     *
+     * @return character index, -1 if not known
+     */
+    public int offset2() {
+        return input != null && mark2 > 0 ? mark2 - 1 : -1;
+    }
+
+    /**
+     * A human readable description of the warning. The message may display
+     * the input and mark the location of the problem.
+     *
+     * @return the message
+     */
+    public String message() {
+        if (input == null)
+            return prefix;
+        return prefix + InvalidSmilesException.displayAt(input, mark1, mark2);
+    }
+
+    /** @inheritDoc */
+    @Override public String toString() {
+        return message();
+    }
+}
@@ -34,18 +34,13 @@ import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
-
-import static java.util.Map.Entry;
 
 /**
- * Parse a SMILES string and create a {@link Graph}. A new parser should be
- * created for each invocation, for convenience {@link #parse(String)} is
- * provided.
+ * Parse a SMILES string and create a {@link Graph}. A parser may be reused to
+ * parse multiple SMILES (see {@link #parse(CharBuffer)}), the internal
+ * bookkeeping is reset between each molecule. For convenience {@link
+ * #parse(String)} is provided.
  *
  * <blockquote><pre>
  * Graph g = Parser.parse("CCO");
@@ -63,7 +58,7 @@ final class Parser {
     /**
      * Molecule being loaded.
      */
-    private final Graph g;
+    private Graph g;
 
     /**
      * Keep track of ring information.
@@ -71,13 +66,20 @@ final class Parser {
     private RingBond[] rings = new RingBond[10];
 
     /**
-     * Local arrangement for ring openings.
+     * Local arrangement for ring openings, indexed by atom.
+     */
+    private LocalArrangement[] arrangement = new LocalArrangement[16];
+
+    /**
+     * Configurations read for each atom, indexed by atom.
      */
-    private Map<Integer, LocalArrangement> arrangement
-            = new HashMap<Integer, LocalArrangement>(8);
+    private Configuration[] configurations = new Configuration[16];
 
-    private Map<Integer, Configuration> configurations
-            = new HashMap<Integer, Configuration>(5);
+    /**
+     * Position in the SMILES string of the configuration read for each atom,
+     * indexed by atom. Used to mark invalid stereo when validating.
+     */
+    private int[] configurationMarks = new int[16];
 
     /**
      * Current bond.
@@ -89,13 +91,16 @@ final class Parser {
      */
     private Configuration configuration = Configuration.UNKNOWN;
 
+    /** Mark of the current configuration, one past the '@'. */
+    private int configurationMark;
+
 
     /**
      * Which vertices start a new run of tokens. This includes the first vertex
      * and all vertices which immediately follow a 'dot' bond. These are
      * required to correctly store atom topologies.
      */
-    private Set<Integer> start = new TreeSet<Integer>();
+    private final BitSet start = new BitSet();
 
     /**
      * Number of open rings - all rings should be closed.
@@ -107,15 +112,79 @@ final class Parser {
      */
     private final boolean strict;
 
-    private BitSet checkDirectionalBonds = new BitSet();
+    private final BitSet checkDirectionalBonds = new BitSet();
 
     private int lastBondPos = -1;
-    private Map<Edge, Integer> bondStrPos = new HashMap<>();
 
-    private List<String> warnings = new ArrayList<>();
+    /**
+     * The directional bonds and their position in the SMILES string, only
+     * used to display the location of invalid Cis/Trans specifications.
+     */
+    private Edge[] dirBonds      = new Edge[4];
+    private int[]  dirBondStrPos = new int[4];
+    private int    numDirBonds   = 0;
+
+    /**
+     * Warnings are passed to the listener, or if there is no listener stored.
+     */
+    private final ParseWarning.Listener listener;
+    private final List<ParseWarning>    warnings = new ArrayList<>();
 
     private boolean hasAstrix = false;
 
+    /**
+     * Whether the title (suffix after a space or tab) is decoded and set on
+     * the graph. When disabled only the location of the title is recorded.
+     */
+    boolean titles = true;
+
+    /** How stereo specifications are handled. */
+    SmilesParser.Stereo stereo = SmilesParser.Stereo.Eager;
+
+    /** Location of the title in the last buffer parsed, -1 if none. */
+    int titleBeg = -1, titleEnd = -1;
+
+    /**
+     * When validating, errors are recorded instead of thrown and the parse
+     * returns early, see {@link #validate(CharBuffer)}.
+     */
+    private boolean validating = false;
+
+    /**
+     * Graph reused by each validation, it is never returned and only holds
+     * the atoms and bonds needed to check ring closures and stereo.
+     */
+    private Graph scratch;
+
+    /** The first error found while validating, null if none. */
+    private SmilesParser.ErrorCode error;
+
+    /** Character index of the error found while validating, -1 if unknown. */
+    private int errorOffset = -1;
+
+    /**
+     * Create a new parser which can be used to parse multiple SMILES with
+     * {@link #parse(CharBuffer)}.
+     *
+     * @param strict strict parsing
+     */
+    Parser(boolean strict) {
+        this(strict, null);
+    }
+
+    /**
+     * Create a new parser which can be used to parse multiple SMILES with
+     * {@link #parse(CharBuffer)}. Warnings are passed to the provided
+     * listener.
+     *
+     * @param strict   strict parsing
+     * @param listener receives warnings, null to store them
+     */
+    Parser(boolean strict, ParseWarning.Listener listener) {
+        this.strict = strict;
+        this.listener = listener;
+    }
+
     /**
      * Create a new parser for the specified buffer.
      *
@@ -123,23 +192,45 @@ final class Parser {
      * @throws InvalidSmilesException thrown if the SMILES could not be parsed
      */
     Parser(CharBuffer buffer, boolean strict) throws InvalidSmilesException {
-        this.strict = strict;
-        g = new Graph(1 + (2 * (buffer.length() / 3)));
+        this(strict);
+        parse(buffer);
+    }
+
+    /**
+     * Parse the SMILES in the provided buffer. Any state from a previous
+     * parse (including warnings) is discarded.
+     *
+     * @param buffer character buffer holding a SMILES string
+     * @return the chemical graph for the SMILES
+     * @throws InvalidSmilesException thrown if the SMILES could not be parsed
+     */
+    Graph parse(CharBuffer buffer) throws InvalidSmilesException {
+        reset();
+        g = validating ? scratch() : new Graph(Math.max(1, countAtoms(buffer)));
         readSmiles(buffer);
-        if (openRings > 0)
-            throw new InvalidSmilesException("Unclosed ring detected, SMILES may be truncated:", buffer);
-        if (stack.size() > 1)
-            throw new InvalidSmilesException("Unclosed branch detected, SMILES may be truncated:", buffer);
-        start.add(0); // always include first vertex as start
+        if (error != null)
+            return null;
+        if (openRings > 0) {
+            error("Unclosed ring detected, SMILES may be truncated:", SmilesParser.ErrorCode.UnclosedRing, buffer, 0);
+            return null;
+        }
+        if (stack.size() > 1) {
+            error("Unclosed branch detected, SMILES may be truncated:", SmilesParser.ErrorCode.UnclosedBranch, buffer, 0);
+            return null;
+        }
+        start.set(0); // always include first vertex as start
         if (g.getFlags(Graph.HAS_STRO) != 0) {
             createTopologies(buffer);
+            if (error != null)
+                return null;
         }
-        if (hasAstrix) {
+        if (hasAstrix && !validating) {
             for (int i = 0; i < g.order(); i++) {
                 Atom atom = g.atom(i);
                 if (atom.element() == Element.Unknown) {
                     int nArom = 0;
-                    for (Edge e : g.edges(i)) {
+                    for (int j = 0; j < g.degree(i); j++) {
+                        Edge e = g.edgeAt(i, j);
                         if (e.bond() == Bond.AROMATIC ||
                             e.bond() == Bond.IMPLICIT && g.atom(e.other(i)).aromatic())
                             nArom++;
@@ -160,6 +251,187 @@ final class Parser {
                 }
             }
         }
+        return g;
+    }
+
+    /**
+     * Check whether the SMILES in the provided buffer is valid. The same
+     * checks as {@link #parse(CharBuffer)} are made but no exception is
+     * created, the first error is recorded and the parse returns early. The
+     * stereo is always checked eagerly, the stereo mode does not change what
+     * is invalid. No graph is built for the caller, the atoms and bonds are
+     * held in a graph reused by each validation, the topologies are checked
+     * but not created and the title is not decoded.
+     *
+     * @param buffer character buffer holding a SMILES string
+     * @return the error, {@link SmilesParser.ErrorCode#None} if the SMILES is
+     *         valid
+     * @see #errorOffset()
+     */
+    SmilesParser.ErrorCode validate(CharBuffer buffer) {
+        final SmilesParser.Stereo mode = stereo;
+        buffer.trace = false;
+        validating = true;
+        stereo = SmilesParser.Stereo.Eager;
+        try {
+            parse(buffer);
+        } catch (InvalidSmilesException e) {
+            // not expected, all errors are recorded when validating
+            recordError(e.code() != null ? e.code() : SmilesParser.ErrorCode.UnexpectedCharacter,
+                        e.offset() + 1);
+        } finally {
+            validating = false;
+            stereo = mode;
+        }
+        return error != null ? error : SmilesParser.ErrorCode.None;
+    }
+
+    /**
+     * Access the (cleared) graph used when validating.
+     *
+     * @return an empty graph
+     */
+    private Graph scratch() {
+        if (scratch == null) {
+            scratch = new Graph(16);
+        } else {
+            scratch.clear();
+            scratch.setFlags(0);
+        }
+        return scratch;
+    }
+
+    /**
+     * The character index of the error found by the last {@link
+     * #validate(CharBuffer)}.
+     *
+     * @return character index, -1 if valid or the location is not known
+     */
+    int errorOffset() {
+        return errorOffset;
+    }
+
+    /**
+     * Report an error at the current position of the buffer (plus an
+     * offset). When validating the error is recorded and the caller should
+     * return early, otherwise the exception is thrown.
+     *
+     * @param message the message
+     * @param code    the kind of error
+     * @param buffer  the SMILES string
+     * @param offset  offset from the current position
+     * @throws InvalidSmilesException not validating
+     */
+    private void error(String message, SmilesParser.ErrorCode code, CharBuffer buffer, int offset) throws
+                                                                                                  InvalidSmilesException {
+        if (!validating)
+            throw new InvalidSmilesException(message, code, buffer, offset);
+        recordError(code, buffer.position() + offset);
+    }
+
+    /**
+     * Report an error which marks two locations in the buffer, see {@link
+     * #error(String, SmilesParser.ErrorCode, CharBuffer, int)}.
+     *
+     * @param message the message
+     * @param code    the kind of error
+     * @param buffer  the SMILES string
+     * @param mark1   first mark
+     * @param mark2   second mark
+     * @throws InvalidSmilesException not validating
+     */
+    private void errorMarked(String message, SmilesParser.ErrorCode code, CharBuffer buffer, int mark1, int mark2) throws
+                                                                                                                   InvalidSmilesException {
+        if (!validating)
+            throw InvalidSmilesException.marked(message, code, buffer, mark1, mark2);
+        recordError(code, mark1);
+    }
+
+    /**
+     * Record the first error found while validating.
+     *
+     * @param code the kind of error
+     * @param mark the mark, one past the character in error (0 if unknown)
+     */
+    private void recordError(SmilesParser.ErrorCode code, int mark) {
+        if (error == null) {
+            error = code;
+            errorOffset = mark > 0 ? mark - 1 : -1;
+        }
+    }
+
+    /**
+     * Reset the internal state ready to parse another molecule, the
+     * allocated buffers are retained.
+     */
+    private void reset() {
+        stack.clear();
+        Arrays.fill(rings, null);
+        if (g != null) {
+            Arrays.fill(arrangement, 0, g.order(), null);
+            Arrays.fill(configurations, 0, g.order(), null);
+        }
+        bond = Bond.IMPLICIT;
+        configuration = Configuration.UNKNOWN;
+        start.clear();
+        openRings = 0;
+        checkDirectionalBonds.clear();
+        lastBondPos = -1;
+        Arrays.fill(dirBonds, 0, numDirBonds, null);
+        numDirBonds = 0;
+        warnings.clear();
+        hasAstrix = false;
+        titleBeg = titleEnd = -1;
+        error = null;
+        errorOffset = -1;
+    }
+
+    /**
+     * Count the atoms in a SMILES string with a single scan of the
+     * characters, used to allocate a graph of the right size. Every bracket
+     * atom and organic subset symbol (including '*') is an atom, the scan
+     * stops at the title. No validation is performed, if the input is invalid
+     * the count may be wrong but the graph will still grow (or the parse
+     * fail) as normal.
+     *
+     * @param buffer character buffer holding a SMILES string
+     * @return the number of atoms
+     */
+    static int countAtoms(CharBuffer buffer) {
+        final int len = buffer.length();
+        int n = 0;
+        for (int i = buffer.position; i < len; i++) {
+            switch (buffer.charAt(i)) {
+                case '[':
+                    n++;
+                    while (++i < len && buffer.charAt(i) != ']')
+                        ;
+                    break;
+                case 'B': // 'r' of 'Br' not counted
+                case 'C': // 'l' of 'Cl' not counted
+                case 'N':
+                case 'O':
+                case 'P':
+                case 'S':
+                case 'F':
+                case 'I':
+                case 'b':
+                case 'c':
+                case 'n':
+                case 'o':
+                case 'p':
+                case 's':
+                case '*':
+                    n++;
+                    break;
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                    return n;
+            }
+        }
+        return n;
     }
 
     /**
@@ -209,14 +481,31 @@ final class Parser {
 
     /**
      * Create the topologies (stereo configurations) for the chemical graph. The
-     * topologies define spacial arrangement around atoms.
+     * topologies define spacial arrangement around atoms. In the lazy mode
+     * the (non-strict) topologies are only created when first accessed, the
+     * directional bonds are always checked.
      */
     private void createTopologies(CharBuffer buffer) throws InvalidSmilesException {
-        // create topologies (stereo configurations)
-        for (Entry<Integer, Configuration> e : configurations.entrySet()) {
-            addTopology(e.getKey(),
-                        e.getValue(),
-                        Topology.toExplicit(g, e.getKey(), e.getValue()));
+        if (g.getFlags(Graph.HAS_ATM_STRO) != 0) {
+            if (stereo == SmilesParser.Stereo.Lazy && !strict) {
+                final int n = g.order();
+                for (int u = 0; u < n; u++) {
+                    if (configurations[u] != null && configurations[u].type() == Configuration.Type.ExtendedTetrahedral)
+                        g.addFlags(Graph.HAS_EXT_STRO);
+                }
+                g.deferTopologies(new TopologyBuilder(g,
+                                                      Arrays.copyOf(arrangement, n),
+                                                      Arrays.copyOf(configurations, n),
+                                                      (BitSet) start.clone(),
+                                                      false,
+                                                      listener != null ? listener : deferredWarnings(g),
+                                                      null,
+                                                      null));
+            } else {
+                new TopologyBuilder(g, arrangement, configurations, start, strict, listener, this, buffer).build();
+                if (error != null)
+                    return;
+            }
         }
 
         for (int v = checkDirectionalBonds.nextSetBit(0); v >= 0; v = checkDirectionalBonds.nextSetBit(v + 1)) {
@@ -260,280 +549,121 @@ final class Parser {
             if (nUpV + nDownV == 0 || nUpW + nDownW == 0)
                 continue;
 
-            if (nUpV > 1 || nDownV > 1) {
-                int offset1 = -1, offset2 = -1;
-                for (Edge e : g.edges(v)) {
-                    if (e.bond().directional())
-                        if (offset1 < 0)
-                            offset1 = bondStrPos.get(e);
-                        else
-                            offset2 = bondStrPos.get(e);
-                }
-                String errorPos = InvalidSmilesException.display(buffer,
-                                                                 offset1 - buffer.length(),
-                                                                 offset2 - buffer.length());
-                if (strict)
-                    throw new InvalidSmilesException("Ignored invalid Cis/Trans specification: " + errorPos);
-                else
-                    warnings.add("Ignored invalid Cis/Trans specification: " + errorPos);
-            }
-            if (nUpW > 1 || nDownW > 1) {
-                int offset1 = -1, offset2 = -1;
-                for (Edge e : g.edges(w)) {
-                    if (e.bond().directional())
-                        if (offset1 < 0)
-                            offset1 = bondStrPos.get(e);
-                        else
-                            offset2 = bondStrPos.get(e);
-                }
-                String errorPos = InvalidSmilesException.display(buffer,
-                                                                 offset1 - buffer.length(),
-                                                                 offset2 - buffer.length());
-                if (strict)
-                    throw new InvalidSmilesException("Ignored invalid Cis/Trans specification: " + errorPos);
-                else
-                    warnings.add("Ignored invalid Cis/Trans specification: " + errorPos);
-            }
-        }
-    }
-
-    public List<Edge> getEdges(LocalArrangement localArrangement, int u) {
-        if (localArrangement == null)
-            return g.edges(u);
-        int[] vs = localArrangement.toArray();
-        List<Edge> edges = new ArrayList<Edge>(vs.length);
-        for (int v : vs)
-            edges.add(g.edge(u, v));
-        return edges;
-    }
-
-    private int getOtherDb(int u, int v) {
-        for (Edge e : getLocalEdges(u)) {
-            if (e.bond() != Bond.DOUBLE)
-                continue;
-            int nbr = e.other(u);
-            if (nbr == v)
-                continue;
-            return nbr;
+            if ((nUpV > 1 || nDownV > 1) && (strict || listener != ParseWarning.DISCARD))
+                invalidCisTrans(v, buffer);
+            if ((nUpW > 1 || nDownW > 1) && (strict || listener != ParseWarning.DISCARD))
+                invalidCisTrans(w, buffer);
+            if (error != null)
+                return;
         }
-        return -1;
     }
 
-    private int[] findExtendedTetrahedralEnds(int focus) {
-        List<Edge> es = getLocalEdges(focus);
-        int prevEnd1 = focus;
-        int prevEnd2 = focus;
-        int end1 = es.get(0).other(prevEnd2);
-        int end2 = es.get(1).other(prevEnd2);
-        int tmp;
-        while (end1 >= 0 && end2 >= 0) {
-            tmp = getOtherDb(end1, prevEnd1);
-            prevEnd1 = end1;
-            end1 = tmp;
-            tmp = getOtherDb(end2, prevEnd2);
-            prevEnd2 = end2;
-            end2 = tmp;
+    /**
+     * Report an invalid Cis/Trans specification around the atom 'u', in
+     * strict mode an exception is thrown.
+     *
+     * @param u      an atom with conflicting directional bonds
+     * @param buffer the SMILES string
+     * @throws InvalidSmilesException strict mode
+     */
+    private void invalidCisTrans(int u, CharBuffer buffer) throws InvalidSmilesException {
+        int offset1 = -1, offset2 = -1;
+        final int d = g.degree(u);
+        for (int j = 0; j < d; ++j) {
+            final Edge e = g.edgeAt(u, j);
+            if (e.bond().directional())
+                if (offset1 < 0)
+                    offset1 = dirBondStrPos(e);
+                else
+                    offset2 = dirBondStrPos(e);
         }
-        return new int[]{prevEnd1, prevEnd2};
+        int mark1 = buffer.position + offset1 - buffer.length();
+        int mark2 = buffer.position + offset2 - buffer.length();
+        if (strict)
+            errorMarked("Ignored invalid Cis/Trans specification: ",
+                        SmilesParser.ErrorCode.InvalidStereo,
+                        buffer, mark1, mark2);
+        else
+            warn(ParseWarning.Kind.InvalidDoubleBondStereo,
+                 "Ignored invalid Cis/Trans specification: ",
+                 buffer, mark1, mark2);
     }
 
     /**
-     * Access the local edges in order.
+     * Report a warning to the listener, if no listener was provided the
+     * warning is stored and accessible from {@link #getWarnings()}.
+     *
+     * @param kind   the kind of warning
+     * @param prefix message prefix
+     * @param buffer the SMILES string (optional)
+     * @param mark1  display mark
+     * @param mark2  display mark
      */
-    private List<Edge> getLocalEdges(int end) {
-        return getEdges(arrangement.get(end), end);
+    private void warn(ParseWarning.Kind kind, String prefix, CharBuffer buffer, int mark1, int mark2) {
+        if (listener == ParseWarning.DISCARD)
+            return;
+        ParseWarning warning = new ParseWarning(kind, prefix, buffer, mark1, mark2);
+        if (listener != null)
+            listener.warn(warning);
+        else
+            warnings.add(warning);
     }
 
     /**
-     * Complicated process to get correct Allene neighbors.
+     * Stores the warnings found when the topologies of a graph are created
+     * lazily with the warnings of the parse, as they would be if the
+     * topologies were created eagerly. Warnings found after the parser has
+     * moved on to another SMILES are not stored.
      *
-     * @param focus the focus (central cumualted atom)
-     * @return the carrier list
+     * @param g the graph being parsed
+     * @return listener for the deferred topology builder
      */
-    public int[] getAlleneCarriers(int focus) {
-        int[] carriers = new int[4];
-        int i = 0;
-        int[] ends = findExtendedTetrahedralEnds(focus);
-        int beg = ends[0];
-        int end = ends[1];
-        boolean begh = g.implHCount(beg) == 1;
-        boolean endh = g.implHCount(end) == 1;
-        List<Edge> begEdges = new ArrayList<>(getLocalEdges(beg));
-        if (begh)
-            begEdges.add(start.contains(beg) ? 0 : 1, null);
-        for (Edge bEdge : begEdges) {
-            if (bEdge == null) {
-                carriers[i++] = beg;
-                continue;
+    private ParseWarning.Listener deferredWarnings(final Graph g) {
+        return new ParseWarning.Listener() {
+            @Override public void warn(ParseWarning warning) {
+                if (Parser.this.g == g)
+                    warnings.add(warning);
             }
-            int bnbr = bEdge.other(beg);
-            if (bEdge.bond() == Bond.DOUBLE) {
-                // neighbors next to end
-                List<Edge> endEdges = new ArrayList<>(getLocalEdges(end));
-                if (endh)
-                    endEdges.add(1, null);
-                for (Edge eEdge : endEdges) {
-                    if (eEdge == null)
-                        carriers[i++] = end;
-                    else if (eEdge.bond() != Bond.DOUBLE)
-                        carriers[i++] = eEdge.other(end);
-                }
-            } else {
-                carriers[i++] = bnbr;
-            }
-        }
-        if (i != 4)
-            return null;
-        return carriers;
+        };
     }
 
     /**
-     * Add a topology for vertex 'u' with configuration 'c'. If the atom 'u' was
-     * involved in a ring closure the local arrangement is used instead of the
-     * order in the graph. The configuration should be explicit '@TH1' or '@TH2'
-     * instead of '@' or '@@'.
+     * Report a warning without a location.
      *
-     * @param u a vertex
-     * @param c explicit configuration of that vertex
-     * @see Topology#toExplicit(Graph, int, Configuration)
+     * @param kind    the kind of warning
+     * @param message the message
      */
-    private void addTopology(int u, Configuration input, Configuration c) throws
-            InvalidSmilesException {
-        // stereo on ring closure - use local arrangement
-        if (arrangement.containsKey(u)) {
-            int[] us = arrangement.get(u).toArray();
-            List<Edge> es = getLocalEdges(u);
-
-            if (c.type() == Configuration.Type.Tetrahedral) {
-                us = insertThImplicitRef(u, us); // XXX: temp fix
-            } else if (c.type() == Configuration.Type.DoubleBond) {
-                us = insertDbImplicitRef(u, us); // XXX: temp fix
-            } else if (c.type() == Configuration.Type.ExtendedTetrahedral) {
-                g.addFlags(Graph.HAS_EXT_STRO);
-                if ((us = getAlleneCarriers(u)) == null) {
-                    if (strict)
-                        throw new InvalidSmilesException("Invalid Allene stereo");
-                    else
-                        warnings.add("Ignored invalid Allene stereochemistry");
-                    return;
-                }
-            } else if (input.type() == Configuration.Type.SquarePlanar) {
-                us = insertMultipleImplicitRefs(u, us, 4);
-            } else if (input.type() == Configuration.Type.TrigonalBipyramidal) {
-                us = insertMultipleImplicitRefs(u, us, 5);
-            } else if (input.type() == Configuration.Type.Octahedral) {
-                us = insertMultipleImplicitRefs(u, us, 6);
-            } else if (c.type() == Configuration.Type.SquarePlanar &&
-                       us.length != 4) {
-                if (strict)
-                    throw new InvalidSmilesException("SquarePlanar without 4 explicit neighbours");
-                else
-                    warnings.add("SquarePlanar without 4 explicit neighbours");
-                return;
-            } else if (c.type() == Configuration.Type.TrigonalBipyramidal &&
-                       us.length != 5) {
-                if (strict)
-                    throw new InvalidSmilesException("TrigonalBipyramidal without 5 explicit neighbours");
-                else
-                    warnings.add("SquarePlanar without 5 explicit neighbours");
-                return;
-            } else if (c.type() == Configuration.Type.Octahedral &&
-                       us.length != 6) {
-                if (strict)
-                    throw new InvalidSmilesException("Octahedral without 6 explicit neighbours");
-                else
-                    warnings.add("SquarePlanar without 6 explicit neighbours");
-                return;
-            }
-            g.addTopology(Topology.create(u, us, es, c));
-        } else {
-            int[] us = new int[g.degree(u)];
-            List<Edge> es = g.edges(u);
-            for (int i = 0; i < us.length; i++)
-                us[i] = es.get(i).other(u);
-
-            if (c.type() == Configuration.Type.Tetrahedral) {
-                us = insertThImplicitRef(u, us); // XXX: temp fix
-            } else if (c.type() == Configuration.Type.DoubleBond) {
-                us = insertDbImplicitRef(u, us); // XXX: temp fix
-            } else if (c.type() == Configuration.Type.ExtendedTetrahedral) {
-                g.addFlags(Graph.HAS_EXT_STRO);
-                if ((us = getAlleneCarriers(u)) == null)
-                    return;
-            } else if (input.type() == Configuration.Type.SquarePlanar) {
-                us = insertMultipleImplicitRefs(u, us, 4);
-            } else if (input.type() == Configuration.Type.TrigonalBipyramidal) {
-                us = insertMultipleImplicitRefs(u, us, 5);
-            } else if (input.type() == Configuration.Type.Octahedral) {
-                us = insertMultipleImplicitRefs(u, us, 6);
-            } else if (c.type() == Configuration.Type.SquarePlanar &&
-                       us.length != 4) {
-                if (strict)
-                    throw new InvalidSmilesException("SquarePlanar without 4 explicit neighbours");
-                else
-                    warnings.add("SquarePlanar without 4 explicit neighbours");
-                return;
-            } else if (c.type() == Configuration.Type.TrigonalBipyramidal &&
-                       us.length != 5) {
-                if (strict)
-                    throw new InvalidSmilesException("TrigonalBipyramidal without 5 explicit neighbours");
-                else
-                    warnings.add("SquarePlanar without 5 explicit neighbours");
-                return;
-            } else if (c.type() == Configuration.Type.Octahedral &&
-                       us.length != 6) {
-                if (strict)
-                    throw new InvalidSmilesException("Octahedral without 6 explicit neighbours");
-                else
-                    warnings.add("SquarePlanar without 6 explicit neighbours");
-                return;
-            }
-            g.addTopology(Topology.create(u, us, es, c));
-        }
-    }
-
-    private int[] insertThImplicitRef(int u, int[] vs) throws
-            InvalidSmilesException {
-        if (vs.length == 4)
-            return vs;
-        if (vs.length != 3)
-            throw new InvalidSmilesException("Invalid number of vertices for TH1/TH2 stereo chemistry");
-        if (start.contains(u))
-            return new int[]{u, vs[0], vs[1], vs[2]};
-        else
-            return new int[]{vs[0], u, vs[1], vs[2]};
+    private void warn(ParseWarning.Kind kind, String message) {
+        warn(kind, message, null, -1, -1);
     }
 
-    private int[] insertMultipleImplicitRefs(int u, int[] vs, int n) throws
-            InvalidSmilesException {
-        if (vs.length == n)
-            return vs;
-        if (vs.length <= 1)
-            throw new InvalidSmilesException("Cannot have <= 1 vertices for high-order stereo chemistry");
-        int cnt = n - vs.length;
-        int srcIdx = 0;
-        int dstIdx = 0;
-        int[] padded = new int[n];
-        if (!start.contains(u))
-            padded[dstIdx++] = vs[srcIdx++];
-        while (cnt-- > 0)
-            padded[dstIdx++] = u;
-        while (srcIdx < vs.length)
-            padded[dstIdx++] = vs[srcIdx++];
-        return padded;
+    /**
+     * Record the position in the SMILES string of a directional bond.
+     *
+     * @param e   a directional edge
+     * @param pos position in the string
+     */
+    private void addDirBond(Edge e, int pos) {
+        if (numDirBonds == dirBonds.length) {
+            dirBonds = Arrays.copyOf(dirBonds, 2 * numDirBonds);
+            dirBondStrPos = Arrays.copyOf(dirBondStrPos, 2 * numDirBonds);
+        }
+        dirBonds[numDirBonds] = e;
+        dirBondStrPos[numDirBonds++] = pos;
     }
 
-    // XXX: temporary fix for correcting configurations
-    private int[] insertDbImplicitRef(int u, int[] vs) throws
-            InvalidSmilesException {
-        if (vs.length == 3)
-            return vs;
-        if (vs.length != 2)
-            throw new InvalidSmilesException("Invaid number of verticies for DB1/DB2 stereo chemistry");
-        if (start.contains(u))
-            return new int[]{u, vs[0], vs[1]};
-        else
-            return new int[]{vs[0], u, vs[1]};
+    /**
+     * Access the position in the SMILES string of a directional bond.
+     *
+     * @param e a directional edge
+     * @return the position, -1 if unknown
+     */
+    private int dirBondStrPos(Edge e) {
+        for (int i = 0; i < numDirBonds; i++) {
+            if (dirBonds[i] == e)
+                return dirBondStrPos[i];
+        }
+        return -1;
     }
 
     /**
@@ -544,20 +674,27 @@ final class Parser {
      */
     private void addAtom(Atom a, CharBuffer buffer) throws InvalidSmilesException {
         int v = g.addAtom(a);
+        if (v == configurations.length) {
+            arrangement = Arrays.copyOf(arrangement, 2 * v);
+            configurations = Arrays.copyOf(configurations, 2 * v);
+            configurationMarks = Arrays.copyOf(configurationMarks, 2 * v);
+        }
         if (!stack.empty()) {
             int u = stack.pop();
             if (bond != Bond.DOT) {
+                if (bond.directional() && stereo == SmilesParser.Stereo.Ignore)
+                    bond = nonDirectional(u, v);
                 Edge e = new Edge(u, v, bond);
                 if (bond.directional()) {
-                    bondStrPos.put(e, lastBondPos);
+                    addDirBond(e, lastBondPos);
                     checkDirectionalBonds.set(u);
                     checkDirectionalBonds.set(v);
                 }
                 g.addEdge(e);
-                if (arrangement.containsKey(u))
-                    arrangement.get(u).add(v);
+                if (arrangement[u] != null)
+                    arrangement[u].add(v);
             } else {
-                start.add(v); // start of a new run
+                start.set(v); // start of a new run
             }
         }
         stack.push(v);
@@ -565,12 +702,29 @@ final class Parser {
 
         // configurations used to create topologies after parsing
         if (configuration != Configuration.UNKNOWN) {
-            g.addFlags(Graph.HAS_ATM_STRO);
-            configurations.put(v, configuration);
+            if (stereo != SmilesParser.Stereo.Ignore) {
+                g.addFlags(Graph.HAS_ATM_STRO);
+                configurations[v] = configuration;
+                configurationMarks[v] = configurationMark;
+            }
             configuration = Configuration.UNKNOWN;
         }
     }
 
+    /**
+     * The bond to use in place of a directional bond when stereo is ignored,
+     * an explicit single bond is needed between two aromatic atoms.
+     *
+     * @param u an atom
+     * @param v another atom
+     * @return the non-directional bond
+     */
+    private Bond nonDirectional(int u, int v) {
+        if (g.atom(u).aromatic() && g.atom(v).aromatic())
+            return Bond.SINGLE;
+        return Bond.IMPLICIT;
+    }
+
     /**
      * Read a molecule from the character buffer.
      *
@@ -579,8 +733,8 @@ final class Parser {
      */
     private void readSmiles(final CharBuffer buffer) throws
             InvalidSmilesException {
-        // primary dispatch
-        while (buffer.hasRemaining()) {
+        // primary dispatch, stops early on an error when validating
+        while (error == null && buffer.hasRemaining()) {
             char c = buffer.get();
             switch (c) {
 
@@ -651,27 +805,39 @@ final class Parser {
                 // says it's possible. The D and T here are automatic converted
                 // to [2H] and [3H].
                 case 'H':
-                    if (strict)
-                        throw new InvalidSmilesException("hydrogens should be specified in square brackets - '[H]'",
-                                                         buffer);
+                    if (strict) {
+                        error("hydrogens should be specified in square brackets - '[H]'",
+                              SmilesParser.ErrorCode.NonStandard,
+                              buffer, 0);
+                        return;
+                    }
                     addAtom(AtomImpl.EXPLICIT_HYDROGEN, buffer);
                     break;
                 case 'D':
-                    if (strict)
-                        throw new InvalidSmilesException("deuterium should be specified as a hydrogen isotope - '[2H]'",
-                                                         buffer);
+                    if (strict) {
+                        error("deuterium should be specified as a hydrogen isotope - '[2H]'",
+                              SmilesParser.ErrorCode.NonStandard,
+                              buffer, 0);
+                        return;
+                    }
                     addAtom(AtomImpl.DEUTERIUM, buffer);
                     break;
                 case 'T':
-                    if (strict)
-                        throw new InvalidSmilesException("tritium should be specified as a hydrogen isotope - '[3H]'",
-                                                         buffer);
+                    if (strict) {
+                        error("tritium should be specified as a hydrogen isotope - '[3H]'",
+                              SmilesParser.ErrorCode.NonStandard,
+                              buffer, 0);
+                        return;
+                    }
                     addAtom(AtomImpl.TRITIUM, buffer);
                     break;
 
                 // bracket atom
                 case '[':
-                    addAtom(readBracketAtom(buffer), buffer);
+                    Atom atom = readBracketAtom(buffer);
+                    if (atom == null)
+                        return;
+                    addAtom(atom, buffer);
                     break;
 
                 // ring bonds
@@ -689,78 +855,106 @@ final class Parser {
                     break;
                 case '%':
                     int num = buffer.getNumber(2);
-                    if (num < 0)
-                        throw new InvalidSmilesException("a number (<digit>+) must follow '%':", buffer);
-                    if (strict && num < 10)
-                        throw new InvalidSmilesException("two digits must follow '%'", buffer);
+                    if (num < 0) {
+                        error("a number (<digit>+) must follow '%':", SmilesParser.ErrorCode.InvalidRingBond, buffer, 0);
+                        return;
+                    }
+                    if (strict && num < 10) {
+                        error("two digits must follow '%'", SmilesParser.ErrorCode.NonStandard, buffer, 0);
+                        return;
+                    }
                     ring(num, buffer);
                     lastBondPos = buffer.position();
                     break;
 
                 // bond/dot
                 case '-':
-                    if (bond != Bond.IMPLICIT)
-                        throw new InvalidSmilesException("Multiple bonds specified:", buffer);
+                    if (bond != Bond.IMPLICIT) {
+                        error("Multiple bonds specified:", SmilesParser.ErrorCode.InvalidBond, buffer, 0);
+                        return;
+                    }
                     bond = Bond.SINGLE;
                     lastBondPos = buffer.position();
                     break;
                 case '=':
-                    if (bond != Bond.IMPLICIT)
-                        throw new InvalidSmilesException("Multiple bonds specified:", buffer);
+                    if (bond != Bond.IMPLICIT) {
+                        error("Multiple bonds specified:", SmilesParser.ErrorCode.InvalidBond, buffer, 0);
+                        return;
+                    }
                     bond = Bond.DOUBLE;
                     lastBondPos = buffer.position();
                     break;
                 case '#':
-                    if (bond != Bond.IMPLICIT)
-                        throw new InvalidSmilesException("Multiple bonds specified:", buffer);
+                    if (bond != Bond.IMPLICIT) {
+                        error("Multiple bonds specified:", SmilesParser.ErrorCode.InvalidBond, buffer, 0);
+                        return;
+                    }
                     bond = Bond.TRIPLE;
                     lastBondPos = buffer.position();
                     break;
                 case '$':
-                    if (bond != Bond.IMPLICIT)
-                        throw new InvalidSmilesException("Multiple bonds specified:", buffer);
+                    if (bond != Bond.IMPLICIT) {
+                        error("Multiple bonds specified:", SmilesParser.ErrorCode.InvalidBond, buffer, 0);
+                        return;
+                    }
                     bond = Bond.QUADRUPLE;
                     lastBondPos = buffer.position();
                     break;
                 case ':':
-                    if (bond != Bond.IMPLICIT)
-                        throw new InvalidSmilesException("Multiple bonds specified:", buffer);
+                    if (bond != Bond.IMPLICIT) {
+                        error("Multiple bonds specified:", SmilesParser.ErrorCode.InvalidBond, buffer, 0);
+                        return;
+                    }
                     g.addFlags(Graph.HAS_AROM);
                     bond = Bond.AROMATIC;
                     lastBondPos = buffer.position();
                     break;
                 case '/':
-                    if (bond != Bond.IMPLICIT)
-                        throw new InvalidSmilesException("Multiple bonds specified:", buffer);
+                    if (bond != Bond.IMPLICIT) {
+                        error("Multiple bonds specified:", SmilesParser.ErrorCode.InvalidBond, buffer, 0);
+                        return;
+                    }
                     bond = Bond.UP;
                     lastBondPos = buffer.position();
-                    g.addFlags(Graph.HAS_BND_STRO);
+                    if (stereo != SmilesParser.Stereo.Ignore)
+                        g.addFlags(Graph.HAS_BND_STRO);
                     break;
                 case '\\':
                     // we allow C\\C=C/C since it could be an escaping error
-                    if (bond != Bond.IMPLICIT && bond != Bond.DOWN)
-                        throw new InvalidSmilesException("Multiple bonds specified:", buffer);
+                    if (bond != Bond.IMPLICIT && bond != Bond.DOWN) {
+                        error("Multiple bonds specified:", SmilesParser.ErrorCode.InvalidBond, buffer, 0);
+                        return;
+                    }
                     bond = Bond.DOWN;
                     lastBondPos = buffer.position();
-                    g.addFlags(Graph.HAS_BND_STRO);
+                    if (stereo != SmilesParser.Stereo.Ignore)
+                        g.addFlags(Graph.HAS_BND_STRO);
                     break;
                 case '.':
-                    if (bond != Bond.IMPLICIT)
-                        throw new InvalidSmilesException("Bond specified before disconnection:", buffer);
+                    if (bond != Bond.IMPLICIT) {
+                        error("Bond specified before disconnection:", SmilesParser.ErrorCode.InvalidBond, buffer, 0);
+                        return;
+                    }
                     bond = Bond.DOT;
                     break;
 
                 // branching
                 case '(':
-                    if (stack.empty())
-                        throw new InvalidSmilesException("Cannot open branch at this position, SMILES may be truncated:",
-                                                         buffer);
+                    if (stack.empty()) {
+                        error("Cannot open branch at this position, SMILES may be truncated:",
+                              SmilesParser.ErrorCode.InvalidBranch,
+                              buffer, 0);
+                        return;
+                    }
                     stack.push(stack.peek());
                     break;
                 case ')':
-                    if (stack.size() < 2)
-                        throw new InvalidSmilesException("Closing of an unopened branch, SMILES may be truncated:",
-                                                         buffer);
+                    if (stack.size() < 2) {
+                        error("Closing of an unopened branch, SMILES may be truncated:",
+                              SmilesParser.ErrorCode.InvalidBranch,
+                              buffer, 0);
+                        return;
+                    }
                     stack.pop();
                     break;
 
@@ -769,21 +963,26 @@ final class Parser {
                 case ' ':
 
                     // String suffix is title 
-                    StringBuilder sb = new StringBuilder();
+                    int beg = buffer.position;
+                    int end = beg;
                     while (buffer.hasRemaining()) {
                         c = buffer.get();
                         if (c == '\n' || c == '\r')
                             break;
-                        sb.append(c);
+                        end++;
                     }
-                    g.setTitle(sb.toString());
+                    titleBeg = beg;
+                    titleEnd = end;
+                    if (titles && !validating)
+                        g.setTitle(buffer.substr(beg, end));
                     return;
                 case '\n':
                 case '\r':
                     return;
 
                 default:
-                    throw new InvalidSmilesException("unexpected character:", buffer);
+                    error("unexpected character:", SmilesParser.ErrorCode.UnexpectedCharacter, buffer, 0);
+                    return;
             }
         }
     }
@@ -797,7 +996,7 @@ final class Parser {
      * </pre></blockquote>
      *
      * @param buffer a character buffer
-     * @return a bracket atom
+     * @return a bracket atom, null if invalid and validating
      * @throws InvalidSmilesException thrown if the bracket atom did not match
      *                                the grammar, invalid symbol, missing
      *                                closing bracket or invalid chiral
@@ -809,8 +1008,10 @@ final class Parser {
 
         boolean arbitraryLabel = false;
 
-        if (!buffer.hasRemaining())
-            throw new InvalidSmilesException("Unclosed bracket atom, SMILES may be truncated", buffer);
+        if (!buffer.hasRemaining()) {
+            error("Unclosed bracket atom, SMILES may be truncated", SmilesParser.ErrorCode.InvalidBracketAtom, buffer, 0);
+            return null;
+        }
 
         final int isotope = buffer.getNumber();
         final boolean aromatic = buffer.next() >= 'a' && buffer.next() <= 'z';
@@ -818,29 +1019,50 @@ final class Parser {
         if (element == Element.Unknown)
             hasAstrix = true;
 
-        if (strict && element == null)
-            throw new InvalidSmilesException("unrecognised element symbol, SMILES may be truncated: ", buffer);
+        if (strict && element == null) {
+            error("unrecognised element symbol, SMILES may be truncated: ", SmilesParser.ErrorCode.InvalidBracketAtom, buffer, 0);
+            return null;
+        }
 
         if (element != null && aromatic)
             g.addFlags(Graph.HAS_AROM);
 
         // element isn't aromatic as per the OpenSMILES specification
-        if (strict && aromatic && !element.aromatic(Element.AromaticSpecification.OpenSmiles))
-            throw new InvalidSmilesException("abnormal aromatic element", buffer);
+        if (strict && aromatic && !element.aromatic(Element.AromaticSpecification.OpenSmiles)) {
+            error("abnormal aromatic element", SmilesParser.ErrorCode.NonStandard, buffer, 0);
+            return null;
+        }
 
         if (element == null) {
             arbitraryLabel = true;
         }
 
-        configuration = Configuration.read(buffer);
+        final int configBeg = buffer.position;
+        final Configuration config = Configuration.readOrNull(buffer);
+        if (config == null) {
+            error(Configuration.invalidMessage(buffer, configBeg), SmilesParser.ErrorCode.InvalidStereo, buffer, 0);
+            return null;
+        }
+        configuration = config;
+        configurationMark = configBeg + 1;
 
         int hCount = readHydrogens(buffer);
         int charge = readCharge(buffer);
-        int atomClass = readClass(buffer);
+
+        // as readClass() but nothing is thrown when validating
+        int atomClass = 0;
+        if (buffer.getIf(':')) {
+            if (!buffer.nextIsDigit()) {
+                error("invalid atom class, <digit>+ must follow ':'", SmilesParser.ErrorCode.InvalidBracketAtom, buffer, 0);
+                return null;
+            }
+            atomClass = buffer.getNumber();
+        }
 
         if (!arbitraryLabel && !buffer.getIf(']')) {
             if (strict) {
-                throw InvalidSmilesException.invalidBracketAtom(buffer);
+                error(InvalidSmilesException.INVALID_BRACKET_ATOM, SmilesParser.ErrorCode.InvalidBracketAtom, buffer, 0);
+                return null;
             } else {
                 arbitraryLabel = true;
             }
@@ -860,21 +1082,24 @@ final class Parser {
                 }
                 end++;
             }
-            if (depth != 0)
-                throw new InvalidSmilesException("unparsable label in bracket atom",
-                                                 buffer,
-                                                 buffer.position - 1);
+            if (depth != 0) {
+                error("unparsable label in bracket atom",
+                      SmilesParser.ErrorCode.InvalidBracketAtom,
+                      buffer,
+                      start - buffer.position);
+                return null;
+            }
             String label = buffer.substr(start, end);
             hasAstrix = true;
             return new AtomImpl.BracketAtom(label);
         }
 
-        return new AtomImpl.BracketAtom(isotope,
-                                        element,
-                                        hCount,
-                                        charge,
-                                        atomClass,
-                                        aromatic);
+        return AtomImpl.BracketAtom.of(isotope,
+                                       element,
+                                       hCount,
+                                       charge,
+                                       atomClass,
+                                       aromatic);
     }
 
     /**
@@ -944,7 +1169,7 @@ final class Parser {
         if (buffer.getIf(':')) {
             if (buffer.nextIsDigit())
                 return buffer.getNumber();
-            throw new InvalidSmilesException("invalid atom class, <digit>+ must follow ':'", buffer);
+            throw new InvalidSmilesException("invalid atom class, <digit>+ must follow ':'", SmilesParser.ErrorCode.InvalidBracketAtom, buffer);
         }
         return 0;
     }
@@ -956,14 +1181,20 @@ final class Parser {
      * @throws InvalidSmilesException bond types did not match on ring closure
      */
     private void ring(int rnum, CharBuffer buffer) throws InvalidSmilesException {
-        if (bond == Bond.DOT)
-            throw new InvalidSmilesException("a ring bond can not be a 'dot':",
-                                             buffer,
-                                             buffer.position());
-        if (stack.empty())
-            throw new InvalidSmilesException("No previous atom for ring open!",
-                                             buffer,
-                                             buffer.position());
+        if (bond == Bond.DOT) {
+            error("a ring bond can not be a 'dot':",
+                  SmilesParser.ErrorCode.InvalidRingBond,
+                  buffer,
+                  0);
+            return;
+        }
+        if (stack.empty()) {
+            error("No previous atom for ring open!",
+                  SmilesParser.ErrorCode.InvalidRingBond,
+                  buffer,
+                  0);
+            return;
+        }
 
         if (rings.length <= rnum || rings[rnum] == null)
             openRing(rnum, buffer);
@@ -987,7 +1218,8 @@ final class Parser {
         rings[rnum] = new RingBond(u, bond, lastBondPos);
 
         // keep track of arrangement (important for stereo configurations)
-        createArrangement(u).add(-rnum);
+        if (stereo != SmilesParser.Stereo.Ignore)
+            createArrangement(u).add(-rnum);
         openRings++;
 
         bond = Bond.IMPLICIT;
@@ -1001,7 +1233,7 @@ final class Parser {
      * @return current local arrangement
      */
     private LocalArrangement createArrangement(int u) {
-        LocalArrangement la = arrangement.get(u);
+        LocalArrangement la = arrangement[u];
         if (la == null) {
             la = new LocalArrangement();
             final int d = g.degree(u);
@@ -1009,7 +1241,7 @@ final class Parser {
                 final Edge e = g.edgeAt(u, j);
                 la.add(e.other(u));
             }
-            arrangement.put(u, la);
+            arrangement[u] = la;
         }
         return la;
     }
@@ -1026,31 +1258,42 @@ final class Parser {
         int u = rbond.u;
         int v = stack.peek();
 
-        if (u == v)
-            throw new InvalidSmilesException("Endpoints of ringbond are the same - loops are not allowed",
-                                             buffer);
+        if (u == v) {
+            error("Endpoints of ringbond are the same - loops are not allowed",
+                  SmilesParser.ErrorCode.InvalidRingBond,
+                  buffer, 0);
+            return;
+        }
 
-        if (g.adjacent(u, v))
-            throw new InvalidSmilesException("Endpoints of ringbond are already connected - multi-edges are not allowed",
-                                             buffer);
+        if (g.adjacent(u, v)) {
+            error("Endpoints of ringbond are already connected - multi-edges are not allowed",
+                  SmilesParser.ErrorCode.InvalidRingBond,
+                  buffer, 0);
+            return;
+        }
 
         bond = decideBond(rbond.bond, bond.inverse(), rbond.pos, buffer);
+        if (bond == null)
+            return;
+        if (bond.directional() && stereo == SmilesParser.Stereo.Ignore)
+            bond = nonDirectional(u, v);
 
         Edge e = new Edge(u, v, bond);
         if (bond.directional()) {
             checkDirectionalBonds.set(u);
             checkDirectionalBonds.set(v);
             if (rbond.bond.directional())
-                bondStrPos.put(e, rbond.pos);
+                addDirBond(e, rbond.pos);
             else
-                bondStrPos.put(e, lastBondPos);
+                addDirBond(e, lastBondPos);
         }
         g.addEdge(e);
         bond = Bond.IMPLICIT;
         // adjust the arrangement replacing where this ring number was openned
-        arrangement.get(rbond.u).replace(-rnum, stack.peek());
-        if (arrangement.containsKey(v))
-            arrangement.get(v).add(rbond.u);
+        if (arrangement[rbond.u] != null)
+            arrangement[rbond.u].replace(-rnum, stack.peek());
+        if (arrangement[v] != null)
+            arrangement[v].add(rbond.u);
         openRings--;
     }
 
@@ -1070,7 +1313,8 @@ final class Parser {
      * @param b      other bond
      * @param pos    the position in the string of bond a
      * @param buffer the buffer and it's current position
-     * @return the bond to use for this edge
+     * @return the bond to use for this edge, null if the bonds did not match
+     *         and validating
      * @throws InvalidSmilesException ring bonds did not match
      */
     Bond decideBond(final Bond a, final Bond b, int pos, CharBuffer buffer) throws InvalidSmilesException {
@@ -1080,14 +1324,17 @@ final class Parser {
             return b;
         else if (b == Bond.IMPLICIT)
             return a;
-        if (strict || a.inverse() != b)
-            throw new InvalidSmilesException("Ring closure bonds did not match,  '" + a + "'!='" + b + "':" +
-                                             InvalidSmilesException.display(buffer,
-                                                                            pos - buffer.position,
-                                                                            lastBondPos - buffer.position));
-        warnings.add("Ignored invalid Cis/Trans on ring closure, should flip:" +
-                     InvalidSmilesException.display(buffer, pos - buffer.position,
-                                                    lastBondPos - buffer.position));
+        if (strict || a.inverse() != b) {
+            errorMarked("Ring closure bonds did not match,  '" + a + "'!='" + b + "':",
+                        SmilesParser.ErrorCode.InvalidRingBond,
+                        buffer, pos, lastBondPos);
+            return null;
+        }
+        if (stereo == SmilesParser.Stereo.Ignore)
+            return Bond.IMPLICIT;
+        warn(ParseWarning.Kind.InvalidRingClosureStereo,
+             "Ignored invalid Cis/Trans on ring closure, should flip:",
+             buffer, pos, lastBondPos);
         return Bond.IMPLICIT;
     }
 
@@ -1104,12 +1351,31 @@ final class Parser {
     }
 
     /**
-     * Access any warning messages from parsing the SMILES.
+     * Access any warning messages from parsing the SMILES. Warnings are only
+     * stored when no listener was provided.
      *
      * @return the warnings.
      */
     public Collection<? extends String> getWarnings() {
-        return Collections.unmodifiableCollection(warnings);
+        List<ParseWarning> warnings = warnings();
+        List<String> messages = new ArrayList<>(warnings.size());
+        for (ParseWarning warning : warnings)
+            messages.add(warning.message());
+        return Collections.unmodifiableCollection(messages);
+    }
+
+    /**
+     * Access the warnings from parsing the SMILES. Warnings are only stored
+     * when no listener was provided. Any deferred (lazy) topologies of the
+     * graph are created first, the warnings are then the same as if they
+     * were created eagerly.
+     *
+     * @return the warnings.
+     */
+    List<ParseWarning> warnings() {
+        if (g != null && listener == null)
+            g.resolveTopologies();
+        return Collections.unmodifiableList(warnings);
     }
 
     /**
@@ -1128,6 +1394,356 @@ final class Parser {
         }
     }
 
+    /**
+     * Creates the topologies (stereo configurations) for a chemical graph from
+     * the configurations and local arrangements recorded while parsing. The
+     * builder is used directly by the parser or held by the graph and run
+     * when a topology is first accessed.
+     *
+     * @see Graph#topologyOf(int)
+     */
+    static final class TopologyBuilder {
+
+        private final Graph              g;
+        private final LocalArrangement[] arrangement;
+        private final Configuration[]    configurations;
+        private final BitSet             start;
+        private final boolean            strict;
+
+        /** Receives warnings, stored by the parser when null. */
+        private final ParseWarning.Listener listener;
+        private final Parser                parser;
+
+        /** The SMILES string, null when the creation is deferred. */
+        private final CharBuffer buffer;
+
+        private TopologyBuilder(Graph g,
+                                LocalArrangement[] arrangement,
+                                Configuration[] configurations,
+                                BitSet start,
+                                boolean strict,
+                                ParseWarning.Listener listener,
+                                Parser parser,
+                                CharBuffer buffer) {
+            this.g = g;
+            this.arrangement = arrangement;
+            this.configurations = configurations;
+            this.start = start;
+            this.strict = strict;
+            this.listener = listener;
+            this.parser = parser;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Create and store the topologies on the graph. When the creation is
+         * deferred any configuration which would have made the SMILES
+         * invalid is reported as a warning and the topology left unknown.
+         *
+         * @throws InvalidSmilesException invalid stereo configuration
+         */
+        void build() throws InvalidSmilesException {
+            final int n = g.order();
+            for (int u = 0; u < n && u < configurations.length; u++) {
+                final Configuration c = configurations[u];
+                if (c == null)
+                    continue;
+                if (parser != null) {
+                    addTopology(u, c, Topology.toExplicit(g, u, c));
+                    if (parser.error != null)
+                        return;
+                } else {
+                    try {
+                        addTopology(u, c, Topology.toExplicit(g, u, c));
+                    } catch (InvalidSmilesException e) {
+                        warn(ParseWarning.Kind.InvalidStereo, e.getMessage());
+                    }
+                }
+            }
+        }
+
+        /**
+         * Report an invalid stereo configuration, when the parser is
+         * validating the error is recorded and the caller should return
+         * early, otherwise the exception is thrown.
+         *
+         * @param u       the atom with the invalid configuration
+         * @param message the message
+         * @throws InvalidSmilesException not validating
+         */
+        private void error(int u, String message) throws InvalidSmilesException {
+            if (parser == null)
+                throw new InvalidSmilesException(message, SmilesParser.ErrorCode.InvalidStereo);
+            parser.error(message + ":",
+                         SmilesParser.ErrorCode.InvalidStereo,
+                         buffer,
+                         parser.configurationMarks[u] - buffer.position());
+        }
+
+        private void warn(ParseWarning.Kind kind, String message) {
+            if (parser != null)
+                parser.warn(kind, message);
+            else if (listener != ParseWarning.DISCARD)
+                listener.warn(new ParseWarning(kind, message, null, -1, -1));
+        }
+
+        List<Edge> getEdges(LocalArrangement localArrangement, int u) {
+            if (localArrangement == null)
+                return g.edges(u);
+            int[] vs = localArrangement.toArray();
+            List<Edge> edges = new ArrayList<Edge>(vs.length);
+            for (int v : vs)
+                edges.add(g.edge(u, v));
+            return edges;
+        }
+
+        private int getOtherDb(int u, int v) {
+            for (Edge e : getLocalEdges(u)) {
+                if (e.bond() != Bond.DOUBLE)
+                    continue;
+                int nbr = e.other(u);
+                if (nbr == v)
+                    continue;
+                return nbr;
+            }
+            return -1;
+        }
+
+        private int[] findExtendedTetrahedralEnds(int focus) {
+            List<Edge> es = getLocalEdges(focus);
+            int prevEnd1 = focus;
+            int prevEnd2 = focus;
+            int end1 = es.get(0).other(prevEnd2);
+            int end2 = es.get(1).other(prevEnd2);
+            int tmp;
+            while (end1 >= 0 && end2 >= 0) {
+                tmp = getOtherDb(end1, prevEnd1);
+                prevEnd1 = end1;
+                end1 = tmp;
+                tmp = getOtherDb(end2, prevEnd2);
+                prevEnd2 = end2;
+                end2 = tmp;
+            }
+            return new int[]{prevEnd1, prevEnd2};
+        }
+
+        /**
+         * Access the local edges in order.
+         */
+        private List<Edge> getLocalEdges(int end) {
+            return getEdges(arrangement[end], end);
+        }
+
+        /**
+         * Complicated process to get correct Allene neighbors.
+         *
+         * @param focus the focus (central cumualted atom)
+         * @return the carrier list
+         */
+        int[] getAlleneCarriers(int focus) {
+            int[] carriers = new int[4];
+            int i = 0;
+            int[] ends = findExtendedTetrahedralEnds(focus);
+            int beg = ends[0];
+            int end = ends[1];
+            boolean begh = g.implHCount(beg) == 1;
+            boolean endh = g.implHCount(end) == 1;
+            List<Edge> begEdges = new ArrayList<>(getLocalEdges(beg));
+            if (begh)
+                begEdges.add(start.get(beg) ? 0 : 1, null);
+            for (Edge bEdge : begEdges) {
+                if (bEdge == null) {
+                    carriers[i++] = beg;
+                    continue;
+                }
+                int bnbr = bEdge.other(beg);
+                if (bEdge.bond() == Bond.DOUBLE) {
+                    // neighbors next to end
+                    List<Edge> endEdges = new ArrayList<>(getLocalEdges(end));
+                    if (endh)
+                        endEdges.add(1, null);
+                    for (Edge eEdge : endEdges) {
+                        if (eEdge == null)
+                            carriers[i++] = end;
+                        else if (eEdge.bond() != Bond.DOUBLE)
+                            carriers[i++] = eEdge.other(end);
+                    }
+                } else {
+                    carriers[i++] = bnbr;
+                }
+            }
+            if (i != 4)
+                return null;
+            return carriers;
+        }
+
+        /**
+         * Add a topology for vertex 'u' with configuration 'c'. If the atom 'u' was
+         * involved in a ring closure the local arrangement is used instead of the
+         * order in the graph. The configuration should be explicit '@TH1' or '@TH2'
+         * instead of '@' or '@@'.
+         *
+         * @param u a vertex
+         * @param c explicit configuration of that vertex
+         * @see Topology#toExplicit(Graph, int, Configuration)
+         */
+        void addTopology(int u, Configuration input, Configuration c) throws
+                InvalidSmilesException {
+            // stereo on ring closure - use local arrangement
+            if (arrangement[u] != null) {
+                int[] us = arrangement[u].toArray();
+                List<Edge> es = getLocalEdges(u);
+
+                if (c.type() == Configuration.Type.Tetrahedral) {
+                    us = insertThImplicitRef(u, us); // XXX: temp fix
+                } else if (c.type() == Configuration.Type.DoubleBond) {
+                    us = insertDbImplicitRef(u, us); // XXX: temp fix
+                } else if (c.type() == Configuration.Type.ExtendedTetrahedral) {
+                    g.addFlags(Graph.HAS_EXT_STRO);
+                    if ((us = getAlleneCarriers(u)) == null) {
+                        if (strict)
+                            error(u, "Invalid Allene stereo");
+                        else
+                            warn(ParseWarning.Kind.InvalidExtendedTetrahedral,
+                                 "Ignored invalid Allene stereochemistry");
+                        return;
+                    }
+                } else if (input.type() == Configuration.Type.SquarePlanar) {
+                    us = insertMultipleImplicitRefs(u, us, 4);
+                } else if (input.type() == Configuration.Type.TrigonalBipyramidal) {
+                    us = insertMultipleImplicitRefs(u, us, 5);
+                } else if (input.type() == Configuration.Type.Octahedral) {
+                    us = insertMultipleImplicitRefs(u, us, 6);
+                } else if (c.type() == Configuration.Type.SquarePlanar &&
+                           us.length != 4) {
+                    if (strict)
+                        error(u, "SquarePlanar without 4 explicit neighbours");
+                    else
+                        warn(ParseWarning.Kind.InvalidSquarePlanar,
+                             "SquarePlanar without 4 explicit neighbours");
+                    return;
+                } else if (c.type() == Configuration.Type.TrigonalBipyramidal &&
+                           us.length != 5) {
+                    if (strict)
+                        error(u, "TrigonalBipyramidal without 5 explicit neighbours");
+                    else
+                        warn(ParseWarning.Kind.InvalidTrigonalBipyramidal,
+                             "SquarePlanar without 5 explicit neighbours");
+                    return;
+                } else if (c.type() == Configuration.Type.Octahedral &&
+                           us.length != 6) {
+                    if (strict)
+                        error(u, "Octahedral without 6 explicit neighbours");
+                    else
+                        warn(ParseWarning.Kind.InvalidOctahedral,
+                             "SquarePlanar without 6 explicit neighbours");
+                    return;
+                }
+                if (us == null || parser != null && parser.validating)
+                    return; // recorded error or only validating
+                g.storeTopology(Topology.create(u, us, es, c));
+            } else {
+                int[] us = new int[g.degree(u)];
+                List<Edge> es = g.edges(u);
+                for (int i = 0; i < us.length; i++)
+                    us[i] = es.get(i).other(u);
+
+                if (c.type() == Configuration.Type.Tetrahedral) {
+                    us = insertThImplicitRef(u, us); // XXX: temp fix
+                } else if (c.type() == Configuration.Type.DoubleBond) {
+                    us = insertDbImplicitRef(u, us); // XXX: temp fix
+                } else if (c.type() == Configuration.Type.ExtendedTetrahedral) {
+                    g.addFlags(Graph.HAS_EXT_STRO);
+                    if ((us = getAlleneCarriers(u)) == null)
+                        return;
+                } else if (input.type() == Configuration.Type.SquarePlanar) {
+                    us = insertMultipleImplicitRefs(u, us, 4);
+                } else if (input.type() == Configuration.Type.TrigonalBipyramidal) {
+                    us = insertMultipleImplicitRefs(u, us, 5);
+                } else if (input.type() == Configuration.Type.Octahedral) {
+                    us = insertMultipleImplicitRefs(u, us, 6);
+                } else if (c.type() == Configuration.Type.SquarePlanar &&
+                           us.length != 4) {
+                    if (strict)
+                        error(u, "SquarePlanar without 4 explicit neighbours");
+                    else
+                        warn(ParseWarning.Kind.InvalidSquarePlanar,
+                             "SquarePlanar without 4 explicit neighbours");
+                    return;
+                } else if (c.type() == Configuration.Type.TrigonalBipyramidal &&
+                           us.length != 5) {
+                    if (strict)
+                        error(u, "TrigonalBipyramidal without 5 explicit neighbours");
+                    else
+                        warn(ParseWarning.Kind.InvalidTrigonalBipyramidal,
+                             "SquarePlanar without 5 explicit neighbours");
+                    return;
+                } else if (c.type() == Configuration.Type.Octahedral &&
+                           us.length != 6) {
+                    if (strict)
+                        error(u, "Octahedral without 6 explicit neighbours");
+                    else
+                        warn(ParseWarning.Kind.InvalidOctahedral,
+                             "SquarePlanar without 6 explicit neighbours");
+                    return;
+                }
+                if (us == null || parser != null && parser.validating)
+                    return; // recorded error or only validating
+                g.storeTopology(Topology.create(u, us, es, c));
+            }
+        }
+
+        private int[] insertThImplicitRef(int u, int[] vs) throws
+                InvalidSmilesException {
+            if (vs.length == 4)
+                return vs;
+            if (vs.length != 3) {
+                error(u, "Invalid number of vertices for TH1/TH2 stereo chemistry");
+                return null;
+            }
+            if (start.get(u))
+                return new int[]{u, vs[0], vs[1], vs[2]};
+            else
+                return new int[]{vs[0], u, vs[1], vs[2]};
+        }
+
+        private int[] insertMultipleImplicitRefs(int u, int[] vs, int n) throws
+                InvalidSmilesException {
+            if (vs.length == n)
+                return vs;
+            if (vs.length <= 1) {
+                error(u, "Cannot have <= 1 vertices for high-order stereo chemistry");
+                return null;
+            }
+            int cnt = n - vs.length;
+            int srcIdx = 0;
+            int dstIdx = 0;
+            int[] padded = new int[n];
+            if (!start.get(u))
+                padded[dstIdx++] = vs[srcIdx++];
+            while (cnt-- > 0)
+                padded[dstIdx++] = u;
+            while (srcIdx < vs.length)
+                padded[dstIdx++] = vs[srcIdx++];
+            return padded;
+        }
+
+        // XXX: temporary fix for correcting configurations
+        private int[] insertDbImplicitRef(int u, int[] vs) throws
+                InvalidSmilesException {
+            if (vs.length == 3)
+                return vs;
+            if (vs.length != 2) {
+                error(u, "Invaid number of verticies for DB1/DB2 stereo chemistry");
+                return null;
+            }
+            if (start.get(u))
+                return new int[]{u, vs[0], vs[1]};
+            else
+                return new int[]{vs[0], u, vs[1]};
+        }
+    }
+
     /**
      * Hold information on the local arrangement around an atom. The arrangement
      * is normally identical to the order loaded unless the atom is involved in
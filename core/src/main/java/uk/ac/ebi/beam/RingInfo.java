@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2013, European Bioinformatics Institute (EMBL-EBI)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package uk.ac.ebi.beam;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Ring properties of a chemical graph: which atoms are cyclic, the size of
+ * the smallest ring each atom and bond belongs to and the ring systems (rings
+ * sharing at least one atom). The properties are computed on construction and
+ * the instance is not modified afterwards, it may therefore be shared between
+ * threads once safely published.
+ *
+ * @author John May
+ * @see Graph#freeze()
+ */
+final class RingInfo {
+
+    /** Cyclic atoms, must not be modified. */
+    private final BitSet cyclic;
+
+    /** Smallest ring size of each atom, 0 if acyclic. */
+    private final int[] atomRingSize;
+
+    /** Smallest ring size of each bond, aligned with the graph adjacency. */
+    private final int[][] bondRingSize;
+
+    /** Ring system of each atom, -1 if acyclic. */
+    private final int[] ringSystem;
+
+    private final int nRingSystems;
+
+    RingInfo(Graph g) {
+        final int order = g.order();
+
+        this.cyclic = new BiconnectedComponents(g).cyclic();
+        this.atomRingSize = new int[order];
+        this.bondRingSize = new int[order][];
+        this.ringSystem = new int[order];
+
+        UnionFind uf = new UnionFind(Math.max(1, order));
+        ShortestCycle sc = new ShortestCycle(g);
+
+        for (int u = 0; u < order; u++)
+            bondRingSize[u] = new int[g.degree(u)];
+
+        for (int u = cyclic.nextSetBit(0); u >= 0; u = cyclic.nextSetBit(u + 1)) {
+            final int d = g.degree(u);
+            for (int j = 0; j < d; j++) {
+                final Edge e = g.edgeAt(u, j);
+                final int v = e.other(u);
+                if (v < u || !cyclic.get(v))
+                    continue;
+                // bridges between two rings are not in a ring
+                final int size = sc.size(u, v, Integer.MAX_VALUE);
+                if (size == 0)
+                    continue;
+                bondRingSize[u][j] = size;
+                bondRingSize[v][indexOf(g, v, e)] = size;
+                if (atomRingSize[u] == 0 || size < atomRingSize[u])
+                    atomRingSize[u] = size;
+                if (atomRingSize[v] == 0 || size < atomRingSize[v])
+                    atomRingSize[v] = size;
+                uf.union(u, v);
+            }
+        }
+
+        // number the ring systems in order of their first atom
+        Arrays.fill(ringSystem, -1);
+        int n = 0;
+        for (int u = 0; u < order; u++) {
+            if (atomRingSize[u] == 0)
+                continue;
+            final int root = uf.find(u);
+            if (ringSystem[root] < 0)
+                ringSystem[root] = n++;
+            ringSystem[u] = ringSystem[root];
+        }
+        this.nRingSystems = n;
+    }
+
+    private static int indexOf(Graph g, int u, Edge e) {
+        int j = 0;
+        while (g.edgeAt(u, j) != e)
+            j++;
+        return j;
+    }
+
+    /**
+     * The cyclic atoms, the set is shared and must not be modified.
+     *
+     * @return cyclic atoms
+     */
+    BitSet cyclic() {
+        return cyclic;
+    }
+
+    int atomRingSize(int u) {
+        return atomRingSize[u];
+    }
+
+    int bondRingSize(int u, int j) {
+        return bondRingSize[u][j];
+    }
+
+    int ringSystem(int u) {
+        return ringSystem[u];
+    }
+
+    int ringSystemCount() {
+        return nRingSystems;
+    }
+
+    /**
+     * Finds the size of the smallest ring containing an edge, a breadth-first
+     * search for the shortest path between the endpoints which does not use
+     * the edge. The search arrays are reused for each edge.
+     */
+    static final class ShortestCycle {
+
+        private final Graph g;
+        private final int[] dist, queue;
+
+        ShortestCycle(Graph g) {
+            this.g = g;
+            this.dist = new int[g.order()];
+            this.queue = new int[g.order()];
+        }
+
+        /**
+         * Size of the smallest ring containing the edge 'u'-'v'.
+         *
+         * @param u   an atom
+         * @param v   an atom adjacent to 'u'
+         * @param max the largest ring size of interest
+         * @return the ring size, 0 if the edge is not in a ring no larger
+         *         than 'max'
+         */
+        int size(int u, int v, int max) {
+            int head = 0, tail = 0, size = 0;
+            queue[tail++] = u;
+            dist[u] = 1;
+            search:
+            while (head < tail) {
+                final int x = queue[head++];
+                // a path of dist[x] atoms, adding 'v' closes a ring of
+                // dist[x] + 1 atoms
+                if (dist[x] >= max)
+                    break;
+                final int d = g.degree(x);
+                for (int j = 0; j < d; j++) {
+                    final int y = g.edgeAt(x, j).other(x);
+                    if (y == v) {
+                        if (x == u)
+                            continue;
+                        size = dist[x] + 1;
+                        break search;
+                    }
+                    if (dist[y] == 0) {
+                        dist[y] = dist[x] + 1;
+                        queue[tail++] = y;
+                    }
+                }
+            }
+            for (int i = 0; i < tail; i++)
+                dist[queue[i]] = 0;
+            return size;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2013, European Bioinformatics Institute (EMBL-EBI)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+
+package uk.ac.ebi.beam;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Write SMILES records (one per line) to a stream or channel. The SMILES is
+ * generated (see {@link SmilesWriter}) and encoded directly as ASCII bytes
+ * (UTF-8 for any other characters of the SMILES or title) into a large
+ * buffer which is written out once it is full, avoiding the intermediate
+ * {@link String}s and charset encoder of a {@link java.io.Writer}. The title
+ * of a record can be copied from a {@link SmilesReader} without being
+ * decoded.
+ *
+ * <blockquote><pre>
+ * try (SmilesReader rdr = new SmilesReader(in, SmilesReader.ErrorPolicy.Skip);
+ *      SmilesOutputStream out = new SmilesOutputStream(path)) {
+ *     Graph g;
+ *     while ((g = rdr.read()) != null) {
+ *         out.write(g.kekule(), rdr);
+ *     }
+ * }
+ * </pre></blockquote>
+ *
+ * Records are terminated with a '\n'. A stream is not thread-safe.
+ *
+ * @author John May
+ * @see SmilesReader
+ */
+public final class SmilesOutputStream extends OutputStream {
+
+    /** Default number of bytes buffered before writing. */
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream        out;
+    private final WritableByteChannel channel;
+    private final SmilesWriter        writer = new SmilesWriter();
+
+    private final byte[] buf;
+    private       int    pos;
+
+    /**
+     * Write SMILES to an output stream.
+     *
+     * @param out the output stream
+     */
+    public SmilesOutputStream(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Write SMILES to an output stream, buffering the specified number of
+     * bytes.
+     *
+     * @param out  the output stream
+     * @param size buffer size (bytes)
+     */
+    public SmilesOutputStream(OutputStream out, int size) {
+        this(out, null, size);
+        if (out == null)
+            throw new NullPointerException("no output stream provided");
+    }
+
+    /**
+     * Write SMILES to a channel (e.g. a {@link FileChannel}).
+     *
+     * @param channel the channel
+     */
+    public SmilesOutputStream(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Write SMILES to a channel (e.g. a {@link FileChannel}), buffering the
+     * specified number of bytes.
+     *
+     * @param channel the channel
+     * @param size    buffer size (bytes)
+     */
+    public SmilesOutputStream(WritableByteChannel channel, int size) {
+        this(null, channel, size);
+        if (channel == null)
+            throw new NullPointerException("no channel provided");
+    }
+
+    /**
+     * Write SMILES to a file, the file is created or truncated.
+     *
+     * @param path the file path
+     * @throws IOException the file could not be opened
+     */
+    public SmilesOutputStream(Path path) throws IOException {
+        this(FileChannel.open(path,
+                              StandardOpenOption.CREATE,
+                              StandardOpenOption.TRUNCATE_EXISTING,
+                              StandardOpenOption.WRITE));
+    }
+
+    private SmilesOutputStream(OutputStream out, WritableByteChannel channel, int size) {
+        if (size <= 0)
+            throw new IllegalArgumentException("buffer size must be positive");
+        this.out = out;
+        this.channel = channel;
+        this.buf = new byte[size];
+    }
+
+    /**
+     * Write the SMILES of a chemical graph followed by its title (if any)
+     * separated by a space.
+     *
+     * @param g chemical graph
+     * @throws IOException a SMILES could not be generated (nothing is
+     *                     written) or a low-level I/O error
+     */
+    public void write(Graph g) throws IOException {
+        final String title = g.getTitle();
+        putSmiles(g);
+        if (title != null) {
+            put((byte) ' ');
+            put(title, 0, title.length());
+        }
+        put((byte) '\n');
+    }
+
+    /**
+     * Write the SMILES of a chemical graph followed by a suffix, the suffix
+     * is written as is and should include any delimiter.
+     *
+     * @param g      chemical graph
+     * @param suffix the suffix (e.g. " title")
+     * @throws IOException a SMILES could not be generated (nothing is
+     *                     written) or a low-level I/O error
+     */
+    public void write(Graph g, CharSequence suffix) throws IOException {
+        putSmiles(g);
+        put(suffix, 0, suffix.length());
+        put((byte) '\n');
+    }
+
+    /**
+     * Write the SMILES of a chemical graph followed by the title of the
+     * current record of a reader. The title and its delimiter are copied as
+     * they appeared in the input, this must be done before the reader reads
+     * the next record.
+     *
+     * @param g      chemical graph
+     * @param reader SMILES reader
+     * @throws IOException a SMILES could not be generated (nothing is
+     *                     written) or a low-level I/O error
+     */
+    public void write(Graph g, SmilesReader reader) throws IOException {
+        putSmiles(g);
+        reader.copyTitle(this);
+        put((byte) '\n');
+    }
+
+    /**
+     * Write an already generated SMILES followed by a suffix, the suffix
+     * is written as is and should include any delimiter.
+     *
+     * @param smi    SMILES string
+     * @param suffix the suffix (e.g. " title")
+     * @throws IOException low-level I/O error
+     */
+    public void write(CharSequence smi, CharSequence suffix) throws IOException {
+        put(smi, 0, smi.length());
+        put(suffix, 0, suffix.length());
+        put((byte) '\n');
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override public void write(int b) throws IOException {
+        put((byte) b);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len >= buf.length) {
+            // larger than the buffer, no need to copy
+            drain();
+            if (channel != null) {
+                ByteBuffer src = ByteBuffer.wrap(b, off, len);
+                while (src.hasRemaining())
+                    channel.write(src);
+            } else {
+                out.write(b, off, len);
+            }
+            return;
+        }
+        if (len > buf.length - pos)
+            drain();
+        System.arraycopy(b, off, buf, pos, len);
+        pos += len;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override public void flush() throws IOException {
+        drain();
+        if (out != null)
+            out.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            if (channel != null)
+                channel.close();
+            else
+                out.close();
+        }
+    }
+
+    /**
+     * Generate the SMILES of a chemical graph and copy it to the buffer, any
+     * non-ASCII characters (e.g. in an atom label) are encoded as UTF-8.
+     *
+     * @param g chemical graph
+     */
+    private void putSmiles(Graph g) throws IOException {
+        final StringBuilder sb  = writer.generate(g);
+        final int           len = sb.length();
+        int i = 0;
+        while (i < len) {
+            if (pos == buf.length)
+                drain();
+            final int end = Math.min(len, i + buf.length - pos);
+            for (; i < end; i++) {
+                final char c = sb.charAt(i);
+                if (c >= 0x80) {
+                    put(sb, i, len);
+                    return;
+                }
+                buf[pos++] = (byte) c;
+            }
+        }
+    }
+
+    /**
+     * Copy characters to the buffer, ASCII characters are copied directly
+     * and any others encoded as UTF-8.
+     *
+     * @param cs   characters
+     * @param from start index
+     * @param to   end index
+     */
+    void put(CharSequence cs, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            final char c = cs.charAt(i);
+            if (c >= 0x80) {
+                final byte[] bs = cs.subSequence(i, to)
+                                    .toString()
+                                    .getBytes(StandardCharsets.UTF_8);
+                write(bs, 0, bs.length);
+                return;
+            }
+            if (pos == buf.length)
+                drain();
+            buf[pos++] = (byte) c;
+        }
+    }
+
+    /**
+     * Copy characters to the buffer, ASCII characters are copied directly
+     * and any others encoded as UTF-8.
+     *
+     * @param cs   characters
+     * @param from start index
+     * @param to   end index
+     */
+    void put(char[] cs, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            final char c = cs[i];
+            if (c >= 0x80) {
+                final byte[] bs = new String(cs, i, to - i).getBytes(StandardCharsets.UTF_8);
+                write(bs, 0, bs.length);
+                return;
+            }
+            if (pos == buf.length)
+                drain();
+            buf[pos++] = (byte) c;
+        }
+    }
+
+    private void put(byte b) throws IOException {
+        if (pos == buf.length)
+            drain();
+        buf[pos++] = b;
+    }
+
+    /** Write the buffered bytes to the stream or channel. */
+    private void drain() throws IOException {
+        if (pos == 0)
+            return;
+        if (channel != null) {
+            ByteBuffer src = ByteBuffer.wrap(buf, 0, pos);
+            while (src.hasRemaining())
+                channel.write(src);
+        } else {
+            out.write(buf, 0, pos);
+        }
+        pos = 0;
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2013, European Bioinformatics Institute (EMBL-EBI)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package uk.ac.ebi.beam;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A reusable SMILES parser. The parser keeps its internal buffers (branch
+ * stack, ring bond table, stereo bookkeeping) between invocations and resets
+ * them for each molecule, this avoids re-allocating them when parsing many
+ * SMILES in bulk. A parser is not thread-safe, one instance should be used
+ * per thread.
+ *
+ * <blockquote><pre>
+ * SmilesParser parser = new SmilesParser();
+ * for (String smi : smis) {
+ *     Graph g = parser.parse(smi);
+ * }
+ * </pre></blockquote>
+ *
+ * @author John May
+ * @see Graph#fromSmiles(String)
+ */
+public final class SmilesParser {
+
+    /**
+     * The kind of error found when validating a SMILES string.
+     *
+     * @see #validate(String)
+     */
+    public enum ErrorCode {
+        /** The SMILES is valid. */
+        None,
+        /** A character which is not part of the SMILES grammar. */
+        UnexpectedCharacter,
+        /** A ring bond was opened but never closed. */
+        UnclosedRing,
+        /** A branch was opened but never closed. */
+        UnclosedBranch,
+        /** A branch was opened or closed at an invalid position. */
+        InvalidBranch,
+        /** Multiple bond symbols or a bond before a disconnection ('.'). */
+        InvalidBond,
+        /** An invalid ring bond number, loop, multi-edge or mismatched bond. */
+        InvalidRingBond,
+        /** A bracket atom could not be read. */
+        InvalidBracketAtom,
+        /** An invalid stereo specification. */
+        InvalidStereo,
+        /** Non-standard input only rejected by the strict parser. */
+        NonStandard
+    }
+
+    /**
+     * How stereo specifications are handled by the parser.
+     *
+     * @see #setStereo(Stereo)
+     */
+    public enum Stereo {
+        /** Stereo topologies are created while parsing (default). */
+        Eager,
+        /**
+         * Stereo topologies are created when first accessed with {@link
+         * Graph#topologyOf(int)} or when the graph is modified. The strict
+         * parser always creates topologies eagerly. Invalid configurations
+         * found when the topologies are created are reported to the listener
+         * or, if there is no listener, stored with the warnings of the parse
+         * (see {@link #warnings()}).
+         */
+        Lazy,
+        /**
+         * Stereo is ignored, tetrahedral (etc) configurations are discarded
+         * and directional bonds are stored as non-directional single bonds.
+         */
+        Ignore
+    }
+
+    private final Parser parser;
+
+    /** Offset of the last validation error. */
+    private int errorOffset = -1;
+
+    /**
+     * Create a new (loose) SMILES parser.
+     */
+    public SmilesParser() {
+        this(false);
+    }
+
+    /**
+     * Create a new SMILES parser. The strict parser will throw more
+     * exceptions for unusual input.
+     *
+     * @param strict strict parsing
+     */
+    public SmilesParser(boolean strict) {
+        this.parser = new Parser(strict);
+    }
+
+    /**
+     * Create a new SMILES parser which passes warnings to the provided
+     * listener, use {@link ParseWarning#DISCARD} to ignore warnings
+     * entirely. Warnings are not available from {@link #warnings()}.
+     *
+     * @param strict   strict parsing
+     * @param listener receives warnings
+     */
+    public SmilesParser(boolean strict, ParseWarning.Listener listener) {
+        if (listener == null)
+            throw new NullPointerException("no warning listener provided");
+        this.parser = new Parser(strict, listener);
+    }
+
+    /**
+     * Set how stereo specifications are handled, stereo is not needed for
+     * many tasks (e.g. formula, fingerprints, 2D deduplication) and ignoring
+     * it (or creating it lazily) makes parsing faster. The stereo syntax is
+     * still checked and {@link #validate(String)} always checks the stereo in
+     * full.
+     *
+     * <blockquote><pre>
+     * SmilesParser parser = new SmilesParser();
+     * parser.setStereo(SmilesParser.Stereo.Ignore);
+     * parser.parse("C/C=C/[C@H](N)O").toSmiles(); // CC=CC(N)O
+     * </pre></blockquote>
+     *
+     * @param stereo the stereo mode
+     */
+    public void setStereo(Stereo stereo) {
+        if (stereo == null)
+            throw new NullPointerException("no stereo mode provided");
+        parser.stereo = stereo;
+    }
+
+    /**
+     * Parse a SMILES string.
+     *
+     * @param smi string containing SMILES line notation.
+     * @return graph instance from the SMILES
+     * @throws InvalidSmilesException thrown if there was a syntax error while
+     *                                parsing the SMILES.
+     */
+    public Graph parse(String smi) throws InvalidSmilesException {
+        if (smi == null)
+            throw new NullPointerException("no SMILES provided");
+        return parser.parse(CharBuffer.fromString(smi));
+    }
+
+    /**
+     * Parse a SMILES encoded as ASCII bytes, the bytes are read in place.
+     *
+     * @param bs  the bytes
+     * @param off offset of the SMILES in the bytes
+     * @param len number of bytes to read
+     * @return graph instance from the SMILES
+     * @throws InvalidSmilesException thrown if there was a syntax error while
+     *                                parsing the SMILES.
+     * @see Graph#fromSmiles(byte[], int, int)
+     */
+    public Graph parse(byte[] bs, int off, int len) throws InvalidSmilesException {
+        if (bs == null)
+            throw new NullPointerException("no SMILES provided");
+        return parser.parse(CharBuffer.fromBytes(bs, off, len));
+    }
+
+    /**
+     * Parse a SMILES encoded as ASCII bytes in the remaining region of a byte
+     * buffer, the position of the buffer is not modified.
+     *
+     * @param bb the byte buffer
+     * @return graph instance from the SMILES
+     * @throws InvalidSmilesException thrown if there was a syntax error while
+     *                                parsing the SMILES.
+     * @see Graph#fromSmiles(ByteBuffer)
+     */
+    public Graph parse(ByteBuffer bb) throws InvalidSmilesException {
+        if (bb == null)
+            throw new NullPointerException("no SMILES provided");
+        return parser.parse(CharBuffer.fromBytes(bb));
+    }
+
+    /**
+     * Check whether a SMILES string is valid without throwing an exception.
+     * The strict/lenient rules of this parser apply, stereo is always checked
+     * as with {@link Stereo#Eager} whatever the stereo mode. When the SMILES
+     * is invalid the character index of the error is available from {@link
+     * #errorOffset()}.
+     *
+     * <blockquote><pre>
+     * SmilesParser parser = new SmilesParser();
+     * if (parser.validate(smi) != SmilesParser.ErrorCode.None)
+     *     reject(smi, parser.errorOffset());
+     * </pre></blockquote>
+     *
+     * @param smi string containing SMILES line notation.
+     * @return the error code, {@link ErrorCode#None} if the SMILES is valid
+     */
+    public ErrorCode validate(String smi) {
+        if (smi == null)
+            throw new NullPointerException("no SMILES provided");
+        return validate(CharBuffer.fromString(smi));
+    }
+
+    /**
+     * Check whether a SMILES encoded as ASCII bytes is valid without throwing
+     * an exception.
+     *
+     * @param bs  the bytes
+     * @param off offset of the SMILES in the bytes
+     * @param len number of bytes to read
+     * @return the error code, {@link ErrorCode#None} if the SMILES is valid
+     * @see #validate(String)
+     */
+    public ErrorCode validate(byte[] bs, int off, int len) {
+        if (bs == null)
+            throw new NullPointerException("no SMILES provided");
+        return validate(CharBuffer.fromBytes(bs, off, len));
+    }
+
+    private ErrorCode validate(CharBuffer buffer) {
+        ErrorCode code = parser.validate(buffer);
+        errorOffset = parser.errorOffset();
+        return code;
+    }
+
+    /**
+     * The character index of the error found by the last call to {@link
+     * #validate(String)}.
+     *
+     * @return character index, -1 if the SMILES was valid or the location is
+     *         not known
+     */
+    public int errorOffset() {
+        return errorOffset;
+    }
+
+    /**
+     * Access the warnings from the last parse. The list is only valid until
+     * the next SMILES is parsed and is always empty if a listener was
+     * provided. With {@link Stereo#Lazy} the topologies of the last graph
+     * are created (if they were not already) so the warnings are the same as
+     * with {@link Stereo#Eager}.
+     *
+     * @return the warnings
+     */
+    public List<ParseWarning> warnings() {
+        return parser.warnings();
+    }
+}
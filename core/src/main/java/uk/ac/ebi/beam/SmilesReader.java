@@ -0,0 +1,551 @@
+/*
+ * Copyright (c) 2013, European Bioinformatics Institute (EMBL-EBI)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+
+package uk.ac.ebi.beam;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Read SMILES records (one per line) from a stream. The input is pulled in
+ * large blocks and each record is parsed in place, avoiding the intermediate
+ * line {@link String}s of a {@code readLine()} loop. The title of a record
+ * (the suffix after a space or tab) is not decoded unless requested with
+ * {@link #title()}.
+ *
+ * <blockquote><pre>
+ * try (SmilesReader rdr = new SmilesReader(path, SmilesReader.ErrorPolicy.Skip)) {
+ *     Graph g;
+ *     while ((g = rdr.read()) != null) {
+ *         String title = rdr.title();
+ *     }
+ * }
+ * </pre></blockquote>
+ *
+ * The reader may also be used as an {@link Iterator}, I/O errors (and
+ * invalid SMILES with the {@link ErrorPolicy#Throw} policy) are then
+ * rethrown as an {@link UncheckedIOException}. A reader is not thread-safe.
+ *
+ * @author John May
+ * @see SmilesParser
+ */
+public final class SmilesReader implements Iterator<Graph>, Closeable {
+
+    /** What to do when a record is not a valid SMILES. */
+    public enum ErrorPolicy {
+        /** Throw an {@link InvalidSmilesException}. */
+        Throw,
+        /** Skip the record and continue with the next one. */
+        Skip
+    }
+
+    /** Default number of characters read at once. */
+    private static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    private final Block       block;
+    private final Parser      parser = new Parser(false);
+    private final ErrorPolicy policy;
+
+    /** Location of the current record's title in the block. */
+    private int titleBeg = -1, titleEnd = -1;
+
+    /** The decoded title of the current record. */
+    private String title;
+
+    /** Line number of the current record. */
+    private long lineNumber = 0;
+
+    /** Number of records skipped. */
+    private long skipped = 0;
+
+    /** Look ahead for the iterator. */
+    private Graph   next;
+    private boolean done;
+
+    /**
+     * Create a reader of ASCII/UTF-8 encoded SMILES, invalid records throw
+     * an exception.
+     *
+     * @param in input stream
+     */
+    public SmilesReader(InputStream in) {
+        this(in, ErrorPolicy.Throw);
+    }
+
+    /**
+     * Create a reader of ASCII/UTF-8 encoded SMILES.
+     *
+     * @param in     input stream
+     * @param policy what to do on invalid records
+     */
+    public SmilesReader(InputStream in, ErrorPolicy policy) {
+        this(new ByteBlock(in, DEFAULT_BLOCK_SIZE), policy);
+    }
+
+    /**
+     * Create a reader of SMILES from a character stream, invalid records
+     * throw an exception.
+     *
+     * @param in character stream
+     */
+    public SmilesReader(Reader in) {
+        this(in, ErrorPolicy.Throw);
+    }
+
+    /**
+     * Create a reader of SMILES from a character stream.
+     *
+     * @param in     character stream
+     * @param policy what to do on invalid records
+     */
+    public SmilesReader(Reader in, ErrorPolicy policy) {
+        this(new CharBlock(in, DEFAULT_BLOCK_SIZE), policy);
+    }
+
+    /**
+     * Create a reader of SMILES from a file, invalid records throw an
+     * exception.
+     *
+     * @param path file location
+     * @throws IOException the file could not be opened
+     */
+    public SmilesReader(Path path) throws IOException {
+        this(path, ErrorPolicy.Throw);
+    }
+
+    /**
+     * Create a reader of SMILES from a file.
+     *
+     * @param path   file location
+     * @param policy what to do on invalid records
+     * @throws IOException the file could not be opened
+     */
+    public SmilesReader(Path path, ErrorPolicy policy) throws IOException {
+        this(Files.newInputStream(path), policy);
+    }
+
+    SmilesReader(Block block, ErrorPolicy policy) {
+        if (policy == null)
+            throw new NullPointerException("no error policy provided");
+        this.block = block;
+        this.policy = policy;
+        this.parser.titles = false;
+    }
+
+    /**
+     * Set how stereo specifications are handled.
+     *
+     * @param stereo the stereo mode
+     * @see SmilesParser#setStereo(SmilesParser.Stereo)
+     */
+    public void setStereo(SmilesParser.Stereo stereo) {
+        if (stereo == null)
+            throw new NullPointerException("no stereo mode provided");
+        parser.stereo = stereo;
+    }
+
+    /**
+     * Read the next record.
+     *
+     * @return the graph of the next record, null if there are no more
+     * @throws IOException            low-level I/O error
+     * @throws InvalidSmilesException the record was not a valid SMILES and
+     *                                the policy is {@link ErrorPolicy#Throw}
+     */
+    public Graph read() throws IOException {
+        if (next != null) {
+            Graph g = next;
+            next = null;
+            return g;
+        }
+        while (block.nextRecord()) {
+            lineNumber++;
+            title = null;
+            titleBeg = titleEnd = -1;
+            CharBuffer buffer = block.record();
+            buffer.trace = policy == ErrorPolicy.Throw;
+            try {
+                Graph g = parser.parse(buffer);
+                if (parser.titleBeg >= 0) {
+                    titleBeg = parser.titleBeg;
+                    titleEnd = parser.titleEnd;
+                }
+                return g;
+            } catch (InvalidSmilesException e) {
+                if (policy == ErrorPolicy.Throw)
+                    throw e;
+                skipped++;
+            }
+        }
+        done = true;
+        return null;
+    }
+
+    /**
+     * The title of the record last read, the title is decoded on the first
+     * call. The title is only available until the next record is read
+     * (including look ahead by {@link #hasNext()}).
+     *
+     * @return the title, null if the record had no title
+     */
+    public String title() {
+        if (title == null && titleBeg >= 0)
+            title = block.substr(titleBeg, titleEnd);
+        return title;
+    }
+
+    /**
+     * Copy the title of the record last read, including the delimiter before
+     * it, to an output stream without decoding it.
+     *
+     * @param out SMILES output stream
+     * @throws IOException low-level I/O error
+     */
+    void copyTitle(SmilesOutputStream out) throws IOException {
+        if (titleBeg > 0)
+            block.copyTo(out, titleBeg - 1, titleEnd);
+    }
+
+    /**
+     * The line number (starting at 1) of the record last read.
+     *
+     * @return line number
+     */
+    public long lineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * The number of invalid records which have been skipped.
+     *
+     * @return number of records skipped
+     */
+    public long skipped() {
+        return skipped;
+    }
+
+    /**
+     * Access the warnings from the record last read.
+     *
+     * @return the warnings
+     */
+    public List<ParseWarning> warnings() {
+        return parser.warnings();
+    }
+
+    /** @inheritDoc */
+    @Override public boolean hasNext() {
+        if (next == null && !done) {
+            try {
+                next = read();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return next != null;
+    }
+
+    /** @inheritDoc */
+    @Override public Graph next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        Graph g = next;
+        next = null;
+        return g;
+    }
+
+    /** @inheritDoc */
+    @Override public void remove() {
+        throw new UnsupportedOperationException("read-only");
+    }
+
+    /** @inheritDoc */
+    @Override public void close() throws IOException {
+        block.close();
+    }
+
+    /**
+     * A block of buffered input, characters between {@code beg} and {@code
+     * end} have been read from the underlying stream but not yet consumed.
+     * Records are located by scanning the block for a newline, a record is
+     * only ever moved (by compacting or growing the block) when the next
+     * record is located.
+     */
+    static abstract class Block implements Closeable {
+
+        /** Unconsumed characters. */
+        int beg, end;
+
+        /** The current record. */
+        int recBeg, recEnd;
+
+        /** Buffer over the current record, created on first use. */
+        private CharBuffer record;
+
+        /**
+         * Locate the next record.
+         *
+         * @return whether there was another record
+         * @throws IOException low-level I/O error
+         */
+        final boolean nextRecord() throws IOException {
+            int from = beg;
+            while (true) {
+                int i = indexOfNewline(from, end);
+                if (i >= 0) {
+                    setRecord(beg, i);
+                    beg = i + 1;
+                    return true;
+                }
+                int scanned = end - beg;
+                if (!fill()) {
+                    if (beg == end)
+                        return false;
+                    setRecord(beg, end); // last line without a newline
+                    beg = end;
+                    return true;
+                }
+                from = beg + scanned;
+            }
+        }
+
+        private void setRecord(int beg, int end) {
+            if (end > beg && charAt(end - 1) == '\r')
+                end--;
+            this.recBeg = beg;
+            this.recEnd = end;
+            this.record = null;
+        }
+
+        /**
+         * Compact the block (moving the unconsumed characters to the start)
+         * growing the block if it is full and then read more characters.
+         *
+         * @return whether any characters were read
+         * @throws IOException low-level I/O error
+         */
+        private boolean fill() throws IOException {
+            if (beg > 0) {
+                move(beg, end - beg);
+                end -= beg;
+                beg = 0;
+            }
+            if (end == capacity())
+                grow(2 * capacity());
+            int n;
+            while ((n = read(end, capacity() - end)) == 0)
+                ;
+            if (n < 0)
+                return false;
+            end += n;
+            return true;
+        }
+
+        /**
+         * A buffer over the current record, relative indices in the buffer
+         * can be translated to the block by adding {@link #recBeg}.
+         *
+         * @return buffer of the current record
+         */
+        final CharBuffer record() {
+            if (record == null)
+                record = newRecord();
+            record.position = 0;
+            return record;
+        }
+
+        /**
+         * Create a buffer over the current record.
+         *
+         * @return buffer of the current record
+         */
+        abstract CharBuffer newRecord();
+
+        /**
+         * Decode the characters between the specified indices of the current
+         * record.
+         *
+         * @param from start index (relative to the record)
+         * @param to   end index (relative to the record)
+         * @return the string
+         */
+        final String substr(int from, int to) {
+            return record().substr(from, to);
+        }
+
+        /**
+         * Copy the characters between the specified indices of the current
+         * record to an output stream.
+         *
+         * @param out  SMILES output stream
+         * @param from start index (relative to the record)
+         * @param to   end index (relative to the record)
+         * @throws IOException low-level I/O error
+         */
+        abstract void copyTo(SmilesOutputStream out, int from, int to) throws IOException;
+
+        abstract char charAt(int i);
+
+        abstract int indexOfNewline(int from, int to);
+
+        abstract int capacity();
+
+        abstract void grow(int capacity);
+
+        abstract void move(int from, int len);
+
+        abstract int read(int off, int len) throws IOException;
+    }
+
+    /** Block of bytes from an input stream. */
+    static final class ByteBlock extends Block {
+
+        private final InputStream in;
+        private       byte[]      bs;
+
+        ByteBlock(InputStream in, int size) {
+            if (in == null)
+                throw new NullPointerException("no input stream provided");
+            this.in = in;
+            this.bs = new byte[size];
+        }
+
+        @Override CharBuffer newRecord() {
+            return CharBuffer.fromBytes(bs, recBeg, recEnd - recBeg);
+        }
+
+        @Override void copyTo(SmilesOutputStream out, int from, int to) throws IOException {
+            // indices are of the decoded characters, these are only the
+            // same as the byte indices if the record was ASCII
+            final CharBuffer record = record();
+            if (!record.utf8) {
+                out.write(bs, recBeg + from, to - from);
+            } else {
+                final String str = record.substr(from, to);
+                out.put(str, 0, str.length());
+            }
+        }
+
+        @Override char charAt(int i) {
+            return (char) (bs[i] & 0xff);
+        }
+
+        @Override int indexOfNewline(int from, int to) {
+            final byte[] bs = this.bs;
+            for (int i = from; i < to; i++)
+                if (bs[i] == '\n')
+                    return i;
+            return -1;
+        }
+
+        @Override int capacity() {
+            return bs.length;
+        }
+
+        @Override void grow(int capacity) {
+            bs = Arrays.copyOf(bs, capacity);
+        }
+
+        @Override void move(int from, int len) {
+            System.arraycopy(bs, from, bs, 0, len);
+        }
+
+        @Override int read(int off, int len) throws IOException {
+            return in.read(bs, off, len);
+        }
+
+        @Override public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /** Block of characters from a reader. */
+    static final class CharBlock extends Block {
+
+        private final Reader in;
+        private       char[] cs;
+
+        CharBlock(Reader in, int size) {
+            if (in == null)
+                throw new NullPointerException("no reader provided");
+            this.in = in;
+            this.cs = new char[size];
+        }
+
+        @Override CharBuffer newRecord() {
+            return CharBuffer.fromChars(cs, recBeg, recEnd - recBeg);
+        }
+
+        @Override void copyTo(SmilesOutputStream out, int from, int to) throws IOException {
+            out.put(cs, recBeg + from, recBeg + to);
+        }
+
+        @Override char charAt(int i) {
+            return cs[i];
+        }
+
+        @Override int indexOfNewline(int from, int to) {
+            final char[] cs = this.cs;
+            for (int i = from; i < to; i++)
+                if (cs[i] == '\n')
+                    return i;
+            return -1;
+        }
+
+        @Override int capacity() {
+            return cs.length;
+        }
+
+        @Override void grow(int capacity) {
+            cs = Arrays.copyOf(cs, capacity);
+        }
+
+        @Override void move(int from, int len) {
+            System.arraycopy(cs, from, cs, 0, len);
+        }
+
+        @Override int read(int off, int len) throws IOException {
+            return in.read(cs, off, len);
+        }
+
+        @Override public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2013, European Bioinformatics Institute (EMBL-EBI)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+
+package uk.ac.ebi.beam;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A reusable SMILES writer. The writer keeps its internal buffers (ring
+ * closures, ring numbers, output characters) between invocations, this
+ * avoids re-allocating them and the intermediate {@link String} when writing
+ * many SMILES in bulk. The SMILES is the same as {@link
+ * Graph#toSmiles()}. A writer is not thread-safe, one instance should be
+ * used per thread.
+ *
+ * <blockquote><pre>
+ * SmilesWriter writer = new SmilesWriter();
+ * StringBuilder sb = new StringBuilder();
+ * for (Graph g : graphs) {
+ *     writer.write(g, sb).append('\n');
+ * }
+ * </pre></blockquote>
+ *
+ * SMILES are ASCII and can be written directly to a byte array or buffer,
+ * any non-ASCII character of an atom label is written as '?'.
+ *
+ * @author John May
+ * @see Graph#toSmiles()
+ */
+public final class SmilesWriter {
+
+    private final Generator     generator = new Generator();
+    private final StringBuilder buffer    = new StringBuilder(128);
+
+    private Generator.RingNumbering rnums = new Generator.IterativeRingNumbering(1);
+
+    /** Output order of the atoms. */
+    private int[] visitedAt = new int[0];
+
+    /**
+     * Write the SMILES of a chemical graph to a string.
+     *
+     * @param g chemical graph
+     * @return the SMILES string
+     * @throws IOException a SMILES string could not be generated
+     */
+    public String toSmiles(Graph g) throws IOException {
+        return generate(g).toString();
+    }
+
+    /**
+     * Append the SMILES of a chemical graph to a string builder.
+     *
+     * @param g  chemical graph
+     * @param sb the string builder
+     * @return the string builder
+     * @throws IOException a SMILES string could not be generated, nothing
+     *                     is appended
+     */
+    public StringBuilder write(Graph g, StringBuilder sb) throws IOException {
+        return sb.append(generate(g));
+    }
+
+    /**
+     * Append the SMILES of a chemical graph to an appendable (e.g. a {@link
+     * java.io.Writer}).
+     *
+     * @param g   chemical graph
+     * @param out the appendable
+     * @param <T> type of the appendable
+     * @return the appendable
+     * @throws IOException a SMILES string could not be generated or
+     *                     appended
+     */
+    public <T extends Appendable> T write(Graph g, T out) throws IOException {
+        out.append(generate(g));
+        return out;
+    }
+
+    /**
+     * Write the SMILES of a chemical graph as ASCII bytes to an array, any
+     * non-ASCII characters are encoded as UTF-8.
+     *
+     * @param g   chemical graph
+     * @param dst the array
+     * @param off offset in the array to start writing at
+     * @return number of bytes written
+     * @throws IOException             a SMILES string could not be generated
+     * @throws BufferOverflowException the SMILES does not fit in the array,
+     *                                 nothing is written
+     */
+    public int write(Graph g, byte[] dst, int off) throws IOException {
+        final StringBuilder sb = generate(g);
+        final int len = sb.length();
+        if (off < 0 || off > dst.length)
+            throw new IndexOutOfBoundsException("offset " + off + " of array length " + dst.length);
+        if (!isAscii(sb)) {
+            final byte[] bs = sb.toString().getBytes(StandardCharsets.UTF_8);
+            if (bs.length > dst.length - off)
+                throw new BufferOverflowException();
+            System.arraycopy(bs, 0, dst, off, bs.length);
+            return bs.length;
+        }
+        if (len > dst.length - off)
+            throw new BufferOverflowException();
+        for (int i = 0; i < len; i++)
+            dst[off + i] = (byte) sb.charAt(i);
+        return len;
+    }
+
+    /**
+     * Write the SMILES of a chemical graph as ASCII bytes to a buffer, the
+     * position of the buffer is advanced by the number of bytes written. Any
+     * non-ASCII characters are encoded as UTF-8.
+     *
+     * @param g   chemical graph
+     * @param dst the buffer
+     * @return number of bytes written
+     * @throws IOException             a SMILES string could not be generated
+     * @throws BufferOverflowException the SMILES does not fit in the
+     *                                 remaining space, nothing is written
+     */
+    public int write(Graph g, ByteBuffer dst) throws IOException {
+        final StringBuilder sb = generate(g);
+        final int len = sb.length();
+        if (!isAscii(sb)) {
+            final byte[] bs = sb.toString().getBytes(StandardCharsets.UTF_8);
+            if (bs.length > dst.remaining())
+                throw new BufferOverflowException();
+            dst.put(bs);
+            return bs.length;
+        }
+        if (len > dst.remaining())
+            throw new BufferOverflowException();
+        for (int i = 0; i < len; i++)
+            dst.put((byte) sb.charAt(i));
+        return len;
+    }
+
+    /**
+     * Generate the SMILES into the internal buffer, the buffer is reused by
+     * the next call.
+     *
+     * @param g chemical graph
+     * @return the internal buffer
+     * @throws InvalidSmilesException a SMILES string could not be generated
+     */
+    StringBuilder generate(Graph g) throws InvalidSmilesException {
+        if (visitedAt.length < g.order())
+            visitedAt = new int[Math.max(g.order(), 2 * visitedAt.length)];
+        buffer.setLength(0);
+        try {
+            generator.generate(g, visitedAt, rnums, buffer);
+        } catch (InvalidSmilesException e) {
+            // ring numbers may have been left in use
+            rnums = new Generator.IterativeRingNumbering(1);
+            buffer.setLength(0);
+            throw e;
+        }
+        return buffer;
+    }
+
+    private static boolean isAscii(CharSequence cs) {
+        for (int i = 0; i < cs.length(); i++) {
+            if (cs.charAt(i) >= 0x80)
+                return false;
+        }
+        return true;
+    }
+}
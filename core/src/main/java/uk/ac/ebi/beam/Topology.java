@@ -410,6 +410,26 @@ abstract class Topology {
         return Configuration.UNKNOWN;
     }
 
+    /**
+     * The number of vertices surrounding a topology of the given
+     * configuration.
+     *
+     * @param c configuration
+     * @return number of vertices
+     */
+    static int carriers(Configuration c) {
+        switch (c.type()) {
+            case DoubleBond:
+                return 3;
+            case TrigonalBipyramidal:
+                return 5;
+            case Octahedral:
+                return 6;
+            default:
+                return 4;
+        }
+    }
+
     static Topology create(int u, int[] vs, List<Edge> es, Configuration c) {
         if (c.type() == Implicit)
             throw new IllegalArgumentException("configuration must be explicit, @TH1/@TH2 instead of @/@@");
@@ -2,7 +2,11 @@ package uk.ac.ebi.beam;
 
 import org.junit.Test;
 
+import java.io.IOException;
+
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 /** @author John May */
@@ -24,4 +28,38 @@ public class AtomTest {
             assertThat(AtomImpl.AromaticSubset.ofElement(a.element()), is(a));
         }
     }
+
+    @Test public void sharedBracketAtom() {
+        Atom a = AtomImpl.BracketAtom.of(-1, Element.Nitrogen, 1, 0, 0, true);
+        Atom b = AtomImpl.BracketAtom.of(-1, Element.Nitrogen, 1, 0, 0, true);
+        assertThat(a, is(sameInstance(b)));
+        assertThat(a, is((Atom) new AtomImpl.BracketAtom(-1, Element.Nitrogen, 1, 0, 0, true)));
+    }
+
+    @Test public void sharedBracketAtomDistinct() {
+        Atom a = AtomImpl.BracketAtom.of(-1, Element.Nitrogen, 1, 0, 0, true);
+        assertThat(AtomImpl.BracketAtom.of(-1, Element.Nitrogen, 1, 0, 0, false), is(not(a)));
+        assertThat(AtomImpl.BracketAtom.of(15, Element.Nitrogen, 1, 0, 0, true), is(not(a)));
+        assertThat(AtomImpl.BracketAtom.of(-1, Element.Nitrogen, 2, 0, 0, true), is(not(a)));
+        assertThat(AtomImpl.BracketAtom.of(-1, Element.Nitrogen, 1, 1, 0, true), is(not(a)));
+        assertThat(AtomImpl.BracketAtom.of(-1, Element.Nitrogen, 1, 0, 1, true), is(not(a)));
+        assertThat(AtomImpl.BracketAtom.of(-1, Element.Phosphorus, 1, 0, 0, true), is(not(a)));
+    }
+
+    @Test public void sharedAromaticAliphatic() {
+        Atom a = AtomImpl.BracketAtom.of(-1, Element.Nitrogen, 1, 0, 0, false);
+        assertThat(a.toAromatic(), is(sameInstance(AtomImpl.BracketAtom.of(-1, Element.Nitrogen, 1, 0, 0, true))));
+        assertThat(a.toAromatic().toAliphatic(), is(sameInstance(a)));
+    }
+
+    @Test public void arbitraryLabelNotShared() {
+        Atom a = new AtomImpl.BracketAtom(-1, Element.Unknown, "R1", 0, 0, 0, true);
+        assertThat(a.toAliphatic().label(), is("R1"));
+    }
+
+    @Test public void parsedBracketAtomsShared() throws IOException {
+        Graph g = Graph.fromSmiles("c1cc[nH]c1.c1cc[nH]c1.[O-]C=O.[O-]C=O");
+        assertThat(g.atom(3), is(sameInstance(g.atom(8))));
+        assertThat(g.atom(10), is(sameInstance(g.atom(13))));
+    }
 }
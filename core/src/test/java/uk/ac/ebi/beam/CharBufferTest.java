@@ -31,6 +31,9 @@ package uk.ac.ebi.beam;
 
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
@@ -231,4 +234,60 @@ public class CharBufferTest {
         assertThat(buffer.getNumber(), is(-1));
         assertThat(buffer.next(), is('H'));
     }
+
+    @Test public void byteSlice() {
+        byte[] bs = "xxCCOxx".getBytes(StandardCharsets.US_ASCII);
+        CharBuffer buffer = CharBuffer.fromBytes(bs, 2, 3);
+        assertThat(buffer.length(), is(3));
+        assertThat(buffer.get(), is('C'));
+        assertThat(buffer.get(), is('C'));
+        assertThat(buffer.get(), is('O'));
+        assertFalse(buffer.hasRemaining());
+        assertThat(buffer.toString(), is("CCO"));
+    }
+
+    @Test public void byteSliceSubstr() {
+        byte[] bs = "CCO ethanol".getBytes(StandardCharsets.US_ASCII);
+        assertThat(CharBuffer.fromBytes(bs, 0, bs.length).substr(4, 11), is("ethanol"));
+    }
+
+    /** Characters and strings of a non-ASCII slice use the same decoding. */
+    @Test public void byteSliceUtf8() {
+        byte[] bs = "xxCCO éthanolxx".getBytes(StandardCharsets.UTF_8);
+        CharBuffer buffer = CharBuffer.fromBytes(bs, 2, bs.length - 4);
+        assertThat(buffer.length(), is(11));
+        assertThat(buffer.charAt(4), is('é'));
+        assertThat(buffer.substr(4, 11), is("éthanol"));
+        assertTrue(buffer.utf8);
+        assertFalse(CharBuffer.fromBytes(bs, 0, 4).utf8);
+    }
+
+    @Test public void directByteBufferUtf8() {
+        byte[] bs = "CCO éthanol".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer bb = ByteBuffer.allocateDirect(bs.length);
+        bb.put(bs);
+        bb.flip();
+        CharBuffer buffer = CharBuffer.fromBytes(bb);
+        assertThat(buffer.charAt(4), is('é'));
+        assertThat(buffer.toString(), is("CCO éthanol"));
+        assertThat(bb.position(), is(0));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void byteSliceOutOfBounds() {
+        CharBuffer.fromBytes(new byte[4], 2, 3);
+    }
+
+    @Test public void directByteBuffer() {
+        byte[] bs = "[13CH4]".getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer bb = ByteBuffer.allocateDirect(bs.length);
+        bb.put(bs);
+        bb.flip();
+        bb.position(1);
+        CharBuffer buffer = CharBuffer.fromBytes(bb);
+        assertThat(buffer.getNumber(), is(13));
+        assertThat(buffer.get(), is('C'));
+        assertThat(buffer.toString(), is("13CH4]"));
+        assertThat(bb.position(), is(1));
+    }
 }
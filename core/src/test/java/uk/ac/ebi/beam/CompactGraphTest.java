@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2013, European Bioinformatics Institute (EMBL-EBI)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+
+package uk.ac.ebi.beam;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/** @author John May */
+public class CompactGraphTest {
+
+    private static final String[] SMIS = {
+            "",
+            "CCO ethanol",
+            "CC(C)C[C@H](NC(=O)[C@@H](Cc1ccccc1)NC(=O)c1cnccn1)B(O)O",
+            "C[C@]12CC[C@H]3[C@@H](CCC4=CC(=O)CC[C@@]34C)[C@@H]1CC[C@@H]2O",
+            "CCCCCCCC/C=C\\CCCCCCCC(=O)O",
+            "C/C=C/1.F/1",
+            "[2H]C([2H])([2H])Oc1ccc2[nH]cc(CC[NH3+])c2c1",
+            "[13CH3:12][Fe-4]",
+            "[O-][N+](=O)c1ccc(cc1)[C@@H]1NC(=O)[C@H](CC([O-])=O)N1",
+            "C1CC2CCC1CC2",
+            "CC=[C@]=CC",
+            "F[Pt@SP1](Cl)(Br)I",
+            "*c1ccccc1*"
+    };
+
+    @Test public void roundTrip() throws IOException {
+        for (String smi : SMIS) {
+            Graph g = Graph.fromSmiles(smi);
+            Graph h = CompactGraph.of(g).toGraph();
+            assertThat(smi, h.toSmiles(), is(g.toSmiles()));
+            assertThat(h.getTitle(), is(g.getTitle()));
+            assertThat(h.getFlags(), is(g.getFlags()));
+            assertThat(h.size(), is(g.size()));
+            for (int u = 0; u < g.order(); u++) {
+                assertThat(h.atom(u), is(g.atom(u)));
+                assertThat(h.topologyOf(u), is(g.topologyOf(u)));
+                assertThat(h.bondedValence(u), is(g.bondedValence(u)));
+                assertThat(h.edges(u), is(g.edges(u)));
+            }
+        }
+    }
+
+    @Test public void readApi() throws IOException {
+        for (String smi : SMIS) {
+            Graph g = Graph.fromSmiles(smi);
+            CompactGraph cg = CompactGraph.of(g);
+            assertThat(cg.order(), is(g.order()));
+            assertThat(cg.size(), is(g.size()));
+            assertThat(cg.toSmiles(), is(g.toSmiles()));
+            for (int u = 0; u < g.order(); u++) {
+                assertThat(cg.atom(u), is(g.atom(u)));
+                assertThat(cg.topologyOf(u), is(g.topologyOf(u)));
+                assertThat(cg.degree(u), is(g.degree(u)));
+                for (int j = 0; j < g.degree(u); j++) {
+                    assertThat(cg.edgeAt(u, j), is(g.edgeAt(u, j)));
+                    assertThat(cg.neighbor(u, j), is(g.edgeAt(u, j).other(u)));
+                    assertThat(cg.bond(u, j), is(g.edgeAt(u, j).bond(u)));
+                }
+            }
+        }
+    }
+
+    /** edges are not in order of the neighbours */
+    @Test public void edgeOrderKept() throws IOException {
+        Graph g = Graph.fromSmiles("C1CC2CCC1CC2");
+        Graph h = CompactGraph.of(g).toGraph();
+        assertThat(h.edges(5), is(g.edges(5)));
+        assertThat(CompactGraph.of(g).neighbor(5, 0), is(4));
+        assertThat(CompactGraph.of(g).neighbor(5, 1), is(0));
+    }
+
+    @Test public void arbitraryLabels() throws IOException {
+        Graph g = Graph.fromSmiles("[R1]CC[R2]");
+        CompactGraph cg = CompactGraph.of(g);
+        assertThat(cg.atom(0).label(), is("R1"));
+        assertThat(cg.toGraph().atom(3).label(), is("R2"));
+    }
+
+    @Test public void noTitle() throws IOException {
+        assertThat(CompactGraph.of(Graph.fromSmiles("CCO")).getTitle(), is(nullValue()));
+    }
+
+    @Test public void bytes() throws IOException {
+        CompactGraph cg = CompactGraph.of(Graph.fromSmiles("CCO"));
+        // header + 3 arrays (offsets/neighbours, bonds, atoms)
+        assertThat(cg.bytes(), is(48L + 48L + 24L + 40L));
+        assertTrue(CompactGraph.of(Graph.fromSmiles("CCCCCCCCCC")).bytes() > cg.bytes());
+    }
+}
@@ -149,4 +149,24 @@ public class ElementTest {
     public void readInvalidElement() {
         assertNull(Element.read(CharBuffer.fromString("J")));
     }
+
+    @Test
+    public void readInvalidTwoCharElement() {
+        CharBuffer buffer = CharBuffer.fromString("Xy]");
+        assertNull(Element.read(buffer));
+        assertThat(buffer.position(), is(2));
+    }
+
+    @Test
+    public void readNonAscii() {
+        assertNull(Element.read(CharBuffer.fromString("\u00e9")));
+        assertNull(Element.read(CharBuffer.fromString("\u00e9a")));
+    }
+
+    @Test
+    public void readOneCharStopsAtUpperCase() {
+        CharBuffer buffer = CharBuffer.fromString("CH4");
+        assertThat(Element.read(buffer), is(Element.Carbon));
+        assertThat(buffer.position(), is(1));
+    }
 }
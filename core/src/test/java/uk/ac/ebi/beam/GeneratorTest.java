@@ -5,6 +5,8 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -319,6 +321,53 @@ public class GeneratorTest {
                    CoreMatchers.is("[2H][H]"));
     }
 
+    /** The first neighbour of 'C2' is visited as a ring closure, not a branch. */
+    @Test public void branchClosedByRing() throws Exception {
+        Graph g = GraphBuilder.create(4)
+                              .add(AtomImpl.AliphaticSubset.Carbon)
+                              .add(AtomImpl.AliphaticSubset.Nitrogen)
+                              .add(AtomImpl.AliphaticSubset.Oxygen)
+                              .add(AtomImpl.AliphaticSubset.Sulfur)
+                              .add(0, 1)
+                              .add(0, 2)
+                              .add(1, 3)
+                              .add(3, 2)
+                              .build();
+        assertThat(Generator.generate(g), is("C1NSO1"));
+    }
+
+    @Test public void stereoOnRingClosures() throws Exception {
+        assertRoundTrip("[C@@H]12CCCC[C@H]1CCCC2");
+        assertRoundTrip("C[C@]12CC[C@H]3[C@@H](CCC4=CC(=O)CC[C@@]34C)[C@@H]1CC[C@@H]2O");
+        assertRoundTrip("OC[C@H]1O[C@@H](O)[C@H](O)[C@@H](O)[C@@H]1O.[Na+].N[C@@H](C)C(=O)O");
+    }
+
+    /** The traversal should not be limited by the size of the thread stack. */
+    @Test public void longChain() throws Exception {
+        StringBuilder sb = new StringBuilder(1000000);
+        for (int i = 0; i < 1000000; i++)
+            sb.append('C');
+        String smi = sb.toString();
+        assertThat(Generator.generate(Parser.parse(smi)), is(smi));
+    }
+
+    @Test public void longChainWithRingsAndStereo() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        sb.append("N");
+        for (int i = 0; i < 20000; i++) {
+            // ring numbers are assigned iteratively 1..99
+            int    rnum = 1 + (i % 99);
+            String ring = rnum < 10 ? Integer.toString(rnum) : "%" + rnum;
+            if (i % 2 == 0)
+                sb.append("[C@@H](O)C").append(ring).append("CC(/C=C/C)C").append(ring);
+            else
+                sb.append("[C@H](O)C").append(ring).append("CCC").append(ring);
+        }
+        sb.append("O");
+        String smi = sb.toString();
+        assertThat(Generator.generate(Parser.parse(smi)), is(smi));
+    }
+
     /**
      * Generate random permutations of the molecule.
      *
@@ -343,6 +392,30 @@ public class GeneratorTest {
         return sb.toString();
     }
 
+    /**
+     * A lazy stereo warning is reported while generating, a listener which
+     * generates another SMILES must not disturb the outer generation.
+     */
+    @Test public void generateFromWarningListener() throws Exception {
+        final String smi = "OCC(CCN)CC[C@AL1]1CCC(CO)C1";
+        final List<String> inner = new ArrayList<String>();
+        SmilesParser parser = new SmilesParser(false, new ParseWarning.Listener() {
+            @Override public void warn(ParseWarning warning) {
+                try {
+                    inner.add(Graph.fromSmiles("c1ccc2ccccc2c1CCN").toSmiles());
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        parser.setStereo(SmilesParser.Stereo.Lazy);
+        Graph g = parser.parse(smi);
+        String expected = Graph.fromSmiles(smi).toSmiles();
+        assertThat(g.toSmiles(), is(expected));
+        assertThat(inner.size(), is(1));
+        assertThat(inner.get(0), is("c1ccc2ccccc2c1CCN"));
+    }
+
     static int[] ident(int n) {
         int[] p = new int[n];
         for (int i = 0; i < n; i++)
@@ -474,4 +474,133 @@ public class GraphBuilderTest {
         assertThat(gb.build().toSmiles(), is("C/C=C=C=C\\C"));
     }
 
+    @Test
+    public void bulk() throws IOException {
+        Graph g = GraphBuilder.bulk()
+                              .atoms(3, new int[]{6, 6, 8}, new int[]{3, 2, 1})
+                              .bonds(2, new int[]{0, 1}, new int[]{1, 2}, new int[]{1, 1})
+                              .build();
+        assertThat(g.toSmiles(), is("CCO"));
+    }
+
+    @Test
+    public void bulkChargeIsotope() throws IOException {
+        Graph g = GraphBuilder.bulk()
+                              .atoms(4, new int[]{6, 6, 8, 8}, new int[]{3, 0, 0, 0})
+                              .charges(new int[]{0, 0, 0, -1})
+                              .isotopes(new int[]{13, 0, 0, 0})
+                              .bonds(3, new int[]{0, 1, 1}, new int[]{1, 2, 3}, new int[]{1, 2, 1})
+                              .build();
+        assertThat(g.toSmiles(), is("[13CH3]C(=O)[O-]"));
+    }
+
+    @Test
+    public void bulkAromatic() throws IOException {
+        int[] elements = new int[12], hCounts = new int[12];
+        int[] from = new int[13], to = new int[13], orders = new int[13];
+        boolean[] aromatic = new boolean[12];
+        for (int i = 0; i < 12; i++) {
+            elements[i] = 6;
+            hCounts[i] = i % 6 == 0 ? 0 : 1;
+            aromatic[i] = true;
+            from[i] = i;
+            to[i] = i % 6 == 5 ? i - 5 : i + 1;
+            orders[i] = GraphBuilder.BulkBuilder.AROMATIC;
+        }
+        from[12] = 0;
+        to[12] = 6;
+        orders[12] = 1;
+        Graph g = GraphBuilder.bulk()
+                              .atoms(12, elements, hCounts)
+                              .aromatic(aromatic)
+                              .bonds(13, from, to, orders)
+                              .build();
+        assertThat(g.toSmiles(), is("c1(ccccc1)-c2ccccc2"));
+        assertThat(g.getFlags(Graph.HAS_AROM), is(Graph.HAS_AROM));
+    }
+
+    /** Aromatic atoms given with Kekulé bond orders, all hydrogens implied. */
+    @Test
+    public void bulkAromaticKekule() throws IOException {
+        Graph g = benzene(new int[]{1, 1, 1, 1, 1, 1});
+        for (int u = 0; u < 6; u++) {
+            assertThat(g.atom(u).subset(), is(true));
+            assertThat(g.implHCount(u), is(1));
+        }
+        assertThat(Graph.fromSmiles(g.toSmiles()).toSmiles(), is(g.toSmiles()));
+    }
+
+    /** An aromatic atom with no hydrogens (and Kekulé bonds) must keep brackets. */
+    @Test
+    public void bulkAromaticKekuleNoHydrogen() throws IOException {
+        Graph g = benzene(new int[]{0, 1, 1, 1, 1, 1});
+        assertThat(g.atom(0).subset(), is(false));
+        assertThat(g.implHCount(0), is(0));
+        for (int u = 1; u < 6; u++)
+            assertThat(g.implHCount(u), is(1));
+        assertThat(Graph.fromSmiles(g.toSmiles()).implHCount(0), is(0));
+    }
+
+    @Test
+    public void bulkAromaticKekulePyrrole() throws IOException {
+        Graph g = GraphBuilder.bulk()
+                              .atoms(5, new int[]{7, 6, 6, 6, 6}, new int[]{1, 1, 1, 1, 1})
+                              .aromatic(new boolean[]{true, true, true, true, true})
+                              .bonds(5, new int[]{0, 1, 2, 3, 4}, new int[]{1, 2, 3, 4, 0},
+                                     new int[]{1, 2, 1, 2, 1})
+                              .build();
+        assertThat(g.atom(0).subset(), is(false));
+        for (int u = 0; u < 5; u++)
+            assertThat(g.implHCount(u), is(1));
+    }
+
+    private static Graph benzene(int[] hCounts) {
+        return GraphBuilder.bulk()
+                           .atoms(6, new int[]{6, 6, 6, 6, 6, 6}, hCounts)
+                           .aromatic(new boolean[]{true, true, true, true, true, true})
+                           .bonds(6, new int[]{0, 1, 2, 3, 4, 5}, new int[]{1, 2, 3, 4, 5, 0},
+                                  new int[]{1, 2, 1, 2, 1, 2})
+                           .build();
+    }
+
+    @Test
+    public void bulkParity() throws IOException {
+        Graph g = GraphBuilder.bulk()
+                              .atoms(4, new int[]{6, 7, 8, 6}, new int[]{1, 2, 1, 3})
+                              .bonds(3, new int[]{0, 0, 0}, new int[]{1, 2, 3}, new int[]{1, 1, 1})
+                              .parities(new int[]{1, 0, 0, 0})
+                              .build();
+        Graph h = GraphBuilder.create(4)
+                              .add(AtomBuilder.aliphatic(Element.Carbon).hydrogens(1).build())
+                              .add(AtomImpl.AliphaticSubset.Nitrogen)
+                              .add(AtomImpl.AliphaticSubset.Oxygen)
+                              .add(AtomImpl.AliphaticSubset.Carbon)
+                              .add(0, 1)
+                              .add(0, 2)
+                              .add(0, 3)
+                              .tetrahedral(0).lookingFrom(1)
+                              .neighbors(2, 3, 0)
+                              .parity(1)
+                              .build()
+                              .build();
+        assertThat(g.toSmiles(), is(h.toSmiles()));
+    }
+
+    @Test
+    public void bulkBondParity() throws IOException {
+        GraphBuilder.BulkBuilder bb = GraphBuilder.bulk()
+                                                  .atoms(4, new int[]{9, 6, 6, 9}, new int[]{0, 1, 1, 0})
+                                                  .bonds(3, new int[]{0, 1, 2}, new int[]{1, 2, 3}, new int[]{1, 2, 1});
+        assertThat(bb.bondParities(new int[]{0, -1, 0}).build().toSmiles(), is("F/C=C/F"));
+        assertThat(bb.bondParities(new int[]{0, 1, 0}).build().toSmiles(), is("F/C=C\\F"));
+        assertThat(bb.bondParities(null).build().toSmiles(), is("FC=CF"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bulkInvalidOrder() {
+        GraphBuilder.bulk()
+                    .atoms(2, new int[]{6, 6}, new int[]{3, 3})
+                    .bonds(1, new int[]{0}, new int[]{1}, new int[]{7})
+                    .build();
+    }
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2013, European Bioinformatics Institute (EMBL-EBI)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package uk.ac.ebi.beam;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/** @author John May */
+public class GraphCodecTest {
+
+    private static final String[] SMIS = {
+            "",
+            "CCO ethanol",
+            "CC(C)C[C@H](NC(=O)[C@@H](Cc1ccccc1)NC(=O)c1cnccn1)B(O)O",
+            "C[C@]12CC[C@H]3[C@@H](CCC4=CC(=O)CC[C@@]34C)[C@@H]1CC[C@@H]2O",
+            "CCCCCCCC/C=C\\CCCCCCCC(=O)O",
+            "C/C=C/1.F/1",
+            "F/C=C/C=C(/C)\\C=C\\Cl",
+            "[2H]C([2H])([2H])Oc1ccc2[nH]cc(CC[NH3+])c2c1",
+            "[13CH3:12][Fe-4]",
+            "C1CC2CCC1CC2",
+            "CC=[C@]=CC",
+            "F[Pt@SP1](Cl)(Br)I",
+            "S[As@TB1](F)(Cl)(Br)N",
+            "C[Co@OH1](F)(Cl)(Br)(I)S",
+            "*c1ccccc1* éthanol",
+            "[R2]CC[Rg]"
+    };
+
+    @Test public void roundTrip() throws IOException {
+        for (String smi : SMIS) {
+            Graph g = Graph.fromSmiles(smi);
+            Graph h = GraphCodec.decode(GraphCodec.encode(g));
+            assertThat(smi, h.toSmiles(), is(g.toSmiles()));
+            assertThat(smi, h.getTitle(), is(g.getTitle()));
+            assertThat(smi, h.getFlags(), is(g.getFlags()));
+            assertThat(smi, h.size(), is(g.size()));
+            for (int u = 0; u < g.order(); u++) {
+                assertThat(h.atom(u), is(g.atom(u)));
+                assertThat(h.atom(u).label(), is(g.atom(u).label()));
+                assertThat(h.topologyOf(u).configuration(), is(g.topologyOf(u).configuration()));
+                for (int j = 0; j < g.degree(u); j++) {
+                    Edge e = g.edgeAt(u, j), f = h.edgeAt(u, j);
+                    assertThat(f.either(), is(e.either()));
+                    assertThat(f.other(f.either()), is(e.other(e.either())));
+                    assertThat(f.bond(), is(e.bond()));
+                }
+            }
+        }
+    }
+
+    @Test public void roundTripKekule() throws IOException {
+        Graph g = Graph.fromSmiles("c1ccccc1/C=C/c1cc[nH]c1").kekule();
+        assertThat(GraphCodec.decode(GraphCodec.encode(g)).toSmiles(),
+                   is(g.toSmiles()));
+    }
+
+    @Test public void noTitle() throws IOException {
+        Graph g = Graph.fromSmiles("CCO");
+        assertThat(GraphCodec.decode(GraphCodec.encode(g)).getTitle(), is(nullValue()));
+    }
+
+    @Test public void dataInputOutput() throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bout);
+        for (String smi : SMIS)
+            GraphCodec.write(Graph.fromSmiles(smi), out);
+        out.close();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bout.toByteArray()));
+        for (String smi : SMIS)
+            assertThat(GraphCodec.read(in).toSmiles(), is(Graph.fromSmiles(smi).toSmiles()));
+        assertThat(in.read(), is(-1));
+    }
+
+    @Test public void heapByteBuffer() throws IOException {
+        byteBuffer(ByteBuffer.allocate(4096));
+    }
+
+    @Test public void directByteBuffer() throws IOException {
+        byteBuffer(ByteBuffer.allocateDirect(4096));
+    }
+
+    private static void byteBuffer(ByteBuffer bb) throws IOException {
+        bb.put((byte) 42);
+        for (String smi : SMIS)
+            GraphCodec.write(Graph.fromSmiles(smi), bb);
+        bb.flip();
+        assertThat(bb.get(), is((byte) 42));
+        for (String smi : SMIS)
+            assertThat(GraphCodec.read(bb).toSmiles(), is(Graph.fromSmiles(smi).toSmiles()));
+        assertThat(bb.remaining(), is(0));
+    }
+
+    @Test public void largeRecord() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++)
+            sb.append('C');
+        Graph g = Graph.fromSmiles(sb.toString());
+        Graph h = GraphCodec.decode(GraphCodec.encode(g));
+        assertThat(h.order(), is(5000));
+        assertThat(h.size(), is(4999));
+        assertThat(h.edgeAt(4999, 0).other(4999), is(4998));
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupportedVersion() throws IOException {
+        byte[] bytes = GraphCodec.encode(Graph.fromSmiles("CCO"));
+        bytes[0] = (byte) (GraphCodec.VERSION + 1);
+        GraphCodec.decode(bytes);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncated() throws IOException {
+        byte[] bytes = GraphCodec.encode(Graph.fromSmiles("CCO"));
+        GraphCodec.decode(bytes, 0, bytes.length - 2);
+    }
+}
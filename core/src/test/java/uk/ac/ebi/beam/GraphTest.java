@@ -34,6 +34,8 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
@@ -575,4 +577,357 @@ public class GraphTest {
         Assert.assertEquals("FC=[C@@]=CBr",
                             Graph.fromSmiles("F1.C1=[C@]=CBr").toSmiles());
     }
+
+    @Test public void fromSmilesBytes() throws IOException {
+        String smi = "CC[C@@H](C(=O)O)N/C=C/C1CCCC1 title";
+        byte[] bs = ("garbage\n" + smi + "\n").getBytes(StandardCharsets.US_ASCII);
+        Graph g = Graph.fromSmiles(bs, 8, smi.length());
+        Graph h = Graph.fromSmiles(smi);
+        assertThat(g.toSmiles(), is(h.toSmiles()));
+        assertThat(g.getTitle(), is("title"));
+    }
+
+    @Test public void fromSmilesByteBuffer() throws IOException {
+        String smi = "c1ccccc1[13CH3]";
+        ByteBuffer bb = ByteBuffer.allocateDirect(64);
+        bb.put(smi.getBytes(StandardCharsets.US_ASCII));
+        bb.flip();
+        assertThat(Graph.fromSmiles(bb).toSmiles(), is(smi));
+        assertThat(bb.remaining(), is(smi.length()));
+    }
+
+    @Test public void fromSmilesBytesUtf8Title() throws IOException {
+        byte[] bs = "CCO \u00e9thanol".getBytes(StandardCharsets.UTF_8);
+        assertThat(Graph.fromSmiles(bs, 0, bs.length).getTitle(), is("\u00e9thanol"));
+    }
+
+    @Test public void neighborsIntoBuffer() throws IOException {
+        Graph g = Graph.fromSmiles("C(N)(O)=S");
+        int[] vs = new int[8];
+        assertThat(g.neighbors(0, vs), is(3));
+        assertThat(Arrays.copyOf(vs, 3), is(new int[]{1, 2, 3}));
+        assertThat(g.neighbors(1, vs), is(1));
+        assertThat(vs[0], is(0));
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void neighborsIntoSmallBuffer() throws IOException {
+        Graph.fromSmiles("C(N)(O)=S").neighbors(0, new int[2]);
+    }
+
+    @Test public void forEachNeighbor() throws IOException {
+        Graph g = Graph.fromSmiles("C(N)(O)=S");
+        final StringBuilder sb = new StringBuilder();
+        g.forEachNeighbor(0, new Graph.IntBondConsumer() {
+            @Override public void accept(int v, Bond bond) {
+                sb.append(v).append(bond.token());
+            }
+        });
+        assertThat(sb.toString(), is("123="));
+    }
+
+    @Test public void neighborCursor() throws IOException {
+        Graph g = Graph.fromSmiles("C(N)(O)=S");
+        Graph.NeighborCursor c = g.neighborCursor(0);
+        StringBuilder sb = new StringBuilder();
+        while (c.next())
+            sb.append(c.neighbor()).append(c.bond().token());
+        assertThat(sb.toString(), is("123="));
+        assertFalse(c.next());
+        c.reset(3);
+        assertTrue(c.next());
+        assertThat(c.neighbor(), is(0));
+        assertThat(c.bond(), is(Bond.DOUBLE));
+        assertThat(c.edge(), is(g.edge(0, 3)));
+        assertFalse(c.next());
+    }
+
+    @Test public void edgesAllocatedOnDemand() throws IOException {
+        Graph g = new Graph(2);
+        for (int i = 0; i < 8; i++)
+            g.addAtom(AtomImpl.AliphaticSubset.Carbon);
+        for (int i = 1; i < 7; i++)
+            g.addEdge(new Edge(0, i, Bond.IMPLICIT));
+        assertThat(g.degree(0), is(6));
+        assertThat(g.degree(7), is(0));
+        assertThat(g.toSmiles(), is("C(C)(C)(C)(C)(C)C.C"));
+        Graph h = g.permute(new int[]{7, 1, 2, 3, 4, 5, 6, 0});
+        assertThat(h.degree(7), is(6));
+        assertThat(h.degree(0), is(0));
+    }
+
+    @Test public void freeze() throws IOException {
+        String[] smis = {"CC(C)C[C@H](NC(=O)[C@@H](Cc1ccccc1)NC(=O)c1cnccn1)B(O)O",
+                         "C1CC2CCC1CC2", "F/C=C/1.C1 title", "C[C@]12CC[C@H]3[C@@H](CCC4=CC(=O)CC[C@@]34C)[C@@H]1CC[C@@H]2O"};
+        for (String smi : smis) {
+            Graph g = Graph.fromSmiles(smi);
+            Graph h = g.freeze();
+            assertTrue(h.isFrozen());
+            assertFalse(g.isFrozen());
+            assertThat(h.freeze(), CoreMatchers.sameInstance(h));
+            assertThat(h.toSmiles(), is(g.toSmiles()));
+            assertThat(h.getTitle(), is(g.getTitle()));
+            assertThat(h.size(), is(g.size()));
+            for (int u = 0; u < g.order(); u++) {
+                assertThat(h.implHCount(u), is(g.implHCount(u)));
+                assertThat(h.bondedValence(u), is(g.bondedValence(u)));
+            }
+            assertThat(h.aromatic().toSmiles(), is(g.aromatic().toSmiles()));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void frozenSetTitle() throws IOException {
+        Graph.fromSmiles("CCO").freeze().setTitle("ethanol");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void frozenSort() throws IOException {
+        Graph.fromSmiles("CCO").freeze().sort(new Graph.CanOrderFirst());
+    }
+
+    @Test public void frozenKekule() throws IOException {
+        Graph g = Graph.fromSmiles("c1ccccc1").freeze();
+        Graph h = g.kekule();
+        assertThat(h.toSmiles(), is("C1=CC=CC=C1"));
+        assertThat(g.toSmiles(), is("c1ccccc1"));
+    }
+
+    @Test public void frozenKekuleSameAsUnfrozen() throws IOException {
+        String[] smis = {"C:1:C:C:C:C:C1", "c1ccccc1", "[nH]1cccc1", "c1ccc2ccccc2c1",
+                         "C/C=C/c1ccccc1", "Oc1ccc(cc1)-c1ccccc1", "c1cc2cccc3c4cccc5cccc(c(c1)c23)c54"};
+        for (String smi : smis) {
+            Graph g = Graph.fromSmiles(smi).freeze();
+            assertThat(smi, g.kekule().toSmiles(), is(Graph.fromSmiles(smi).kekule().toSmiles()));
+            assertThat(g.toSmiles(), is(Graph.fromSmiles(smi).toSmiles()));
+        }
+    }
+
+    @Test public void frozenResonateSameAsUnfrozen() throws IOException {
+        String[] smis = {"C1=CC=CC=C1", "C1=CC=C2C=CC=CC2=C1", "F/C=C/C1=CC=CC=C1",
+                         "C/1=C/C=C/C=C/C=C\\C=C1"};
+        for (String smi : smis) {
+            Graph g = Graph.fromSmiles(smi).freeze();
+            assertThat(smi, g.resonate().toSmiles(), is(Graph.fromSmiles(smi).resonate().toSmiles()));
+            assertThat(g.toSmiles(), is(Graph.fromSmiles(smi).toSmiles()));
+        }
+    }
+
+    @Test public void frozenResonate() throws IOException {
+        Graph g = Graph.fromSmiles("C1=CC=CC=C1").freeze();
+        assertThat(g.resonate().toSmiles(),
+                   is(Graph.fromSmiles("C1=CC=CC=C1").resonate().toSmiles()));
+        assertThat(g.toSmiles(), is("C1=CC=CC=C1"));
+    }
+
+    @Test public void ringSizes() throws IOException {
+        // spiro linked 3 and 4 membered rings, a 6 membered ring and an
+        // acyclic bridge
+        Graph g = Graph.fromSmiles("C1CC12CCC2.C1CCCCC1CC").freeze();
+        assertThat(g.ringSize(0), is(3));
+        assertThat(g.ringSize(2), is(3));
+        assertThat(g.ringSize(3), is(4));
+        assertThat(g.ringSize(6), is(6));
+        assertThat(g.ringSize(12), is(0));
+        assertFalse(g.inRing(13));
+        assertThat(g.ringSize(g.edge(2, 3)), is(4));
+        assertThat(g.ringSize(g.edge(0, 2)), is(3));
+        assertThat(g.ringSize(g.edge(11, 12)), is(0));
+        assertThat(g.ringSystemCount(), is(2));
+        assertThat(g.ringSystem(0), is(0));
+        assertThat(g.ringSystem(5), is(0));
+        assertThat(g.ringSystem(6), is(1));
+        assertThat(g.ringSystem(12), is(-1));
+    }
+
+    @Test public void ringSizeFused() throws IOException {
+        Graph g = Graph.fromSmiles("c1ccc2ccccc2c1");
+        assertThat(g.ringSize(g.edge(3, 8)), is(6));
+        assertThat(g.ringSize(3), is(6));
+        assertThat(g.ringSystemCount(), is(1));
+        // the bond between the rings of biphenyl is not in a ring
+        Graph h = Graph.fromSmiles("c1ccccc1-c1ccccc1").freeze();
+        assertThat(h.ringSize(h.edge(5, 6)), is(0));
+        assertTrue(h.inRing(5));
+        assertThat(h.ringSystemCount(), is(2));
+    }
+
+    @Test public void frozenConcurrentAccess() throws Exception {
+        final Graph g = Graph.fromSmiles("CC(C)C[C@H](NC(=O)[C@@H](Cc1ccccc1)NC(=O)c1cnccn1)B(O)O").freeze();
+        final String expected = Graph.fromSmiles(g.toSmiles()).aromatic().toSmiles();
+        final Graph ref = Graph.fromSmiles(g.toSmiles());
+        Thread[] threads = new Thread[4];
+        final boolean[] ok = new boolean[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int id = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        boolean res = g.aromatic().toSmiles().equals(expected);
+                        for (int u = 0; u < g.order(); u++)
+                            res = res && g.implHCount(u) == ref.implHCount(u);
+                        ok[id] = res && g.ringSystemCount() == 2;
+                    } catch (IOException e) {
+                        ok[id] = false;
+                    }
+                }
+            });
+        }
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            t.join();
+        for (boolean b : ok)
+            assertTrue(b);
+    }
+
+    @Test public void implHCountUpdated() throws IOException {
+        Graph g = new Graph(2);
+        g.addAtom(AtomImpl.AliphaticSubset.Carbon);
+        g.addAtom(AtomImpl.AliphaticSubset.Carbon);
+        assertThat(g.implHCount(0), is(4));
+        Edge e = new Edge(0, 1, Bond.IMPLICIT);
+        g.addEdge(e);
+        assertThat(g.implHCount(0), is(3));
+        assertThat(g.implHCount(1), is(3));
+        g.replace(e, new Edge(0, 1, Bond.DOUBLE));
+        assertThat(g.implHCount(0), is(2));
+        assertThat(g.implHCount(1), is(2));
+        g.updateBondedValence(1, 1);
+        assertThat(g.implHCount(1), is(1));
+        g.setAtom(0, AtomImpl.AliphaticSubset.Nitrogen);
+        assertThat(g.implHCount(0), is(1));
+        g.setAtom(0, new AtomImpl.BracketAtom(Element.Nitrogen, 0, 1));
+        assertThat(g.implHCount(0), is(0));
+        g.addAtom(AtomImpl.AliphaticSubset.Oxygen);
+        assertThat(g.implHCount(2), is(2));
+    }
+
+    @Test public void implHCountPermuted() throws IOException {
+        Graph g = Graph.fromSmiles("CC=O");
+        for (int u = 0; u < g.order(); u++)
+            g.implHCount(u);
+        Graph h = g.permute(new int[]{2, 1, 0});
+        assertThat(h.implHCount(0), is(0));
+        assertThat(h.implHCount(1), is(1));
+        assertThat(h.implHCount(2), is(3));
+    }
+
+    @Test public void edgeIds() throws IOException {
+        Graph g = Graph.fromSmiles("C1CC(O)CC1C=O");
+        Edge[] byId = new Edge[g.size()];
+        int id = 0;
+        for (Edge e : g.edges()) {
+            assertThat(g.edgeId(e), is(id));
+            byId[id++] = e;
+        }
+        for (int u = 0; u < g.order(); u++) {
+            for (int j = 0; j < g.degree(u); j++)
+                assertThat(byId[g.edgeId(u, j)], CoreMatchers.sameInstance(g.edgeAt(u, j)));
+        }
+    }
+
+    @Test public void edgeIdsReassigned() throws IOException {
+        Graph g = Graph.fromSmiles("CC(C)O");
+        assertThat(g.edgeId(g.edge(1, 3)), is(2));
+        g.addEdge(new Edge(0, 2, Bond.IMPLICIT));
+        assertThat(g.edgeId(g.edge(0, 2)), is(2));
+        assertThat(g.edgeId(g.edge(1, 3)), is(3));
+        g.replace(g.edge(1, 3), new Edge(1, 3, Bond.DOUBLE));
+        assertThat(g.edgeId(g.edge(1, 3)), is(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void edgeIdOfOtherGraph() throws IOException {
+        Graph g = Graph.fromSmiles("CCO");
+        g.edgeId(new Edge(0, 1, Bond.IMPLICIT));
+    }
+
+    @Test public void deriveSharesEdges() throws IOException {
+        Graph g = Graph.fromSmiles("CCO");
+        Graph h = g.derive();
+        assertThat(h.edgeAt(1, 0), CoreMatchers.sameInstance(g.edgeAt(1, 0)));
+        h.replace(h.edge(1, 2), new Edge(1, 2, Bond.DOUBLE));
+        assertThat(h.edge(1, 2).bond(), is(Bond.DOUBLE));
+        assertThat(g.edge(1, 2).bond(), is(Bond.IMPLICIT));
+        assertThat(g.toSmiles(), is("CCO"));
+        assertThat(h.toSmiles(), is("CC=O"));
+        g.addAtom(AtomImpl.AliphaticSubset.Nitrogen);
+        g.addEdge(new Edge(1, 3, Bond.IMPLICIT));
+        assertThat(g.toSmiles(), is("CC(O)N"));
+        assertThat(h.toSmiles(), is("CC=O"));
+    }
+
+    @Test public void deriveSorted() throws IOException {
+        Graph g = Graph.fromSmiles("OC(N)=C");
+        Graph h = g.derive();
+        h.sort(new Graph.VisitHighOrderFirst());
+        assertThat(g.toSmiles(), is("OC(N)=C"));
+        assertThat(h.toSmiles(), is("OC(=C)N"));
+    }
+
+    /** Deriving does not modify the (mutable) graph, it may be concurrent. */
+    @Test public void deriveConcurrently() throws Exception {
+        final String smi = "CC(C)C[C@H](NC(=O)[C@@H](Cc1ccccc1)NC(=O)c1cnccn1)B(O)O";
+        final Graph g = Graph.fromSmiles(smi);
+        final String expected = g.toSmiles();
+        Thread[] threads = new Thread[4];
+        final boolean[] ok = new boolean[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int id = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        boolean res = true;
+                        for (int k = 0; k < 50; k++) {
+                            Graph h = g.derive();
+                            h.sort(new Graph.VisitHighOrderFirst());
+                            res = res && g.toSmiles().equals(expected);
+                        }
+                        ok[id] = res;
+                    } catch (IOException e) {
+                        ok[id] = false;
+                    }
+                }
+            });
+        }
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            t.join();
+        for (boolean b : ok)
+            assertTrue(b);
+
+        // the graph modifies its own edges, not those of the derived graph
+        Graph h = g.derive();
+        g.sort(new Graph.VisitHighOrderFirst());
+        g.addAtom(AtomImpl.AliphaticSubset.Nitrogen);
+        g.addEdge(new Edge(0, g.order() - 1, Bond.IMPLICIT));
+        assertThat(h.toSmiles(), is(expected));
+        Graph ref = Graph.fromSmiles(smi);
+        ref.sort(new Graph.VisitHighOrderFirst());
+        ref.addAtom(AtomImpl.AliphaticSubset.Nitrogen);
+        ref.addEdge(new Edge(0, ref.order() - 1, Bond.IMPLICIT));
+        assertThat(g.toSmiles(), is(ref.toSmiles()));
+    }
+
+    @Test public void deriveEdgeOrder() throws IOException {
+        Graph g = Graph.fromSmiles("C1CCC(CC1)O");
+        // copy the graph adding the edges of each atom in turn
+        Graph h = new Graph(g.order());
+        for (int u = 0; u < g.order(); u++)
+            h.addAtom(g.atom(u));
+        for (int u = 0; u < g.order(); u++) {
+            for (int j = 0; j < g.degree(u); j++) {
+                if (g.edgeAt(u, j).other(u) > u)
+                    h.addEdge(g.edgeAt(u, j));
+            }
+        }
+        Graph d = g.derive();
+        for (int u = 0; u < g.order(); u++) {
+            for (int j = 0; j < g.degree(u); j++)
+                assertThat(d.edgeAt(u, j), CoreMatchers.sameInstance(h.edgeAt(u, j)));
+        }
+        assertThat(d.toSmiles(), is(h.toSmiles()));
+    }
 }
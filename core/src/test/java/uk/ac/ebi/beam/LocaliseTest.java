@@ -389,6 +389,42 @@ public class LocaliseTest {
         assertFalse(Localise.inSmallRing(g, g.edge(3, 6)));
     }
 
+    @Test public void smallRingTest_frozen() throws Exception {
+        Graph g = Graph.fromSmiles("C1CCCCCC1C1CCCCCCC1").freeze();
+        assertTrue(Localise.inSmallRing(g, g.edge(0, 1)));
+        assertFalse(Localise.inSmallRing(g, g.edge(6, 7)));
+        assertFalse(Localise.inSmallRing(g, g.edge(7, 8)));
+    }
+
+    /** The depth first search visited atoms once and missed some rings. */
+    @Test public void smallRingTest_fused() throws Exception {
+        Graph g = Graph.fromSmiles("C12CCCCC2CC1");
+        assertTrue(Localise.inSmallRing(g, g.edge(5, 6)));
+        assertTrue(Localise.inSmallRing(g, g.edge(6, 7)));
+        assertTrue(Localise.inSmallRing(g, g.edge(0, 7)));
+        Graph h = g.freeze();
+        assertTrue(Localise.inSmallRing(h, h.edge(6, 7)));
+    }
+
+    @Test public void smallRingTest_bridged() throws Exception {
+        Graph g = Graph.fromSmiles("C12CCCC(CCCC1)C2");
+        assertTrue(Localise.inSmallRing(g, g.edge(0, 1)));
+        assertTrue(Localise.inSmallRing(g, g.edge(5, 6)));
+        assertTrue(Localise.inSmallRing(g, g.edge(0, 8)));
+        Graph h = g.freeze();
+        assertTrue(Localise.inSmallRing(h, h.edge(5, 6)));
+    }
+
+    @Test public void smallRingTest_fused_8() throws Exception {
+        // 6 and 8 membered rings sharing a bond, the 8 membered ring
+        // bonds are only in a 12 membered envelope otherwise
+        Graph g = Graph.fromSmiles("C1CCCCCC2CCCCC2C1");
+        assertFalse(Localise.inSmallRing(g, g.edge(0, 1)));
+        assertTrue(Localise.inSmallRing(g, g.edge(7, 8)));
+        Graph h = g.freeze();
+        assertFalse(Localise.inSmallRing(h, h.edge(0, 1)));
+    }
+
     @Test public void anyatom() throws Exception {
         test("*1ccccc1", "*1=CC=CC=C1");
     }
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2013, European Bioinformatics Institute (EMBL-EBI)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package uk.ac.ebi.beam;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/** @author John May */
+public class MoleculeArenaTest {
+
+    private static final String[] SMIS = {
+            "",
+            "CCO ethanol",
+            "CC(C)C[C@H](NC(=O)[C@@H](Cc1ccccc1)NC(=O)c1cnccn1)B(O)O",
+            "C[C@]12CC[C@H]3[C@@H](CCC4=CC(=O)CC[C@@]34C)[C@@H]1CC[C@@H]2O",
+            "CCCCCCCC/C=C\\CCCCCCCC(=O)O",
+            "C/C=C/1.F/1",
+            "F/C=C/C=C(/C)\\C=C\\Cl",
+            "[2H]C([2H])([2H])Oc1ccc2[nH]cc(CC[NH3+])c2c1",
+            "[13CH3:12][Fe-4]",
+            "CC=[C@]=CC",
+            "F[Pt@SP1](Cl)(Br)I",
+            "C[Co@OH1](F)(Cl)(Br)(I)S",
+            "*c1ccccc1* éthanol",
+            "[R2]CC[Rg]"
+    };
+
+    @Test public void view() throws IOException {
+        MoleculeArena arena = new MoleculeArena();
+        for (String smi : SMIS) {
+            Graph g = Graph.fromSmiles(smi);
+            MoleculeArena.View view = arena.view(arena.add(g));
+            assertThat(view.order(), is(g.order()));
+            assertThat(view.size(), is(g.size()));
+            assertThat(view.getFlags(), is(g.getFlags()));
+            assertThat(view.getTitle(), is(g.getTitle()));
+            for (int u = 0; u < g.order(); u++) {
+                assertThat(view.atom(u), is(g.atom(u)));
+                assertThat(view.atom(u).label(), is(g.atom(u).label()));
+                assertThat(view.topologyOf(u).configuration(),
+                           is(g.topologyOf(u).configuration()));
+                assertThat(view.degree(u), is(g.degree(u)));
+                for (int j = 0; j < g.degree(u); j++) {
+                    Edge e = g.edgeAt(u, j);
+                    assertThat(view.neighbor(u, j), is(e.other(u)));
+                    assertThat(view.bond(u, j), is(e.bond(u)));
+                }
+            }
+            assertThat(smi, view.toSmiles(), is(g.toSmiles()));
+        }
+    }
+
+    @Test public void iterate() throws IOException {
+        // small segments so molecules are spread over several (some larger
+        // than a segment)
+        MoleculeArena arena = new MoleculeArena(256);
+        List<Long> handles = new ArrayList<Long>();
+        for (String smi : SMIS)
+            handles.add(arena.add(Graph.fromSmiles(smi)));
+        assertThat(arena.count(), is((long) SMIS.length));
+
+        MoleculeArena.View view = arena.view(arena.first());
+        int i = 0;
+        for (long h = arena.first(); h >= 0; h = arena.next(h)) {
+            assertThat(h, is(handles.get(i)));
+            assertThat(view.reset(h).toSmiles(),
+                       is(Graph.fromSmiles(SMIS[i]).toSmiles()));
+            i++;
+        }
+        assertThat(i, is(SMIS.length));
+    }
+
+    @Test public void graph() throws IOException {
+        MoleculeArena arena = new MoleculeArena();
+        Graph org = Graph.fromSmiles("c1ccccc1/C=C/c1cc[nH]c1 stilbene");
+        Graph g = arena.graph(arena.add(org));
+        assertThat(g.toSmiles(), is(org.toSmiles()));
+        assertThat(g.getTitle(), is("stilbene"));
+        assertThat(g.kekule().toSmiles(), is(org.kekule().toSmiles()));
+    }
+
+    @Test public void empty() {
+        MoleculeArena arena = new MoleculeArena();
+        assertThat(arena.first(), is(-1L));
+        assertThat(arena.count(), is(0L));
+        assertThat(arena.view(arena.add(new Graph(1))).getTitle(), is(nullValue()));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2013, European Bioinformatics Institute (EMBL-EBI)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package uk.ac.ebi.beam;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/** @author John May */
+public class ParseWarningTest {
+
+    @Test public void invalidCisTrans() throws IOException {
+        List<ParseWarning> warnings = collect("C/C=C(/F)/F");
+        assertThat(warnings.size(), is(1));
+        ParseWarning warning = warnings.get(0);
+        assertThat(warning.kind(), is(ParseWarning.Kind.InvalidDoubleBondStereo));
+        assertThat(warning.offset(), is(6));
+        assertThat(warning.offset2(), is(9));
+    }
+
+    @Test public void ringClosureFlip() throws IOException {
+        List<ParseWarning> warnings = collect("C/1=C/C/C=C/1");
+        assertThat(warnings.size(), is(1));
+        assertThat(warnings.get(0).kind(), is(ParseWarning.Kind.InvalidRingClosureStereo));
+        assertThat(warnings.get(0).offset(), is(1));
+        assertThat(warnings.get(0).offset2(), is(11));
+    }
+
+    @Test public void noWarnings() throws IOException {
+        assertTrue(collect("C/C=C/C1CC[C@H](O)CC1").isEmpty());
+    }
+
+    @Test public void messageMatchesLegacyWarnings() throws IOException {
+        Set<String> legacy = new HashSet<>();
+        Graph.parse("C/C=C(/F)/F", false, legacy);
+        assertThat(legacy.size(), is(1));
+        assertThat(legacy, hasItem(collect("C/C=C(/F)/F").get(0).message()));
+    }
+
+    @Test public void discard() throws IOException {
+        SmilesParser parser = new SmilesParser(false, ParseWarning.DISCARD);
+        Graph g = parser.parse("C/C=C(/F)/F");
+        assertThat(g.order(), is(5));
+        assertTrue(parser.warnings().isEmpty());
+    }
+
+    @Test(expected = InvalidSmilesException.class)
+    public void discardStrict() throws IOException {
+        new SmilesParser(true, ParseWarning.DISCARD).parse("C/C=C(/F)/F");
+    }
+
+    private static List<ParseWarning> collect(String smi) throws IOException {
+        final List<ParseWarning> warnings = new ArrayList<>();
+        Graph.fromSmiles(smi, new ParseWarning.Listener() {
+            @Override public void warn(ParseWarning warning) {
+                warnings.add(warning);
+            }
+        });
+        return warnings;
+    }
+}
@@ -329,4 +329,14 @@ public class ParserTest {
         assertEquals("CC=CC",
                      Graph.fromSmiles("CC=C-1.C=1").toSmiles());
     }
+
+    @Test public void countAtoms() {
+        assertThat(Parser.countAtoms(CharBuffer.fromString("")), is(0));
+        assertThat(Parser.countAtoms(CharBuffer.fromString("CCO")), is(3));
+        assertThat(Parser.countAtoms(CharBuffer.fromString("ClCBr")), is(3));
+        assertThat(Parser.countAtoms(CharBuffer.fromString("[13CH2+][Cl-].[Na+]")), is(3));
+        assertThat(Parser.countAtoms(CharBuffer.fromString("c1ccccc1*")), is(7));
+        assertThat(Parser.countAtoms(CharBuffer.fromString("C[C@@H](N)O CNOS title")), is(4));
+        assertThat(Parser.countAtoms(CharBuffer.fromString("C=C\nCCC")), is(2));
+    }
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2013, European Bioinformatics Institute (EMBL-EBI)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+
+package uk.ac.ebi.beam;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author John May
+ */
+public class SmilesOutputStreamTest {
+
+    @Test public void graphWithTitle() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (SmilesOutputStream out = new SmilesOutputStream(bytes)) {
+            out.write(Graph.fromSmiles("CCO ethanol"));
+            out.write(Graph.fromSmiles("c1ccccc1"));
+        }
+        assertThat(bytes.toString("UTF-8"), is("CCO ethanol\nc1ccccc1\n"));
+    }
+
+    @Test public void suffix() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (SmilesOutputStream out = new SmilesOutputStream(bytes)) {
+            out.write(Graph.fromSmiles("C[C@@H](O)CC"), "\tid1");
+            out.write("F/C=C/F", " id2");
+        }
+        assertThat(bytes.toString("UTF-8"), is("C[C@@H](O)CC\tid1\nF/C=C/F id2\n"));
+    }
+
+    @Test public void nonAsciiSuffix() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (SmilesOutputStream out = new SmilesOutputStream(bytes)) {
+            out.write(Graph.fromSmiles("CCO"), " éthanol");
+        }
+        assertThat(bytes.toString("UTF-8"), is("CCO éthanol\n"));
+    }
+
+    /** Non-ASCII characters of a SMILES are encoded as UTF-8 and not replaced. */
+    @Test public void nonAsciiSmiles() throws IOException {
+        Graph g = GraphBuilder.create(2)
+                              .add(AtomImpl.AliphaticSubset.Carbon)
+                              .add(new AtomImpl.BracketAtom("Rü"))
+                              .add(0, 1)
+                              .build();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (SmilesOutputStream out = new SmilesOutputStream(bytes, 2)) {
+            out.write(g, " éthanol");
+            out.write("C[Rü]", " R");
+        }
+        assertThat(bytes.toString("UTF-8"), is(g.toSmiles() + " éthanol\nC[Rü] R\n"));
+    }
+
+    @Test public void copyTitleFromByteReader() throws IOException {
+        String input = "OCC\tethanol\nc1ccccc1 benzène\nCC\n";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (SmilesReader rdr = new SmilesReader(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+             SmilesOutputStream out = new SmilesOutputStream(bytes)) {
+            Graph g;
+            while ((g = rdr.read()) != null)
+                out.write(g.kekule(), rdr);
+        }
+        assertThat(bytes.toString("UTF-8"),
+                   is("OCC\tethanol\nC1=CC=CC=C1 benzène\nCC\n"));
+    }
+
+    @Test public void copyTitleFromCharReader() throws IOException {
+        String input = "OCC\tethanol\nc1ccccc1 benzène\nCC\n";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (SmilesReader rdr = new SmilesReader(new StringReader(input));
+             SmilesOutputStream out = new SmilesOutputStream(bytes)) {
+            Graph g;
+            while ((g = rdr.read()) != null)
+                out.write(g, rdr);
+        }
+        assertThat(bytes.toString("UTF-8"), is(input));
+    }
+
+    /** A small buffer is written out many times. */
+    @Test public void smallBuffer() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (SmilesOutputStream out = new SmilesOutputStream(bytes, 5)) {
+            for (int i = 0; i < 50; i++) {
+                out.write(Graph.fromSmiles("C1CC2CCC1CC2.[Na+].[Cl-]"), " mol" + i);
+                expected.append("C1CC2CCC1CC2.[Na+].[Cl-] mol").append(i).append('\n');
+            }
+            out.write(new byte[]{'C', 'C', 'C', 'C', 'C', 'C', '\n'}, 0, 7);
+            expected.append("CCCCCC\n");
+        }
+        assertThat(bytes.toString("UTF-8"), is(expected.toString()));
+    }
+
+    @Test public void channel() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (SmilesOutputStream out = new SmilesOutputStream(Channels.newChannel(bytes), 8)) {
+            out.write(Graph.fromSmiles("O=C(O)[C@H](N)C/C=C\\CC1CC1 id"));
+        }
+        assertThat(bytes.toString("UTF-8"), is("O=C(O)[C@H](N)C/C=C\\CC1CC1 id\n"));
+    }
+
+    @Test public void path() throws IOException {
+        Path path = Files.createTempFile("beam", ".smi");
+        try {
+            try (SmilesOutputStream out = new SmilesOutputStream(path)) {
+                out.write(Graph.fromSmiles("CCO"), " a");
+                out.write(Graph.fromSmiles("CCN"), " b");
+            }
+            assertThat(new String(Files.readAllBytes(path), StandardCharsets.UTF_8),
+                       is("CCO a\nCCN b\n"));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /** Nothing is written when a SMILES can not be generated. */
+    @Test public void invalidWritesNothing() throws IOException {
+        // more than 99 open ring closures can not be written
+        GraphBuilder gb = GraphBuilder.create(120);
+        for (int i = 0; i < 120; i++)
+            gb.add(AtomImpl.AliphaticSubset.Carbon);
+        for (int i = 1; i < 120; i++)
+            gb.add(0, i);
+        for (int i = 1; i < 119; i++)
+            gb.add(i, i + 1);
+        gb.add(119, 1);
+        Graph g = gb.build();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (SmilesOutputStream out = new SmilesOutputStream(bytes)) {
+            out.write(Graph.fromSmiles("CC"), " a");
+            try {
+                out.write(g, " b");
+                fail("ring numbers should be exhausted");
+            } catch (InvalidSmilesException e) {
+                // expected
+            }
+            out.write(Graph.fromSmiles("CO"), " c");
+        }
+        assertThat(bytes.toString("UTF-8"), is("CC a\nCO c\n"));
+    }
+}
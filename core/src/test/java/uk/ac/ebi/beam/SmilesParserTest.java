@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) 2013, European Bioinformatics Institute (EMBL-EBI)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package uk.ac.ebi.beam;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/** @author John May */
+public class SmilesParserTest {
+
+    @Test public void reuse() throws IOException {
+        SmilesParser parser = new SmilesParser();
+        String[] smis = {"CCO", "C1CC[C@H]2CCCC[C@@H]2C1", "F/C=C/F", "c1ccccc1 benzene", "[Na+].[Cl-]"};
+        for (String smi : smis)
+            assertThat(parser.parse(smi).toSmiles(), is(Graph.fromSmiles(smi).toSmiles()));
+        assertThat(parser.parse("c1ccccc1 benzene").getTitle(), is("benzene"));
+    }
+
+    @Test public void reuseAfterError() throws IOException {
+        SmilesParser parser = new SmilesParser();
+        try {
+            parser.parse("C1CC(CC");
+            fail("expected invalid SMILES");
+        } catch (InvalidSmilesException e) {
+            // ignored
+        }
+        assertThat(parser.parse("C1CCCCC1").toSmiles(), is("C1CCCCC1"));
+    }
+
+    @Test public void warningsReset() throws IOException {
+        SmilesParser parser = new SmilesParser();
+        parser.parse("C/C=C(/F)/F");
+        assertThat(parser.warnings().size(), is(1));
+        parser.parse("CCO");
+        assertTrue(parser.warnings().isEmpty());
+    }
+
+    @Test(expected = InvalidSmilesException.class)
+    public void strict() throws IOException {
+        new SmilesParser(true).parse("HH");
+    }
+
+    @Test public void bytes() throws IOException {
+        byte[] bs = "CCO.CCN".getBytes(StandardCharsets.US_ASCII);
+        SmilesParser parser = new SmilesParser();
+        assertThat(parser.parse(bs, 0, 3).toSmiles(), is("CCO"));
+        assertThat(parser.parse(bs, 4, 3).toSmiles(), is("CCN"));
+    }
+
+    @Test public void validateValid() {
+        SmilesParser parser = new SmilesParser();
+        assertThat(parser.validate("C1CC[C@H]2CCCC[C@@H]2C1"), is(SmilesParser.ErrorCode.None));
+        assertThat(parser.errorOffset(), is(-1));
+    }
+
+    @Test public void validateUnexpectedCharacter() {
+        SmilesParser parser = new SmilesParser();
+        assertThat(parser.validate("CC?C"), is(SmilesParser.ErrorCode.UnexpectedCharacter));
+        assertThat(parser.errorOffset(), is(2));
+    }
+
+    @Test public void validateUnclosed() {
+        SmilesParser parser = new SmilesParser();
+        assertThat(parser.validate("C1CCC"), is(SmilesParser.ErrorCode.UnclosedRing));
+        assertThat(parser.validate("CC(C"), is(SmilesParser.ErrorCode.UnclosedBranch));
+        assertThat(parser.validate("CC)C"), is(SmilesParser.ErrorCode.InvalidBranch));
+    }
+
+    @Test public void validateBonds() {
+        SmilesParser parser = new SmilesParser();
+        assertThat(parser.validate("C=#C"), is(SmilesParser.ErrorCode.InvalidBond));
+        assertThat(parser.errorOffset(), is(2));
+        assertThat(parser.validate("C1CCCCC=1C"), is(SmilesParser.ErrorCode.None));
+        assertThat(parser.validate("C=1CCCCC#1"), is(SmilesParser.ErrorCode.InvalidRingBond));
+        assertThat(parser.validate("C12CCCCC12"), is(SmilesParser.ErrorCode.InvalidRingBond));
+    }
+
+    @Test public void validateBracketAtom() {
+        SmilesParser parser = new SmilesParser();
+        assertThat(parser.validate("C[C"), is(SmilesParser.ErrorCode.InvalidBracketAtom));
+        assertThat(parser.validate("[C@TH3]"), is(SmilesParser.ErrorCode.InvalidStereo));
+    }
+
+    @Test public void validateStrict() {
+        assertThat(new SmilesParser(false).validate("HH"), is(SmilesParser.ErrorCode.None));
+        assertThat(new SmilesParser(true).validate("HH"), is(SmilesParser.ErrorCode.NonStandard));
+        assertThat(new SmilesParser(false).validate("C/C=C(/F)/F"), is(SmilesParser.ErrorCode.None));
+        assertThat(new SmilesParser(true).validate("C/C=C(/F)/F"), is(SmilesParser.ErrorCode.InvalidStereo));
+    }
+
+    @Test public void parseAfterValidate() throws IOException {
+        SmilesParser parser = new SmilesParser();
+        assertThat(parser.validate("C1CC[C@H](O"), is(SmilesParser.ErrorCode.UnclosedRing));
+        assertThat(parser.parse("C[C@H](O)N").toSmiles(), is("C[C@H](O)N"));
+    }
+
+    @Test public void validateDoesNotModifyParsed() throws IOException {
+        SmilesParser parser = new SmilesParser();
+        Graph g = parser.parse("C1CC[C@H]2CCCC[C@@H]2C1 decalin");
+        for (String smi : new String[]{"c1ccccc1*.[Na+] title", "C[C@H](O)N", "C1CC1CCCCCCCCCCCCCCCCCC",
+                                       "CC=[C@AL1]=CC", "C1CC.1", "C*c1ccccc1"})
+            parser.validate(smi);
+        assertThat(parser.validate("C1CC[C@H]2CCCC[C@@H]2C1"), is(SmilesParser.ErrorCode.None));
+        assertThat(g.toSmiles(), is("C1CC[C@H]2CCCC[C@@H]2C1"));
+        assertThat(g.getTitle(), is("decalin"));
+        assertThat(parser.parse("C*c1ccccc1").toSmiles(), is("C*c1ccccc1"));
+    }
+
+    @Test public void exceptionMessageDisplaysError() {
+        try {
+            new SmilesParser().parse("CC?C");
+            fail("expected invalid SMILES");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("unexpected character:\nCC?C\n  ^"));
+            assertTrue(e.getStackTrace().length > 0);
+        }
+    }
+
+    private static final String[] STEREO = {
+            "C[C@]12CC[C@H]3[C@@H](CCC4=CC(=O)CC[C@@]34C)[C@@H]1CC[C@@H]2O",
+            "CCCCCCCC/C=C\\CCCCCCCC(=O)O",
+            "C/C=C/C=C/C",
+            "[C@@]1(Cl)(F)(I).Br1",
+            "F[C@@]1([H])CCCC1",
+            "C[C@H]1CC[C@@H](O)CC1",
+            "F/C=C/1.Br1",
+            "CC=[C@]=CC",
+            "OC(=O)[C@@H]1CCCN1",
+            "F[Co@OH1](Cl)(Br)(I)(N)O",
+            "F[Pt@SP1](Cl)(Br)I",
+            "C/C(/F)=C/C"
+    };
+
+    @Test public void lazyStereo() throws IOException {
+        SmilesParser eager = new SmilesParser();
+        SmilesParser lazy = new SmilesParser();
+        lazy.setStereo(SmilesParser.Stereo.Lazy);
+        for (String smi : STEREO) {
+            Graph g = lazy.parse(smi);
+            assertThat(smi, g.toSmiles(), is(eager.parse(smi).toSmiles()));
+        }
+    }
+
+    @Test public void lazyStereoCopy() throws IOException {
+        SmilesParser lazy = new SmilesParser();
+        lazy.setStereo(SmilesParser.Stereo.Lazy);
+        Graph g = lazy.parse("C[C@H](N)O");
+        Graph h = new Graph(g);
+        assertThat(h.toSmiles(), is("C[C@H](N)O"));
+        assertThat(g.topologyOf(1).configuration(), is(Configuration.TH1));
+    }
+
+    /** modifying the graph creates the topologies first */
+    @Test public void lazyStereoModified() throws IOException {
+        SmilesParser lazy = new SmilesParser();
+        lazy.setStereo(SmilesParser.Stereo.Lazy);
+        Graph g = lazy.parse("N[C@@H](C)O");
+        g.sort(new Graph.CanOrderFirst());
+        assertThat(g.toSmiles(), is(Graph.fromSmiles("N[C@@H](C)O").sort(new Graph.CanOrderFirst()).toSmiles()));
+    }
+
+    @Test public void lazyStereoInvalid() throws IOException {
+        final List<ParseWarning> warnings = new ArrayList<ParseWarning>();
+        SmilesParser lazy = new SmilesParser(false, new ParseWarning.Listener() {
+            @Override public void warn(ParseWarning warning) {
+                warnings.add(warning);
+            }
+        });
+        lazy.setStereo(SmilesParser.Stereo.Lazy);
+        Graph g = lazy.parse("C[Co@OH1]");
+        assertThat(warnings.size(), is(0));
+        assertThat(g.topologyOf(1), is(Topology.unknown()));
+        assertThat(warnings.size(), is(1));
+        assertThat(warnings.get(0).kind(), is(ParseWarning.Kind.InvalidStereo));
+    }
+
+    /** the warnings of a lazy parse are the same as those of an eager parse */
+    @Test public void lazyStereoWarningsMatchEager() throws IOException {
+        String[] smis = {"C[C@AL1]1CC1", "F[Pt@SP1](Cl)Br", "C/C=C(/F)/F", "CC=[C@]=CC",
+                         "C/1=C/C/C=C/1", "C[C@AL1]1CC1.F[Pt@SP1](Cl)Br", "C[C@H](O)N"};
+        SmilesParser eager = new SmilesParser();
+        SmilesParser lazy  = new SmilesParser();
+        lazy.setStereo(SmilesParser.Stereo.Lazy);
+        for (String smi : smis) {
+            eager.parse(smi);
+            lazy.parse(smi);
+            assertThat(smi, messages(lazy.warnings()), is(messages(eager.warnings())));
+            // topologies created first
+            lazy.parse(smi).toSmiles();
+            assertThat(smi, messages(lazy.warnings()), is(messages(eager.warnings())));
+        }
+        eager.parse("C[C@AL1]1CC1");
+        assertThat(eager.warnings().size(), is(1));
+        assertThat(eager.warnings().get(0).kind(), is(ParseWarning.Kind.InvalidExtendedTetrahedral));
+    }
+
+    /** warnings found lazily after the next parse are not given to that parse */
+    @Test public void lazyStereoWarningsAfterNextParse() throws IOException {
+        SmilesParser lazy = new SmilesParser();
+        lazy.setStereo(SmilesParser.Stereo.Lazy);
+        Graph g = lazy.parse("C[C@AL1]1CC1");
+        lazy.parse("CCO");
+        assertThat(g.topologyOf(1), is(Topology.unknown()));
+        assertTrue(lazy.warnings().isEmpty());
+    }
+
+    @Test public void lazyStereoWarningsToListener() throws IOException {
+        final List<ParseWarning> warnings = new ArrayList<ParseWarning>();
+        SmilesParser lazy = new SmilesParser(false, new ParseWarning.Listener() {
+            @Override public void warn(ParseWarning warning) {
+                warnings.add(warning);
+            }
+        });
+        lazy.setStereo(SmilesParser.Stereo.Lazy);
+        Graph g = lazy.parse("C[C@AL1]1CC1");
+        assertTrue(warnings.isEmpty());
+        assertThat(g.topologyOf(1), is(Topology.unknown()));
+        assertThat(warnings.size(), is(1));
+        assertThat(warnings.get(0).kind(), is(ParseWarning.Kind.InvalidExtendedTetrahedral));
+    }
+
+    private static List<String> messages(List<ParseWarning> warnings) {
+        List<String> messages = new ArrayList<String>();
+        for (ParseWarning warning : warnings)
+            messages.add(warning.kind() + ": " + warning.message());
+        return messages;
+    }
+
+    @Test(expected = InvalidSmilesException.class)
+    public void lazyStereoStrict() throws IOException {
+        SmilesParser strict = new SmilesParser(true);
+        strict.setStereo(SmilesParser.Stereo.Lazy);
+        strict.parse("C[Co@OH1]");
+    }
+
+    @Test public void ignoreStereo() throws IOException {
+        SmilesParser parser = new SmilesParser();
+        parser.setStereo(SmilesParser.Stereo.Ignore);
+        SmilesParser eager = new SmilesParser();
+        for (String smi : STEREO) {
+            Graph g = parser.parse(smi);
+            assertThat(g.getFlags(Graph.HAS_STRO), is(0));
+            for (int u = 0; u < g.order(); u++)
+                assertThat(g.topologyOf(u), is(Topology.unknown()));
+            for (Edge e : g.edges())
+                assertFalse(e.bond().directional());
+            assertThat(g.toSmiles(), is(stripStereo(eager.parse(smi).toSmiles())));
+        }
+    }
+
+    @Test public void ignoreStereoAromaticDirectional() throws IOException {
+        SmilesParser parser = new SmilesParser();
+        parser.setStereo(SmilesParser.Stereo.Ignore);
+        assertThat(parser.parse("c1ccccc1/c1ccccc1").toSmiles(), is("c1ccccc1-c2ccccc2"));
+        assertThat(parser.parse("C/1=C/CCCCCC1").toSmiles(), is("C1=CCCCCCC1"));
+    }
+
+    @Test public void ignoreStereoStillValidated() throws IOException {
+        SmilesParser parser = new SmilesParser();
+        parser.setStereo(SmilesParser.Stereo.Ignore);
+        assertThat(parser.validate("C/=C"), is(SmilesParser.ErrorCode.InvalidBond));
+        assertThat(parser.validate("[C@TH3]"), is(SmilesParser.ErrorCode.InvalidStereo));
+    }
+
+    /** The same errors and locations are found as when parsing. */
+    @Test public void validateMatchesParse() {
+        String[] smis = {"CC?C", "C1CCC", "CC(C", "CC)C", "(C)C", "C=#C", "C.=C",
+                         "C1.1", "1CC", "C%", "C%5C%5", "C11", "C12CCCCC12",
+                         "C=1CCCCC#1", "C/1CCCCC/1", "C[C", "[CH4", "[C:]",
+                         "[C@T]", "[C@TH3]", "[C@TB21]", "[C@DB]", "[C@AL3]",
+                         "[C@SP]", "[C@OH31]", "[Xx]", "[te]", "HH", "DC",
+                         "C=[C@DB1]", "[Co@TB1]F", "C[C@@]1CC1", "F[Co@SP1](F)F",
+                         "C/C=C(/F)/F", "CC=[C@AL1]=CC", "C[C@H](O)N"};
+        for (boolean strict : new boolean[]{false, true}) {
+            SmilesParser parser = new SmilesParser(strict);
+            for (String smi : smis) {
+                SmilesParser.ErrorCode code   = SmilesParser.ErrorCode.None;
+                int                    offset = -1;
+                try {
+                    parser.parse(smi);
+                } catch (InvalidSmilesException e) {
+                    code = e.code();
+                    offset = e.offset();
+                }
+                assertThat(smi, parser.validate(smi), is(code));
+                assertThat(smi, parser.errorOffset(), is(offset));
+            }
+        }
+    }
+
+    /** Every error is located at a character of the input. */
+    @Test public void errorOffsetInRange() {
+        String[] smis = {"CC?C", "C1CCC", "CC(C", "CC)C", "(C)C", "C=#C", "C.=C",
+                         "C.1", "C1CC.1", "C1.1", "1CC", "C%", "C%5C%5", "C11",
+                         "C12CCCCC12", "C=1CCCCC#1", "C/1CCCCC/1", "C[", "C[C",
+                         "[CH4", "[C:]", "C[foo", "C[foo[bar]", "[C@T]", "[C@TH3]",
+                         "[C@TB21]", "[C@DB]", "[C@AL3]", "[C@SP]", "[C@OH31]",
+                         "[Xx]", "[te]", "HH", "DC", "C=[C@DB1]", "[Co@TB1]F",
+                         "C[C@@]1CC1", "F[Co@SP1](F)F", "C/C=C(/F)/F",
+                         "CC=[C@AL1]=CC", "C[C@H](O)N", "CC[C@H](O)N CC?C"};
+        for (boolean strict : new boolean[]{false, true}) {
+            SmilesParser parser = new SmilesParser(strict);
+            for (String smi : smis) {
+                if (parser.validate(smi) == SmilesParser.ErrorCode.None)
+                    continue;
+                assertThat(smi, parser.errorOffset() >= 0 && parser.errorOffset() < smi.length(), is(true));
+                try {
+                    parser.parse(smi);
+                    fail(smi);
+                } catch (InvalidSmilesException e) {
+                    assertThat(smi, e.offset(), is(parser.errorOffset()));
+                }
+            }
+        }
+        SmilesParser parser = new SmilesParser();
+        parser.validate("C.1");
+        assertThat(parser.errorOffset(), is(2));
+        parser.validate("C1CC.1");
+        assertThat(parser.errorOffset(), is(5));
+        parser.validate("C[foo");
+        assertThat(parser.errorOffset(), is(1));
+        parser.validate("C[C@TH3]");
+        assertThat(parser.errorOffset(), is(5));
+        parser.validate("[Co@TB1]F");
+        assertThat(parser.errorOffset(), is(3));
+    }
+
+    /** Stereo is checked eagerly when validating, whatever the stereo mode. */
+    @Test public void validateIgnoresStereoMode() throws IOException {
+        String[] smis = {"C=[C@DB1]", "[Co@TB1]F", "C/C=C(/F)/F", "C[C@@]1CC1",
+                         "CC=[C@AL1]=CC", "C[C@H](O)N", "F/C=C/F"};
+        for (boolean strict : new boolean[]{false, true}) {
+            SmilesParser eager = new SmilesParser(strict);
+            for (SmilesParser.Stereo mode : SmilesParser.Stereo.values()) {
+                SmilesParser parser = new SmilesParser(strict);
+                parser.setStereo(mode);
+                for (String smi : smis)
+                    assertThat(smi + " " + mode, parser.validate(smi), is(eager.validate(smi)));
+            }
+        }
+        assertThat(new SmilesParser().validate("[Co@TB1]F"), is(SmilesParser.ErrorCode.InvalidStereo));
+        assertThat(new SmilesParser(true).validate("C/C=C(/F)/F"), is(SmilesParser.ErrorCode.InvalidStereo));
+
+        // the mode is restored after validating
+        SmilesParser parser = new SmilesParser();
+        parser.setStereo(SmilesParser.Stereo.Ignore);
+        assertThat(parser.validate("[Co@TB1]F"), is(SmilesParser.ErrorCode.InvalidStereo));
+        assertThat(parser.parse("[Co@TB1]F").toSmiles(), is("[Co]F"));
+    }
+
+    private static String stripStereo(String smi) {
+        return smi.replace("/", "").replace("\\", "").replaceAll("@+(TH|AL|SP|TB|OH)?[0-9]*", "");
+    }
+}
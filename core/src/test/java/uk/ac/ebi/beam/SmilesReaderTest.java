@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2013, European Bioinformatics Institute (EMBL-EBI)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+
+package uk.ac.ebi.beam;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/** @author John May */
+public class SmilesReaderTest {
+
+    private static final String INPUT = "CCO ethanol\nc1ccccc1\tbenzene\r\n[Na+].[Cl-] salt\n\nC[C@H](N)O";
+
+    @Test public void readBytes() throws IOException {
+        assertRecords(bytes(INPUT, 64 * 1024));
+    }
+
+    @Test public void readChars() throws IOException {
+        assertRecords(new SmilesReader(new StringReader(INPUT)));
+    }
+
+    /** block smaller than a record must grow */
+    @Test public void smallBlock() throws IOException {
+        assertRecords(bytes(INPUT, 2));
+        assertRecords(new SmilesReader(new SmilesReader.CharBlock(new StringReader(INPUT), 3),
+                                       SmilesReader.ErrorPolicy.Throw));
+    }
+
+    @Test public void readPath() throws IOException {
+        Path path = Files.createTempFile("beam", ".smi");
+        try {
+            Files.write(path, INPUT.getBytes(StandardCharsets.UTF_8));
+            assertRecords(new SmilesReader(path));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test public void utf8Title() throws IOException {
+        SmilesReader rdr = bytes("CCéthane\nCC éthane\n", 4);
+        try {
+            rdr.read();
+            fail("expected invalid SMILES");
+        } catch (InvalidSmilesException e) {
+            // expected
+        }
+        assertThat(rdr.read().toSmiles(), is("CC"));
+        assertThat(rdr.title(), is("éthane"));
+    }
+
+    @Test public void throwOnError() throws IOException {
+        SmilesReader rdr = bytes("CCO\nC1CC\nCCN\n", 4);
+        assertThat(rdr.read().toSmiles(), is("CCO"));
+        try {
+            rdr.read();
+            fail("expected invalid SMILES");
+        } catch (InvalidSmilesException e) {
+            assertThat(e.getMessage(), is("Unclosed ring detected, SMILES may be truncated:\nC1CC\n   ^"));
+        }
+        assertThat(rdr.lineNumber(), is(2L));
+        assertThat(rdr.read().toSmiles(), is("CCN"));
+        assertThat(rdr.read(), is(nullValue()));
+    }
+
+    /** The message is built later but shows the record as it was read. */
+    @Test public void errorMessageAfterBlockReused() throws IOException {
+        SmilesReader rdr = new SmilesReader(new SmilesReader.CharBlock(new StringReader("C1CC\nNNNN\nOOOO\n"), 4),
+                                            SmilesReader.ErrorPolicy.Throw);
+        InvalidSmilesException err = null;
+        try {
+            rdr.read();
+            fail("expected invalid SMILES");
+        } catch (InvalidSmilesException e) {
+            err = e;
+        }
+        assertThat(rdr.read().toSmiles(), is("NNNN"));
+        assertThat(rdr.read().toSmiles(), is("OOOO"));
+        assertThat(err.getMessage(), is("Unclosed ring detected, SMILES may be truncated:\nC1CC\n   ^"));
+    }
+
+    /** A warning kept after reading on shows the record it came from. */
+    @Test public void warningAfterBlockReused() throws IOException {
+        SmilesReader rdr = new SmilesReader(new SmilesReader.CharBlock(new StringReader("C/C=C(/F)/F\nCCCCCCCCCCC\n"), 4),
+                                            SmilesReader.ErrorPolicy.Throw);
+        rdr.read();
+        List<ParseWarning> warnings = new ArrayList<>(rdr.warnings());
+        assertThat(warnings.size(), is(1));
+        assertThat(rdr.read().toSmiles(), is("CCCCCCCCCCC"));
+        SmilesParser parser = new SmilesParser();
+        parser.parse("C/C=C(/F)/F");
+        assertThat(warnings.get(0).message(), is(parser.warnings().get(0).message()));
+    }
+
+    @Test public void skipOnError() throws IOException {
+        SmilesReader rdr = new SmilesReader(new ByteArrayInputStream("CCO\nC1CC\nC(C\nCCN a\n".getBytes(StandardCharsets.US_ASCII)),
+                                            SmilesReader.ErrorPolicy.Skip);
+        assertThat(rdr.read().toSmiles(), is("CCO"));
+        assertThat(rdr.read().toSmiles(), is("CCN"));
+        assertThat(rdr.title(), is("a"));
+        assertThat(rdr.lineNumber(), is(4L));
+        assertThat(rdr.skipped(), is(2L));
+        assertThat(rdr.read(), is(nullValue()));
+    }
+
+    @Test public void iterate() throws IOException {
+        List<String> smis = new ArrayList<String>();
+        List<String> titles = new ArrayList<String>();
+        SmilesReader rdr = bytes(INPUT, 5);
+        while (rdr.hasNext()) {
+            smis.add(rdr.next().toSmiles());
+            titles.add(rdr.title());
+        }
+        assertThat(smis, is(Arrays.asList("CCO", "c1ccccc1", "[Na+].[Cl-]", "", "C[C@H](N)O")));
+        assertThat(titles, is(Arrays.asList("ethanol", "benzene", "salt", null, null)));
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void iterateInvalid() {
+        SmilesReader rdr = bytes("CCO\nC1CC\n", 5);
+        while (rdr.hasNext())
+            rdr.next();
+    }
+
+    @Test public void graphTitleNotSet() throws IOException {
+        SmilesReader rdr = bytes("CCO ethanol", 8);
+        assertThat(rdr.read().getTitle(), is(nullValue()));
+        assertThat(rdr.title(), is("ethanol"));
+    }
+
+    private static void assertRecords(SmilesReader rdr) throws IOException {
+        assertThat(rdr.read().toSmiles(), is("CCO"));
+        assertThat(rdr.title(), is("ethanol"));
+        assertThat(rdr.read().toSmiles(), is("c1ccccc1"));
+        assertThat(rdr.title(), is("benzene"));
+        assertThat(rdr.read().toSmiles(), is("[Na+].[Cl-]"));
+        assertThat(rdr.title(), is("salt"));
+        assertThat(rdr.read().order(), is(0));
+        assertThat(rdr.title(), is(nullValue()));
+        assertThat(rdr.read().toSmiles(), is("C[C@H](N)O"));
+        assertThat(rdr.title(), is(nullValue()));
+        assertThat(rdr.lineNumber(), is(5L));
+        assertThat(rdr.read(), is(nullValue()));
+        assertThat(rdr.read(), is(nullValue()));
+        rdr.close();
+    }
+
+    private static SmilesReader bytes(String str, int blockSize) {
+        return new SmilesReader(new SmilesReader.ByteBlock(new ByteArrayInputStream(str.getBytes(StandardCharsets.UTF_8)), blockSize),
+                                SmilesReader.ErrorPolicy.Throw);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2013, European Bioinformatics Institute (EMBL-EBI)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+
+package uk.ac.ebi.beam;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author John May
+ */
+public class SmilesWriterTest {
+
+    private static final String[] INPUT = {
+            "CCO",
+            "c1ccccc1",
+            "C[C@@H](O)CC",
+            "F/C=C/F",
+            "C1CC2CCC1CC2.[Na+].[Cl-]",
+            "[13CH4]",
+            "C12C3C4C1C5C2C3C45",
+            "O=C(O)[C@H](N)C/C=C\\CC1CC1"
+    };
+
+    @Test public void reuse() throws IOException {
+        SmilesWriter writer = new SmilesWriter();
+        for (int i = 0; i < 3; i++) {
+            for (String smi : INPUT) {
+                Graph g = Graph.fromSmiles(smi);
+                assertThat(writer.toSmiles(g), is(g.toSmiles()));
+            }
+        }
+    }
+
+    @Test public void appendToStringBuilder() throws IOException {
+        SmilesWriter  writer = new SmilesWriter();
+        StringBuilder sb     = new StringBuilder();
+        for (String smi : INPUT)
+            writer.write(Graph.fromSmiles(smi), sb).append('\n');
+        StringBuilder expected = new StringBuilder();
+        for (String smi : INPUT)
+            expected.append(Graph.fromSmiles(smi).toSmiles()).append('\n');
+        assertThat(sb.toString(), is(expected.toString()));
+    }
+
+    @Test public void appendToWriter() throws IOException {
+        SmilesWriter writer = new SmilesWriter();
+        StringWriter sw     = new StringWriter();
+        writer.write(Graph.fromSmiles("CCO"), sw).append(' ');
+        writer.write(Graph.fromSmiles("c1ccccc1"), sw);
+        assertThat(sw.toString(), is("CCO c1ccccc1"));
+    }
+
+    @Test public void writeBytes() throws IOException {
+        SmilesWriter writer = new SmilesWriter();
+        byte[]       buf    = new byte[16];
+        int          len    = writer.write(Graph.fromSmiles("CCO"), buf, 0);
+        len += writer.write(Graph.fromSmiles("[NH4+]"), buf, len);
+        assertThat(new String(buf, 0, len, StandardCharsets.US_ASCII), is("CCO[NH4+]"));
+    }
+
+    @Test public void writeBytesOverflow() throws IOException {
+        SmilesWriter writer = new SmilesWriter();
+        byte[]       buf    = new byte[4];
+        try {
+            writer.write(Graph.fromSmiles("CCCCC"), buf, 0);
+            fail("SMILES should not fit");
+        } catch (BufferOverflowException e) {
+            // expected
+        }
+        assertThat(buf, is(new byte[4]));
+    }
+
+    @Test public void writeByteBuffer() throws IOException {
+        SmilesWriter writer = new SmilesWriter();
+        ByteBuffer   bb     = ByteBuffer.allocate(8);
+        assertThat(writer.write(Graph.fromSmiles("CCO"), bb), is(3));
+        try {
+            writer.write(Graph.fromSmiles("c1ccccc1"), bb);
+            fail("SMILES should not fit");
+        } catch (BufferOverflowException e) {
+            // expected
+        }
+        assertThat(bb.position(), is(3));
+        bb.flip();
+        assertThat(StandardCharsets.US_ASCII.decode(bb).toString(), is("CCO"));
+    }
+
+    @Test public void recoverFromInvalid() throws IOException {
+        SmilesWriter  writer = new SmilesWriter();
+        StringBuilder sb     = new StringBuilder("ring:");
+        // more than 99 open ring closures can not be written
+        GraphBuilder gb = GraphBuilder.create(120);
+        for (int i = 0; i < 120; i++)
+            gb.add(AtomImpl.AliphaticSubset.Carbon);
+        for (int i = 1; i < 120; i++)
+            gb.add(0, i);
+        for (int i = 1; i < 119; i++)
+            gb.add(i, i + 1);
+        gb.add(119, 1);
+        try {
+            writer.write(gb.build(), sb);
+            fail("ring numbers should be exhausted");
+        } catch (InvalidSmilesException e) {
+            // expected
+        }
+        assertThat(sb.toString(), is("ring:"));
+        assertThat(writer.toSmiles(Graph.fromSmiles("C1CC1")), is("C1CC1"));
+    }
+}
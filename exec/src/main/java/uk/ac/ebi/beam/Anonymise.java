@@ -25,7 +25,7 @@ public final class Anonymise extends FunctorCmdLnModule {
         final boolean bondorders = optionSet.has("bo");
         return new Functor() {
             @Override
-            String map(String str) throws IOException {
+            Graph map(String str) throws IOException {
 
                 Graph g = Graph.fromSmiles(str);
 
@@ -36,7 +36,8 @@ public final class Anonymise extends FunctorCmdLnModule {
 
                 for (int v = 0; v < g.order(); v++) {
                     gb.add(UNKN_ATOM);
-                    for (Edge e : g.edges(v)) {
+                    for (int j = 0; j < g.degree(v); j++) {
+                        Edge e = g.edgeAt(v, j);
                         if (e.other(v) < v) {
                             if (bondorders)
                                 gb.add(new Edge(v, e.other(v), bondForOrder(e.bond().order())));
@@ -46,7 +47,7 @@ public final class Anonymise extends FunctorCmdLnModule {
                     }
                 }
 
-                return gb.build().toSmiles() + suffixedId(str);
+                return gb.build();
             }
         };
     }
@@ -22,8 +22,8 @@ public final class Aromatise extends FunctorCmdLnModule {
     Functor createFunctor(OptionSet optionSet) {
         return new Functor() {
             @Override
-            String map(String str) throws IOException {
-                return Graph.fromSmiles(str).kekule().aromatic().toSmiles() + suffixedId(str);
+            Graph map(String str) throws IOException {
+                return Graph.fromSmiles(str).kekule().aromatic();
             }
         };
     }
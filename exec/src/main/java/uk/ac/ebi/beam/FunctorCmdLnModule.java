@@ -7,7 +7,7 @@ package uk.ac.ebi.beam;
 import joptsimple.OptionSet;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -40,7 +40,8 @@ abstract class FunctorCmdLnModule extends PipingCmdLnModule {
 
     /**
      * Create a new functor for mapping some input (consumed) to an output (produced). The function
-     * will be shared between threads and should not hold modify state during mapping.
+     * will be shared between threads and should not hold modify state during mapping. The SMILES
+     * of the output is written followed by the ID of the input line.
      *
      * @param optionSet options
      * @return the functor
@@ -51,11 +52,11 @@ abstract class FunctorCmdLnModule extends PipingCmdLnModule {
      * Consumes
      *
      * @param brdr   input reader (UTF-8)
-     * @param bwtr   output reader (UTF-8)
+     * @param out    output SMILES stream
      * @param optset options for the module
      * @throws IOException
      */
-    @Override void process(BufferedReader brdr, BufferedWriter bwtr, InputCounter inputCounter, OptionSet optset) throws IOException {
+    @Override void process(BufferedReader brdr, SmilesOutputStream out, InputCounter inputCounter, OptionSet optset) throws IOException {
 
         final int numThreads = (Integer) optset.valueOf("t");
 
@@ -63,14 +64,14 @@ abstract class FunctorCmdLnModule extends PipingCmdLnModule {
             report("num_threads: %d\n", numThreads);
 
         if (numThreads > 1) {
-            processMultiThreaded(brdr, bwtr, inputCounter, optset, numThreads);
+            processMultiThreaded(brdr, out, inputCounter, optset, numThreads);
         }
         else {
-            processSingle(brdr, bwtr, inputCounter, optset);
+            processSingle(brdr, out, inputCounter, optset);
         }
     }
 
-    private void processSingle(BufferedReader brdr, BufferedWriter bwtr, InputCounter inputCounter, OptionSet optset) throws IOException {
+    private void processSingle(BufferedReader brdr, SmilesOutputStream out, InputCounter inputCounter, OptionSet optset) throws IOException {
         final long tStart = System.nanoTime();
         final boolean showProgress = !optset.has("prog-off");
         final boolean showWarnings    = !optset.has("no-warn");
@@ -81,8 +82,7 @@ abstract class FunctorCmdLnModule extends PipingCmdLnModule {
         int cnt = 0;
         while ((line = brdr.readLine()) != null) {
             try {
-                bwtr.write(functor.map(line));
-                bwtr.newLine();
+                out.write(functor.map(line), suffixedId(line));
                 if (showProgress && ++cnt % 2500 == 0) {
                     report("%d " + makeProgStr(inputCounter.count(),
                                                inputCounter.total(),
@@ -102,7 +102,7 @@ abstract class FunctorCmdLnModule extends PipingCmdLnModule {
             report("%d " + makeProgStr(inputCounter.count(), inputCounter.total(), elapsedMilli(tStart)) + "\n", cnt);
     }
 
-    private void processMultiThreaded(BufferedReader brdr, BufferedWriter bwtr,
+    private void processMultiThreaded(BufferedReader brdr, SmilesOutputStream out,
                                       InputCounter inputCounter, OptionSet optset,
                                       int numThreads) throws IOException {
 
@@ -136,7 +136,7 @@ abstract class FunctorCmdLnModule extends PipingCmdLnModule {
                         Result result = getResult(future);
                         if (result == null)
                             throw new InternalError("Could not get thread result");
-                        cnt += output(bwtr, result);
+                        cnt += output(out, result);
                         inputCount = undateInputCount(inputCount, result);
                         if (showProgress)
                             report("%d " + makeProgStr(inputCount,
@@ -163,7 +163,7 @@ abstract class FunctorCmdLnModule extends PipingCmdLnModule {
                     Result result = getResult(future);
                     if (result == null)
                         throw new InternalError("Could not get thread result");
-                    cnt += output(bwtr, result);
+                    cnt += output(out, result);
                     inputCount = undateInputCount(inputCount, result);
                     if (showProgress)
                         report("%d " + makeProgStr(inputCount, inputCounter.total(), elapsedMilli(tStart)), cnt);
@@ -210,16 +210,10 @@ abstract class FunctorCmdLnModule extends PipingCmdLnModule {
         return inputCount;
     }
 
-    private int output(BufferedWriter bwtr, Result res) {
+    private int output(SmilesOutputStream out, Result res) {
         try {
-            int cnt = 0;
-            for (String str : res.lines) {
-                if (str == null) continue;
-                bwtr.write(str);
-                bwtr.newLine();
-                ++cnt;
-            }
-            return cnt;
+            res.bytes.writeTo(out);
+            return res.count;
         } catch (IOException e) {
             System.err.println("IO Error: " + e.getMessage());
         }
@@ -236,11 +230,13 @@ abstract class FunctorCmdLnModule extends PipingCmdLnModule {
     }
 
     private final class Result {
-        List<String> lines;
-        long         inputSize;
+        ByteArrayOutputStream bytes;
+        int                   count;
+        long                  inputSize;
 
-        public Result(List<String> lines, long inputSize) {
-            this.lines = lines;
+        public Result(ByteArrayOutputStream bytes, int count, long inputSize) {
+            this.bytes = bytes;
+            this.count = count;
             this.inputSize = inputSize;
         }
     }
@@ -260,21 +256,23 @@ abstract class FunctorCmdLnModule extends PipingCmdLnModule {
         }
 
         @Override
-        public Result call() {
-            int n = lines.size();
-            for (int i = 0; i < n; i++) {
-                String line = lines.get(i);
+        public Result call() throws IOException {
+            // the output of each unit is encoded in the worker thread
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * lines.size());
+            final SmilesOutputStream    out   = new SmilesOutputStream(bytes, 16 * 1024);
+            int cnt = 0;
+            for (String line : lines) {
                 try {
-                    lines.set(i,
-                              functor.map(line));
+                    out.write(functor.map(line), suffixedId(line));
+                    ++cnt;
                 } catch (Exception e) {
                     if (warn) {
-                        report("\nerror, " + e.getMessage() + "\nline:" + escapeForPrintf(lines.get(i)) + "\n");
+                        report("\nerror, " + e.getMessage() + "\nline:" + escapeForPrintf(line) + "\n");
                     }
-                    lines.set(i, null);
                 }
             }
-            return new Result(lines, inputSize);
+            out.flush();
+            return new Result(bytes, cnt, inputSize);
         }
     }
     
@@ -283,6 +281,6 @@ abstract class FunctorCmdLnModule extends PipingCmdLnModule {
     }
 
     abstract class Functor {
-        abstract String map(String str) throws IOException;
+        abstract Graph map(String str) throws IOException;
     }
 }
@@ -9,6 +9,7 @@ import joptsimple.OptionSet;
 
 import java.io.*;
 import java.nio.charset.Charset;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -16,8 +17,9 @@ import java.util.concurrent.TimeUnit;
 /**
  * An abstract module providing much of the boiler plate to implement a simple command line module
  * that consumes from one file (or stream) out produces another. <br> To use the module simply
- * extend it and implement the {@link #process(BufferedReader, BufferedWriter, InputCounter,
- * OptionSet)} method.
+ * extend it and implement the {@link #process(BufferedReader, SmilesOutputStream, InputCounter,
+ * OptionSet)} method. Output is written with a {@link SmilesOutputStream}, lines end with '\n'
+ * rather than the platform line separator.
  */
 public abstract class PipingCmdLnModule implements CmdLnModule {
 
@@ -82,8 +84,8 @@ public abstract class PipingCmdLnModule implements CmdLnModule {
                                            : null;
 
         try (InputStream in = fin == null ? System.in : new CountingInputStream(fin);
-             OutputStream out = nonopt.size() < 2 ? System.out : new FileOutputStream(nonopt.get(1).toString());
-             BufferedWriter bwtr = new BufferedWriter(new OutputStreamWriter(out, UTF_8));
+             SmilesOutputStream out = nonopt.size() < 2 ? new SmilesOutputStream(System.out)
+                                                        : new SmilesOutputStream(Paths.get(nonopt.get(1).toString()));
              BufferedReader brdr = new BufferedReader(new InputStreamReader(in, UTF_8))) {
 
             InputCounter nonFileCounter = new InputCounter() {
@@ -99,7 +101,7 @@ public abstract class PipingCmdLnModule implements CmdLnModule {
                     ? nonFileCounter
                     : (CountingInputStream) in;
 
-            process(brdr, bwtr, inputCounter, optset);
+            process(brdr, out, inputCounter, optset);
         }
     }
 
@@ -108,12 +110,12 @@ public abstract class PipingCmdLnModule implements CmdLnModule {
      * line-by-line).
      *
      * @param brdr   input reader (UTF-8)
-     * @param bwtr   output reader (UTF-8)
+     * @param out    output SMILES stream
      * @param optset options for the module
      * @throws IOException low-level error, SMILES syntax errors etc should normally be skipped and
      *                     usually reported
      */
-    abstract void process(final BufferedReader brdr, final BufferedWriter bwtr, final InputCounter inputCounter, OptionSet optset) throws IOException;
+    abstract void process(final BufferedReader brdr, final SmilesOutputStream out, final InputCounter inputCounter, OptionSet optset) throws IOException;
 
     /**
      * Reports a message to standard error prefixing the module name. The syntax is essentially
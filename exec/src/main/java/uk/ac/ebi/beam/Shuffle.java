@@ -25,7 +25,7 @@ public class Shuffle extends PipingCmdLnModule {
     }
 
     @Override
-    void process(BufferedReader brdr, BufferedWriter bwtr, InputCounter counter, OptionSet optset) throws IOException {
+    void process(BufferedReader brdr, SmilesOutputStream out, InputCounter counter, OptionSet optset) throws IOException {
 
         final int num = (Integer) optset.valueOf("n");
         final int max = (Integer) optset.valueOf("m");
@@ -37,8 +37,7 @@ public class Shuffle extends PipingCmdLnModule {
             try {
                 final String id = suffixedId(line);
                 for (String str : generate(line, num, max)) {
-                    bwtr.write(str + id);
-                    bwtr.newLine();
+                    out.write(str, id);
                     ++gencnt;
                 }
                 if (progress && ++cnt % 2500 == 0)
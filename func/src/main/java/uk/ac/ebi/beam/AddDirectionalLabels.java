@@ -29,13 +29,7 @@
 
 package uk.ac.ebi.beam;
 
-import java.util.ArrayList;
 import java.util.BitSet;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 /**
  * Given a molecule with bond-based double bond configurations - add directional labels to edges
@@ -68,7 +62,9 @@ final class AddDirectionalLabels
     public Graph apply(final Graph g)
             throws InvalidSmilesException {
 
-        List<Edge> doublebonds = new ArrayList<>();
+        // double bonds and replacements are indexed by edge id
+        final Edge[] doublebonds = new Edge[g.size()];
+        final BitSet remain      = new BitSet();
 
         // change edges (only changed added to replacement)
         for (int u = 0; u < g.order(); u++) {
@@ -79,55 +75,56 @@ final class AddDirectionalLabels
                 if (v > u && e.bond() == Bond.DOUBLE) {
                     if (g.degree(u) < 2 || g.degree(v) < 2)
                         continue;
-                    if (g.degree(u) + g.degree(v) > 4)
-                        doublebonds.add(e);
+                    if (g.degree(u) + g.degree(v) > 4) {
+                        int id = g.edgeId(u, j);
+                        doublebonds[id] = e;
+                        remain.set(id);
+                    }
                 }
             }
         }
         
-        if (doublebonds.isEmpty())
+        final int n = remain.cardinality();
+        if (n == 0)
             return g;
 
-        final Set<Edge>       remain       = new HashSet<>(doublebonds);
-        final Map<Edge, Edge> replacements = new HashMap<>();
+        final Edge[] replacements = new Edge[g.size()];
 
+        // visit from the last double bond, a conflict found when visiting
+        // an earlier bond then flips the labels of the later bond
         boolean altered;
-        final Set<Edge> completed = new HashSet<>();
         do {
             altered = false;
-            for (final Edge e : remain) {
-                Status status = replaceImplWithExpl(g, e, replacements);
+            for (int id = remain.previousSetBit(g.size() - 1); id >= 0; id = remain.previousSetBit(id - 1)) {
+                Status status = replaceImplWithExpl(g, doublebonds[id], replacements);
                 if (status != Status.WAITING) {
-                    completed.add(e);
+                    remain.clear(id);
                     altered = true;
                 }
             }
-            remain.removeAll(completed);
-            completed.clear();
         } while (altered && !remain.isEmpty());
         
         // completed bonds, we can't do anything
-        if (remain.size() == doublebonds.size())
+        if (remain.cardinality() == n)
             return g;
         
         // cleanup any remaining edges that have 'dangling' directional labels
-        for (Edge e : remain) {
+        for (int id = remain.nextSetBit(0); id >= 0; id = remain.nextSetBit(id + 1)) {
+            Edge e = doublebonds[id];
             int u = e.either();
             int v = e.other(u);
             final int d = g.degree(u);
             for (int j = 0; j < d; ++j) {
                 final Edge f = g.edgeAt(u, j);
-                if (isDirectional(f, replacements) && safeToClean(g, f.other(u), replacements)) {
-                    replacements.put(f,
-                                     new Edge(u, f.other(u), Bond.IMPLICIT));
+                if (isDirectional(g, u, j, replacements) && safeToClean(g, f.other(u), replacements)) {
+                    replacements[g.edgeId(u, j)] = new Edge(u, f.other(u), Bond.IMPLICIT);
                 }
             }
             final int d2 = g.degree(v);
             for (int j = 0; j < d2; ++j) {
                 final Edge f = g.edgeAt(v, j);
-                if (isDirectional(f, replacements) && safeToClean(g, f.other(v), replacements))
-                    replacements.put(f,
-                                     new Edge(v, f.other(v), Bond.IMPLICIT));
+                if (isDirectional(g, v, j, replacements) && safeToClean(g, f.other(v), replacements))
+                    replacements[g.edgeId(v, j)] = new Edge(v, f.other(v), Bond.IMPLICIT);
             }
         }
 
@@ -146,7 +143,7 @@ final class AddDirectionalLabels
             for (int j = 0; j < d; ++j) {
                 Edge e = g.edgeAt(u, j);
                 if (e.other(u) < u) {
-                    Edge replacement = replacements.get(e);
+                    Edge replacement = replacements[g.edgeId(u, j)];
                     if (replacement != null)
                         e = replacement;
                     h.addEdge(e);
@@ -157,14 +154,14 @@ final class AddDirectionalLabels
         return h.sort(new Graph.CanOrderFirst());
     }
 
-    private boolean isDirectional(Edge f, Map<Edge,Edge> replacements) {
-        if (f.bond().directional())
+    private boolean isDirectional(Graph g, int u, int j, Edge[] replacements) {
+        if (g.edgeAt(u, j).bond().directional())
             return true;
-        Edge g = replacements.get(f);
-        return g != null && g.bond().directional();
+        Edge f = replacements[g.edgeId(u, j)];
+        return f != null && f.bond().directional();
     }
 
-    boolean safeToClean(Graph g, int v, Map<Edge,Edge> replacements) {
+    boolean safeToClean(Graph g, int v, Edge[] replacements) {
         final int d = g.degree(v);
         for (int j = 0; j < d; ++j) {
             final Edge e = g.edgeAt(v, j);
@@ -172,8 +169,7 @@ final class AddDirectionalLabels
                 int w = e.other(v);
                 final int d2 = g.degree(w);
                 for (int j2 = 0; j2 < d2; ++j2) {
-                    final Edge f = g.edgeAt(w, j2);
-                    if (isDirectional(f, replacements))
+                    if (isDirectional(g, w, j2, replacements))
                         return false;
                 }
             }
@@ -192,7 +188,7 @@ final class AddDirectionalLabels
      */
     private Status replaceImplWithExpl(Graph g,
                                        Edge e,
-                                       Map<Edge, Edge> acc)
+                                       Edge[] acc)
             throws InvalidSmilesException {
         
         int u = e.either(), v = e.other(u);
@@ -224,14 +220,17 @@ final class AddDirectionalLabels
     private Status replaceImplWithExpl(Graph g,
                                        Edge e,
                                        int u,
-                                       Map<Edge, Edge> acc)
+                                       Edge[] acc)
             throws InvalidSmilesException {
 
         Edge implicit = null;
         Edge explicit = null;
+        int  implicitId = -1, explicitId = -1;
 
-        for (Edge f : g.edges(u)) {
-            final Edge f2 = acc.containsKey(f) ? acc.get(f) : f;
+        for (int j = 0; j < g.degree(u); j++) {
+            Edge f = g.edgeAt(u, j);
+            final int id = g.edgeId(u, j);
+            final Edge f2 = acc[id] != null ? acc[id] : f;
             switch (f2.bond(u)) {
                 case SINGLE:
                 case IMPLICIT:
@@ -239,6 +238,7 @@ final class AddDirectionalLabels
                     if (implicit != null)
                         return Status.WAITING;
                     implicit = f;
+                    implicitId = id;
                     break;
                 case DOUBLE:
                 case DOUBLE_AROMATIC:
@@ -251,8 +251,8 @@ final class AddDirectionalLabels
                 case DOWN_AROMATIC:
                     if (explicit != null) {
 
-                        if (acc.containsKey(explicit))
-                            explicit = acc.get(explicit);
+                        if (acc[explicitId] != null)
+                            explicit = acc[explicitId];
 
                         // original bonds are invalid
                         if ((f.bond().directional()) && explicit.bond(u).inverse() != f.bond(u)) {
@@ -260,7 +260,7 @@ final class AddDirectionalLabels
                         }
                         
                         if (explicit.bond(u).inverse() != f2.bond(u)) {
-                            acc.put(f, f2.inverse());
+                            acc[id] = f2.inverse();
                             BitSet visited = new BitSet();
                             visited.set(u);
                             invertExistingDirectionalLabels(g, visited, acc, f2
@@ -269,6 +269,7 @@ final class AddDirectionalLabels
                         return Status.COMPLETED;
                     }
                     explicit = f;
+                    explicitId = id;
                     break;
             }
         }
@@ -280,15 +281,16 @@ final class AddDirectionalLabels
         if (explicit == null)
             return Status.WAITING;
         
-        if (acc.containsKey(explicit))
-            explicit = acc.get(explicit);
+        if (acc[explicitId] != null)
+            explicit = acc[explicitId];
 
         int v = implicit.other(u);
 
-        Edge existing = acc.put(implicit, new Edge(u,
-                                                   v,
-                                                   explicit.bond(u)
-                                                           .inverse()));
+        Edge existing = acc[implicitId];
+        acc[implicitId] = new Edge(u,
+                                   v,
+                                   explicit.bond(u)
+                                           .inverse());
 
         if (existing != null && existing.bond(u) != explicit.bond(u).inverse()) {
             throw new InvalidSmilesException("unable to assign explict type for " + implicit);
@@ -299,22 +301,22 @@ final class AddDirectionalLabels
 
     private void invertExistingDirectionalLabels(Graph g,
                                                  BitSet visited,
-                                                 Map<Edge, Edge> replacement,
+                                                 Edge[] replacement,
                                                  int u) {
         visited.set(u);
         if (g.topologyOf(u) == null)
             return;
-        for (Edge e : g.edges(u)) {
+        for (int j = 0; j < g.degree(u); j++) {
+            Edge e = g.edgeAt(u, j);
             int v = e.other(u);
             if (!visited.get(v)) {
-                Edge f = replacement.get(e);
+                int id = g.edgeId(u, j);
+                Edge f = replacement[id];
                 if (f != null && f.bond().directional()) {
-                    replacement.put(e,
-                                    f.inverse());
+                    replacement[id] = f.inverse();
                 }
                 else if (e.bond().directional()) {
-                    replacement.put(e,
-                                    e.inverse());
+                    replacement[id] = e.inverse();
                 }
                 invertExistingDirectionalLabels(g, visited, replacement, v);
             }
@@ -47,19 +47,18 @@ final class ExplicitToImplicit
      */
     public Graph apply(final Graph g) {
 
-        Graph h = new Graph(g.order());
-
         // atom/topology information doesn't change
-        for (int u = 0; u < g.order(); u++) {
-            h.addAtom(g.atom(u));
-            h.addTopology(g.topologyOf(u));
-        }
+        Graph h = g.derive();
 
         // transform edges
         for (int u = 0; u < g.order(); u++) {
-            for (final Edge e : g.edges(u)) {
-                if (e.other(u) > u)
-                    h.addEdge(toImplicitEdge(g, e));
+            for (int j = 0; j < g.degree(u); j++) {
+                final Edge e = g.edgeAt(u, j);
+                if (e.other(u) > u) {
+                    final Edge f = toImplicitEdge(g, e);
+                    if (f != e)
+                        h.replace(e, f);
+                }
             }
         }
 
@@ -13,19 +13,18 @@ final class FromSubsetAtoms
 
     public Graph apply(Graph g) {
 
-        Graph h = new Graph(g.order());
+        // edges are unchanged
+        Graph h = g.derive();
 
         for (int u = 0; u < g.order(); u++) {
-            h.addAtom(fromSubset(g.atom(u),
-                                 g.bondedValence(u),
-                                 g.degree(u)));
-            h.addTopology(g.topologyOf(u));
+            Atom a = g.atom(u);
+            Atom b = fromSubset(a,
+                                g.bondedValence(u),
+                                g.degree(u));
+            if (b != a)
+                h.setAtom(u, b);
         }
 
-        // edges are unchanged
-        for (Edge e : g.edges())
-            h.addEdge(e);
-
         return h;
     }
 
@@ -51,11 +50,11 @@ final class FromSubsetAtoms
 //                                            : electrons / 2;
 
 
-        return new AtomImpl.BracketAtom(-1,
-                                        a.element(),
-                                        hCount,
-                                        0,
-                                        0,
-                                        a.aromatic());
+        return AtomImpl.BracketAtom.of(-1,
+                                       a.element(),
+                                       hCount,
+                                       0,
+                                       0,
+                                       a.aromatic());
     }
 }
@@ -1,9 +1,6 @@
 package uk.ac.ebi.beam;
 
 import java.util.BitSet;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 import static uk.ac.ebi.beam.Configuration.Type.DoubleBond;
 
@@ -29,14 +26,15 @@ final class FromTrigonalTopology extends AbstractFunction<Graph,Graph> {
             }
         }
 
-        Map<Edge, Edge> replacements = new Traversal(g).replacement;
+        Edge[] replacements = new Traversal(g).replacement;
 
 
         // append the edges, replacing any which need to be changed
         for (int u = 0; u < g.order(); u++) {
-            for (Edge e : g.edges(u)) {
+            for (int j = 0; j < g.degree(u); j++) {
+                Edge e = g.edgeAt(u, j);
                 if (e.other(u) > u) {
-                    Edge replacement = replacements.get(e);
+                    Edge replacement = replacements[g.edgeId(u, j)];
                     if (replacement != null)
                         e = replacement;
                     h.addEdge(e);
@@ -51,7 +49,8 @@ final class FromTrigonalTopology extends AbstractFunction<Graph,Graph> {
         Atom a = g.atom(u);
 
         int sum = 0;
-        for (Edge e : g.edges(u)) {
+        for (int j = 0; j < g.degree(u); j++) {
+            Edge e = g.edgeAt(u, j);
           sum += e.bond().order();
         }
 
@@ -64,7 +63,7 @@ final class FromTrigonalTopology extends AbstractFunction<Graph,Graph> {
         private final boolean[] visited;
         private final int[]     ordering;
         private       int       i;
-        private Map<Edge, Edge> replacement = new HashMap<Edge, Edge>();
+        private final Edge[]    replacement;
 
         private static final Bond[] labels = new Bond[]{Bond.DOWN, Bond.UP};
 
@@ -72,6 +71,7 @@ final class FromTrigonalTopology extends AbstractFunction<Graph,Graph> {
             this.g = g;
             this.visited = new boolean[g.order()];
             this.ordering = new int[g.order()];
+            this.replacement = new Edge[g.size()];
 
 
             for (int u = 0; u < g.order(); u++) {
@@ -87,9 +87,9 @@ final class FromTrigonalTopology extends AbstractFunction<Graph,Graph> {
             // offset - the index of the edge with a double bond label
             int offset = -1;
 
-            List<Edge> es = g.edges(u);
-            for (int i = 0; i < es.size(); i++) {
-                Edge e = es.get(i);
+            final int d = g.degree(u);
+            for (int i = 0; i < d; i++) {
+                Edge e = g.edgeAt(u, i);
                 int v = e.other(u);
                 if (!visited[v])
                     visit(u, v);
@@ -119,23 +119,25 @@ final class FromTrigonalTopology extends AbstractFunction<Graph,Graph> {
                                                                              : 1;
 
                 // ... and which end of the double bond we're looking from
-                if (ordering[es.get(offset).other(u)] < ordering[u]) {
+                if (ordering[g.edgeAt(u, offset).other(u)] < ordering[u]) {
 
-                } else if (es.size() == 2 &&
-                        ordering[u] < ordering[es.get((offset + 1) % es.size())
+                } else if (d == 2 &&
+                        ordering[u] < ordering[g.edgeAt(u, (offset + 1) % d)
                                                  .other(u)]) {
                     j++;
                 }
 
                 // now create the new labels for the non-double bond atoms
-                for (int i = 1; i < es.size(); i++) {
-                    Edge e = es.get((offset + i) % es.size());
+                for (int i = 1; i < d; i++) {
+                    int k = (offset + i) % d;
+                    Edge e = g.edgeAt(u, k);
+                    int id = g.edgeId(u, k);
                     Bond label = labels[j++ % 2];
 
                     Edge f = new Edge(u,
                                       e.other(u),
                                       label);
-                    Edge existing = replacement.get(e);
+                    Edge existing = replacement[id];
 
                     // check for conflict - need to rewrite existing labels
                     if (existing != null && existing.bond(u) != label) {
@@ -143,7 +145,7 @@ final class FromTrigonalTopology extends AbstractFunction<Graph,Graph> {
                         visited.set(u);
                         invertExistingDirectionalLabels(visited, e.other(u));
                     }
-                    replacement.put(e, f);
+                    replacement[id] = f;
                 }
             }
         }
@@ -152,13 +154,14 @@ final class FromTrigonalTopology extends AbstractFunction<Graph,Graph> {
             visited.set(u);
             if (g.topologyOf(u) == null)
                 return;
-            for (Edge e : g.edges(u)) {
+            for (int j = 0; j < g.degree(u); j++) {
+                Edge e = g.edgeAt(u, j);
                 int v = e.other(u);
                 if (!visited.get(v)) {
-                    Edge f = replacement.get(e);
+                    int id = g.edgeId(u, j);
+                    Edge f = replacement[id];
                     if (f != null) {
-                        replacement.put(e,
-                                        f.inverse());
+                        replacement[id] = f.inverse();
                     }
                     invertExistingDirectionalLabels(visited, v);
                 }
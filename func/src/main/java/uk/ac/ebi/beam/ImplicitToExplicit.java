@@ -46,19 +46,18 @@ final class ImplicitToExplicit extends AbstractFunction<Graph,Graph> {
      */
     public Graph apply(final Graph g) {
 
-        Graph h = new Graph(g.order());
-
-        // copy atom/topology information
-        for (int u = 0; u < g.order(); u++) {
-            h.addAtom(g.atom(u));
-            h.addTopology(g.topologyOf(u));
-        }
+        // atom/topology information doesn't change
+        Graph h = g.derive();
 
         // apply edges
         for (int u = 0; u < g.order(); u++) {
-            for (final Edge e : g.edges(u)) {
-                if (e.other(u) > u)
-                    h.addEdge(toExplicitEdge(g, e));
+            for (int j = 0; j < g.degree(u); j++) {
+                final Edge e = g.edgeAt(u, j);
+                if (e.other(u) > u) {
+                    final Edge f = toExplicitEdge(g, e);
+                    if (f != e)
+                        h.replace(e, f);
+                }
             }
         }
 
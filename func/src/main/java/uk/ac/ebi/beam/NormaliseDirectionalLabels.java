@@ -5,11 +5,7 @@ import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 /**
  * Normalise directional labels such that the first label is always a '/'. Given a molecule with
@@ -22,27 +18,19 @@ final class NormaliseDirectionalLabels
 
     @Override public Graph apply(Graph g) {
         Traversal traversal = new Traversal(g);
-        Graph h = new Graph(g.order());
+        // atom/topology information this is unchanged
+        Graph h = g.derive();
         h.addFlags(g.getFlags(0xffffffff));
 
-        // copy atom/topology information this is unchanged
-        for (int u = 0; u < g.order(); u++) {
-            h.addAtom(g.atom(u));
-            h.addTopology(g.topologyOf(u));
-        }
-
         // change edges (only changed added to replacement)
         for (int u = 0; u < g.order(); u++) {
             final int d = g.degree(u);
             for (int j = 0; j < d; ++j) {
                 final Edge e = g.edgeAt(u, j);
                 if (e.other(u) > u) {
-                    if (traversal.acc.containsKey(e)) {
-                        h.addEdge(traversal.acc.get(e));
-                    }
-                    else {
-                        h.addEdge(e);
-                    }
+                    Edge f = traversal.acc[g.edgeId(u, j)];
+                    if (f != null && f != e)
+                        h.replace(e, f);
                 }
             }
         }
@@ -56,15 +44,16 @@ final class NormaliseDirectionalLabels
         private final boolean[] visited;
         private final int[]     ordering;
         private       int       i;
-        private Map<Edge, Edge> acc = new HashMap<Edge, Edge>();
+        private final Edge[]    acc;
 
-        private List<Edge>   doubleBonds = new ArrayList<>();
-        private Set<Integer> adj         = new HashSet<>();
+        private List<Edge> doubleBonds = new ArrayList<>();
+        private BitSet     adj         = new BitSet();
 
         private Traversal(Graph g) {
             this.g = g;
             this.visited = new boolean[g.order()];
             this.ordering = new int[g.order()];
+            this.acc = new Edge[g.size()];
 
             BitSet dbAtoms = new BitSet();
             for (int u = 0; u < g.order(); u++) {
@@ -91,7 +80,7 @@ final class NormaliseDirectionalLabels
             });
 
             for (Edge e : doubleBonds) {
-                if (acc.containsKey(e))
+                if (acc[g.edgeId(e)] != null)
                     continue;
                 flip(g, e, dbAtoms);
             }
@@ -115,17 +104,17 @@ final class NormaliseDirectionalLabels
                     // only the first bond we encounter in an isolated system
                     // is marked - if we need to flip the other we propagate
                     // this down the chain
-                    boolean newSystem = !adj.contains(u) && !adj.contains(v);
+                    boolean newSystem = !adj.get(u) && !adj.get(v);
 
                     // to stop adding other we mark all vertices adjacent to the
                     // double bond
                     final int d2 = g.degree(u);
                     for (int j2 = 0; j2 < d2; ++j2) {
-                        adj.add(g.edgeAt(u, j2).other(u));
+                        adj.set(g.edgeAt(u, j2).other(u));
                     }
                     final int d3 = g.degree(v);
                     for (int j2 = 0; j2 < d3; ++j2) {
-                        adj.add(g.edgeAt(v, j2).other(v));
+                        adj.set(g.edgeAt(v, j2).other(v));
                     }
                     doubleBonds.add(e);
                 }
@@ -231,7 +220,7 @@ final class NormaliseDirectionalLabels
         private void invertExistingDirectionalLabels(Graph g,
                                                      int prev,
                                                      BitSet visited,
-                                                     Map<Edge, Edge> replacement,
+                                                     Edge[] replacement,
                                                      BitSet dbAtoms,
                                                      int u) {
             visited.set(u);
@@ -241,9 +230,9 @@ final class NormaliseDirectionalLabels
                 int v = e.other(u);
                 if (v == prev)
                     continue;
-                Edge f = replacement.get(e);
-                if (f == null) {
-                    replacement.put(e, e.inverse());
+                int id = g.edgeId(u, j);
+                if (replacement[id] == null) {
+                    replacement[id] = e.inverse();
                     if (!visited.get(v)) {
                         if (dbAtoms.get(v))
                             invertExistingDirectionalLabels(g, u, visited, replacement, dbAtoms, v);
@@ -255,7 +244,7 @@ final class NormaliseDirectionalLabels
         private void markExistingDirectionalLabels(Graph g,
                                                    int prev,
                                                    BitSet visited,
-                                                   Map<Edge, Edge> replacement,
+                                                   Edge[] replacement,
                                                    BitSet dbAtoms,
                                                    int u) {
             visited.set(u);
@@ -265,9 +254,9 @@ final class NormaliseDirectionalLabels
                 int v = e.other(u);
                 if (v == prev)
                     continue;
-                Edge f = replacement.get(e);
-                if (f == null) {
-                    replacement.put(e, e);
+                int id = g.edgeId(u, j);
+                if (replacement[id] == null) {
+                    replacement[id] = e;
                     if (!visited.get(v)) {
                         if (dbAtoms.get(v))
                             markExistingDirectionalLabels(g, u, visited, replacement, dbAtoms, v);
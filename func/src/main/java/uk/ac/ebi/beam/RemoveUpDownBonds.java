@@ -51,13 +51,8 @@ final class RemoveUpDownBonds extends AbstractFunction<Graph,Graph> {
     public Graph apply(final Graph g)
             throws InvalidSmilesException {
 
-        Graph h = new Graph(g.order());
-
-        // copy atom/topology information this is unchanged
-        for (int u = 0; u < g.order(); u++) {
-            h.addAtom(g.atom(u));
-            h.addTopology(g.topologyOf(u));
-        }
+        // atom/topology information this is unchanged
+        Graph h = g.derive();
 
         int[] ordering = new DepthFirstOrder(g).visited;
 
@@ -66,7 +61,8 @@ final class RemoveUpDownBonds extends AbstractFunction<Graph,Graph> {
 
         // change edges (only changed added to replacement)
         for (int u = 0; u < g.order(); u++) {
-            for (final Edge e : g.edges(u)) {
+            for (int j = 0; j < g.degree(u); j++) {
+                final Edge e = g.edgeAt(u, j);
                 if (e.other(u) > u && e.bond() == Bond.DOUBLE) {
                     removeRedundant(g, e, ordering, replacements);
                     dbCentres.add(u);
@@ -83,17 +79,9 @@ final class RemoveUpDownBonds extends AbstractFunction<Graph,Graph> {
             }
         }
 
-        // append the edges, replacing any which need to be changed
-        for (int u = 0; u < g.order(); u++) {
-            for (Edge e : g.edges(u)) {
-                if (e.other(u) > u) {
-                    Edge replacement = replacements.get(e);
-                    if (replacement != null)
-                        e = replacement;
-                    h.addEdge(e);
-                }
-            }
-        }
+        // replace any edges which need to be changed
+        for (Map.Entry<Edge, Edge> e : replacements.entrySet())
+            h.replace(e.getKey(), e.getValue());
 
         return h;
     }
@@ -154,7 +142,8 @@ final class RemoveUpDownBonds extends AbstractFunction<Graph,Graph> {
                                                         }
                                                     }));
 
-        for (Edge f : g.edges(u)) {
+        for (int j = 0; j < g.degree(u); j++) {
+            Edge f = g.edgeAt(u, j);
             switch (f.bond()) {
                 case DOUBLE:
                     if (!f.equals(e))
@@ -200,7 +189,8 @@ final class RemoveUpDownBonds extends AbstractFunction<Graph,Graph> {
 
         private void visit(int u) {
             visited[u] = i++;
-            for (Edge e : g.edges(u)) {
+            for (int j = 0; j < g.degree(u); j++) {
+                Edge e = g.edgeAt(u, j);
                 int v = e.other(u);
                 if (visited[v] < 0) {
                     visit(v);
@@ -25,7 +25,8 @@ final class RenumberAtomMaps {
             mapIdx = s.map[mapIdx];
             s.g.setAtom(idx, AtomBuilder.fromExisting(s.g.atom(idx)).atomClass(mapIdx).build());
         }
-        for (Edge e : s.g.edges(idx)) {
+        for (int j = 0; j < s.g.degree(idx); j++) {
+            Edge e = s.g.edgeAt(idx, j);
             int nbr = e.other(idx);
             if (!s.visit[nbr])
                 traverse(s, nbr);
@@ -14,7 +14,8 @@ final class ToSubsetAtoms extends AbstractFunction<Graph,Graph> {
 
     public Graph apply(Graph g) {
 
-        Graph h = new Graph(g.order());
+        // edges are unchanged
+        Graph h = g.derive();
 
         for (int u = 0; u < g.order(); u++) {
 
@@ -22,17 +23,13 @@ final class ToSubsetAtoms extends AbstractFunction<Graph,Graph> {
             Topology t = g.topologyOf(u);
 
             if (t.type() == None) {
-                h.addAtom(toSubset(g.atom(u), g, u));
-            } else {
-                h.addAtom(g.atom(u));
-                h.addTopology(t);
+                Atom a = g.atom(u);
+                Atom subset = toSubset(a, g, u);
+                if (subset != a)
+                    h.setAtom(u, subset);
             }
         }
 
-        // edges are unchanged
-        for (Edge e : g.edges())
-            h.addEdge(e);
-
         return h;
     }
 
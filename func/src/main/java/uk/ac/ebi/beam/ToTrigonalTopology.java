@@ -30,9 +30,7 @@
 package uk.ac.ebi.beam;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Convert direction (up/down) bonds to trigonal topology (double bond atom
@@ -58,14 +56,15 @@ final class ToTrigonalTopology extends AbstractFunction<Graph,Graph> {
             h.addTopology(g.topologyOf(u));
         }
 
-        Map<Edge, Edge> replacements = new HashMap<Edge, Edge>();
+        // replacements indexed by edge id
+        Edge[] replacements = new Edge[g.size()];
 
         // change edges (only changed added to replacement)
         for (int u = 0; u < g.order(); u++) {
-            for (final Edge e : g.edges(u)) {
+            for (int j = 0; j < g.degree(u); j++) {
+                final Edge e = g.edgeAt(u, j);
                 if (e.other(u) > u && e.bond().directional()) {
-                    replacements.put(e,
-                                     new Edge(u, e.other(u), Bond.IMPLICIT));
+                    replacements[g.edgeId(u, j)] = new Edge(u, e.other(u), Bond.IMPLICIT);
                 }
             }
         }
@@ -94,9 +93,10 @@ final class ToTrigonalTopology extends AbstractFunction<Graph,Graph> {
 
         // append the edges, replacing any which need to be changed
         for (int u = 0; u < g.order(); u++) {
-            for (Edge e : g.edges(u)) {
+            for (int j = 0; j < g.degree(u); j++) {
+                Edge e = g.edgeAt(u, j);
                 if (e.other(u) > u) {
-                    Edge replacement = replacements.get(e);
+                    Edge replacement = replacements[g.edgeId(u, j)];
                     if (replacement != null)
                         e = replacement;
                     h.addEdge(e);
@@ -110,22 +110,25 @@ final class ToTrigonalTopology extends AbstractFunction<Graph,Graph> {
     private Atom asBracketAtom(int u, Graph g) {
         Atom a = g.atom(u);
         int sum = a.aromatic() ? 1 : 0;
-        for (Edge e : g.edges(u)) {
+        for (int j = 0; j < g.degree(u); j++) {
+            Edge e = g.edgeAt(u, j);
             sum += e.bond().order();
         }
-        return new AtomImpl.BracketAtom(-1,
-                                        a.element(),
-                                        a.aromatic() ? a.element().aromaticImplicitHydrogens(sum) 
-                                                     : a.element().implicitHydrogens(sum),
-                                        0,
-                                        0,
-                                        a.aromatic());
+        return AtomImpl.BracketAtom.of(-1,
+                                       a.element(),
+                                       a.aromatic() ? a.element().aromaticImplicitHydrogens(sum)
+                                                    : a.element().implicitHydrogens(sum),
+                                       0,
+                                       0,
+                                       a.aromatic());
     }
 
     private Topology toTrigonal(Graph g, Edge e, int u) {
 
-        List<Edge> es = g.edges(u);
-        int offset = es.indexOf(e);
+        final int d = g.degree(u);
+        int offset = 0;
+        while (g.edgeAt(u, offset) != e)
+            offset++;
 
         int parity = 0;
 
@@ -137,17 +140,17 @@ final class ToTrigonalTopology extends AbstractFunction<Graph,Graph> {
                 u,          // for implicit H
         };
 
-        if (es.size() == 2) {
-            Edge e1 = es.get((offset + 1) % 2);
+        if (d == 2) {
+            Edge e1 = g.edgeAt(u, (offset + 1) % 2);
             Bond b = e1.bond(u);
             if (isUp(b)) {
                 vs[1] = e1.other(u);
             } else if (isDown(b)) {
                 vs[2] = e1.other(u);
             }
-        } else if (es.size() == 3) {
-            Edge e1 = es.get((offset + 1) % 3);
-            Edge e2 = es.get((offset + 2) % 3);
+        } else if (d == 3) {
+            Edge e1 = g.edgeAt(u, (offset + 1) % 3);
+            Edge e2 = g.edgeAt(u, (offset + 2) % 3);
             Bond b1 = e1.bond(u);
             Bond b2 = e2.bond(u);
             if (b1 == Bond.SINGLE || b1 == Bond.IMPLICIT) {
@@ -172,7 +175,7 @@ final class ToTrigonalTopology extends AbstractFunction<Graph,Graph> {
         if (vs[1] == vs[2])
             return Topology.unknown();
 
-        Configuration c = es.get(offset).other(u) < u ? Configuration.DB1
+        Configuration c = e.other(u) < u ? Configuration.DB1
                                                       : Configuration.DB2;
 
 
@@ -190,7 +193,8 @@ final class ToTrigonalTopology extends AbstractFunction<Graph,Graph> {
     private List<Edge> doubleBondLabelledEdges(Graph g) {
         List<Edge> es = new ArrayList<Edge>();
         for (int u = 0; u < g.order(); u++) {
-            for (Edge e : g.edges(u)) {
+            for (int j = 0; j < g.degree(u); j++) {
+                Edge e = g.edgeAt(u, j);
                 if (e.other(u) > u && e.bond() == Bond.DOUBLE) {
                     es.add(e);
                 }